@@ -0,0 +1,83 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.iso.CompiledIsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.iso.PackagerDefinition;
+import com.paymentswitch.payment_switch.model.Amounts;
+import org.jpos.iso.ISOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The amount path of a request over the {@link BenchmarkMessages#mix() traffic mix}: read field 4 (and 49),
+ * check the withdrawal limit and format field 4 back. {@code bigDecimal} is the previous transformer and router
+ * code (String, BigDecimal divide, compareTo, String.format), {@code minorUnits} the fixed-point one. Every
+ * operation reads a fresh lazy view so neither side gets a cached field String; {@code readOnly} is that cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AmountBenchmark {
+
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+    private static final BigDecimal LIMIT = BigDecimal.valueOf(50000);
+
+    private CompiledIsoCodec codec;
+    private byte[][] mix;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream xml = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            codec = new CompiledIsoCodec(PackagerDefinition.load(xml), BenchmarkMessages.packager());
+        }
+        mix = BenchmarkMessages.mix();
+    }
+
+    @Benchmark
+    public IsoMessageView readOnly() throws ISOException {
+        return codec.read(mix[nextIndex()]);
+    }
+
+    @Benchmark
+    public void bigDecimal(Blackhole bh) throws ISOException {
+        IsoMessageView view = codec.read(mix[nextIndex()]);
+        String digits = view.getString(4);
+        BigDecimal amount = digits == null || digits.isEmpty() ? BigDecimal.ZERO : new BigDecimal(digits).divide(HUNDRED);
+        bh.consume(amount.compareTo(LIMIT) > 0);
+        bh.consume(String.format("%012d", amount.multiply(HUNDRED).longValue()));
+    }
+
+    @Benchmark
+    public void minorUnits(Blackhole bh) throws ISOException {
+        IsoMessageView view = codec.read(mix[nextIndex()]);
+        long amount = view.hasField(4) ? view.getLong(4) : 0;
+        int exponent = Amounts.exponent(view.hasField(49) ? (int) view.getLong(49) : Amounts.NO_CURRENCY);
+        bh.consume(amount > Amounts.minorUnits(50000, exponent));
+        bh.consume(Amounts.format(amount, 12));
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == mix.length ? 0 : index + 1;
+        return index;
+    }
+}
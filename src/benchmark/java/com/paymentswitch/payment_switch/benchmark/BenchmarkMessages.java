@@ -0,0 +1,162 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.paymentswitch.payment_switch.handler.DuplicateTransactionCache;
+import com.paymentswitch.payment_switch.issuer.IssuerDirectory;
+import com.paymentswitch.payment_switch.ledger.AccountLedger;
+import com.paymentswitch.payment_switch.router.BinRoutes;
+import com.paymentswitch.payment_switch.router.TransactionRouter;
+import com.paymentswitch.payment_switch.service.BankSimlatorService;
+import com.paymentswitch.payment_switch.service.IdentifierService;
+import com.paymentswitch.payment_switch.time.CoarseClock;
+import com.paymentswitch.payment_switch.transformer.DateTimeCodec;
+import com.paymentswitch.payment_switch.transformer.IsoMessageTransformer;
+import com.paymentswitch.payment_switch.velocity.DailyLimits;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.packager.GenericPackager;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+// Packed sample requests shared by the benchmarks
+final class BenchmarkMessages {
+
+    private static final GenericPackager PACKAGER = loadPackager();
+
+    private BenchmarkMessages() {
+    }
+
+    // Outside Spring logback defaults to DEBUG on the console, which would swamp per-message timings
+    static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.OFF);
+    }
+
+    static GenericPackager packager() {
+        return PACKAGER;
+    }
+
+    static DateTimeCodec dateTimeCodec() {
+        return new DateTimeCodec(new CoarseClock(Duration.ofMillis(100)));
+    }
+
+    static IdentifierService identifiers() {
+        return new IdentifierService(1, new CoarseClock(Duration.ofMillis(100)));
+    }
+
+    // Auto-opens every card with a balance the benchmarks can't drain
+    static AccountLedger ledger() {
+        return new AccountLedger(1 << 16, 64, Long.MAX_VALUE / 2);
+    }
+
+    // No daily limits, the mix reuses one card
+    static DailyLimits dailyLimits() {
+        return new DailyLimits(-1, -1, "00:00", 1 << 10, 16, new CoarseClock(Duration.ofMillis(100)));
+    }
+
+    static DuplicateTransactionCache duplicates(boolean enabled) {
+        return new DuplicateTransactionCache(enabled, Duration.ofSeconds(60), DataSize.ofMegabytes(64),
+                Duration.ofSeconds(5), new SimpleMeterRegistry());
+    }
+
+    // Issuer called inline, as before deadlines
+    static TransactionRouter router() {
+        return router(Duration.ZERO);
+    }
+
+    static TransactionRouter router(Duration deadline) {
+        return new TransactionRouter(binRoutes(), deadline, new String[0], Duration.ofMillis(5), 512);
+    }
+
+    // Every card to the simulator through one range, as the shipped routing/bins.csv does for the sample cards
+    static BinRoutes binRoutes() {
+        IssuerDirectory issuers = new IssuerDirectory(new String[]{"simulator:simulator"},
+                new BankSimlatorService(identifiers(), ledger(), dailyLimits()));
+        return new BinRoutes(issuers, new ByteArrayResource("100000,999999,simulator\n".getBytes(StandardCharsets.US_ASCII)),
+                "", Duration.ZERO);
+    }
+
+    // Wired the way Spring wires it
+    static IsoMessageTransformer transformer() {
+        return new IsoMessageTransformer(PACKAGER, dateTimeCodec(), identifiers());
+    }
+
+    static byte[] balanceInquiryRequest() {
+        return request("310000", "000000000000", "000101");
+    }
+
+    static byte[] withdrawalRequest() {
+        return request("010000", "000000010000", "000102");
+    }
+
+    static byte[] purchaseRequest() {
+        return request("000000", "000000025000", "000103");
+    }
+
+    // ATM traffic mix: mostly withdrawals and purchases, some inquiries, a few large (declined) withdrawals
+    // and one request that fails validation (no terminal ID)
+    static byte[][] mix() {
+        String[][] traffic = {
+                {"010000", "000000002000"}, {"010000", "000000010000"}, {"010000", "000000004000"},
+                {"010000", "000000006000"}, {"010000", "000000020000"}, {"010000", "000003000000"},
+                {"010000", "000000008000"}, {"010000", "000006000000"},
+                {"000000", "000000001999"}, {"000000", "000000025000"}, {"000000", "000000000450"},
+                {"000000", "000000012000"}, {"000000", "000000003599"}, {"000000", "000000007800"},
+                {"310000", "000000000000"}, {"310000", "000000000000"}, {"310000", "000000000000"},
+                {"400000", "000000050000"}, {"380000", "000000000000"}
+        };
+        byte[][] mix = new byte[traffic.length + 1][];
+        for (int i = 0; i < traffic.length; i++) {
+            mix[i] = request(traffic[i][0], traffic[i][1], String.format("%06d", 200 + i));
+        }
+        try {
+            ISOMsg invalid = new ISOMsg();
+            invalid.setPackager(PACKAGER);
+            invalid.unpack(withdrawalRequest());
+            invalid.unset(41);
+            mix[traffic.length] = invalid.pack();
+        } catch (ISOException e) {
+            throw new IllegalStateException(e);
+        }
+        return mix;
+    }
+
+    static byte[] request(String processingCode, String amount, String stan) {
+        try {
+            ISOMsg msg = new ISOMsg();
+            msg.setPackager(PACKAGER);
+            msg.setMTI("0200");
+            msg.set(2, "4111111111111111");
+            msg.set(3, processingCode);
+            msg.set(4, amount);
+            msg.set(7, "1217101500");
+            msg.set(11, stan);
+            msg.set(32, "123456");
+            msg.set(41, "ATM00001");
+            msg.set(43, "Test atm location 123 main st");
+            msg.set(49, "840");
+            return msg.pack();
+        } catch (ISOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static GenericPackager loadPackager() {
+        try (InputStream is = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            return new GenericPackager(is);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ISOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
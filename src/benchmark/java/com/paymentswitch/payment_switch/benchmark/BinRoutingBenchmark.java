@@ -0,0 +1,86 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.issuer.IssuerDirectory;
+import com.paymentswitch.payment_switch.issuer.IssuerGateway;
+import com.paymentswitch.payment_switch.router.BinRoutingTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issuer lookup for a random PAN among {@code ranges} BIN ranges of 8 digits spread over 4xxxxx-5xxxxx, every
+ * tenth with a nested 11-digit range: BinRoutingTable's binary search over primitive arrays against a TreeMap of
+ * range starts (floorEntry), the obvious alternative.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinRoutingBenchmark {
+
+    private static final int PANS = 1 << 16;
+
+    @Param({"1000", "100000"})
+    int ranges;
+
+    private BinRoutingTable table;
+    private TreeMap<Long, BinRoutingTable.Range> tree;
+    private String[] pans;
+    private int next;
+
+    @Setup
+    public void setup() {
+        IssuerDirectory issuers = new IssuerDirectory(new String[]{"a:simulator", "b:simulator", "c:simulator"},
+                null);
+        IssuerGateway[] gateways = issuers.all().toArray(IssuerGateway[]::new);
+        List<BinRoutingTable.Range> list = new ArrayList<>();
+        tree = new TreeMap<>();
+        long step = 20_000_000L / ranges; // over 8-digit prefixes 40000000-59999999
+        for (int i = 0; i < ranges; i++) {
+            long low = 40_000_000L + i * step;
+            BinRoutingTable.Range range = BinRoutingTable.Range.of(Long.toString(low), Long.toString(low + step / 2),
+                    gateways[i % gateways.length]);
+            list.add(range);
+            tree.put(range.start(), range);
+        }
+        for (int i = 0; i < ranges; i += 10) {
+            list.add(BinRoutingTable.Range.of(Long.toString((40_000_000L + i * step) * 1000 + 123),
+                    Long.toString((40_000_000L + i * step) * 1000 + 123), gateways[(i + 1) % gateways.length]));
+        }
+        table = new BinRoutingTable(list);
+        SplittableRandom random = new SplittableRandom(42);
+        pans = new String[PANS];
+        for (int i = 0; i < PANS; i++) {
+            pans[i] = String.format("%016d", random.nextLong(4_000_000_000_000_000L, 6_000_000_000_000_000L));
+        }
+    }
+
+    @Benchmark
+    public IssuerGateway binarySearch() {
+        return table.lookup(pans[next++ & (PANS - 1)]);
+    }
+
+    @Benchmark
+    public IssuerGateway treeMap() {
+        long key = Long.parseLong(pans[next++ & (PANS - 1)], 0, BinRoutingTable.KEY_DIGITS, 10);
+        Map.Entry<Long, BinRoutingTable.Range> entry = tree.floorEntry(key);
+        return entry != null && entry.getValue().end() >= key ? entry.getValue().issuer() : null;
+    }
+}
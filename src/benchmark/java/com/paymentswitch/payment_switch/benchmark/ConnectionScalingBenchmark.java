@@ -0,0 +1,191 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.PaymentSwitchApplication;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.packager.GenericPackager;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.integration.ip.tcp.connection.AbstractServerConnectionFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the blocking and NIO listener modes of the switch.
+ * <p>
+ * For each mode the full application is started in-process on an ephemeral port, a number of
+ * idle terminal connections is opened and held, and then a smaller set of active connections
+ * drives balance inquiries through the complete pipeline while the idle ones stay connected.
+ * Reported are the JVM thread count and heap while holding the connections, and the request
+ * latency percentiles under that load.
+ * <p>
+ * Arguments (all optional):
+ * {@code --connections=2000 --active=32 --requests=500 --modes=blocking,nio --execution=platform}
+ */
+public class ConnectionScalingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        int connections = Integer.parseInt(options.getOrDefault("connections", "2000"));
+        int active = Integer.parseInt(options.getOrDefault("active", "32"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "500"));
+        String[] modes = options.getOrDefault("modes", "blocking,nio").split(",");
+        String execution = options.getOrDefault("execution", "platform");
+
+        List<String> rows = new ArrayList<>();
+        for (String mode : modes) {
+            rows.add(run(mode.trim(), execution, connections, active, requests));
+        }
+
+        System.out.printf("%n%-18s %11s %9s %10s %9s %9s %9s%n",
+                "mode", "connections", "threads", "heap(MB)", "p50(us)", "p99(us)", "max(us)");
+        rows.forEach(System.out::println);
+    }
+
+    private static String run(String mode, String execution, int connections, int active, int requests)
+            throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(PaymentSwitchApplication.class)
+                .run("--switch.tcp.mode=" + mode,
+                        "--switch.execution.mode=" + execution,
+                        "--switch.execution.pinning-diagnostics.enabled=true",
+                        "--switch.tcp.port=0",
+                        // Every request uses the same card and would be declined 65 after the first few
+                        "--switch.velocity.enabled=false",
+                        // Or 61 once its day's totals are used up, should the requests debit it
+                        "--switch.limits.daily.withdrawal=-1",
+                        "--switch.limits.daily.purchase=-1",
+                        "--spring.main.web-application-type=none",
+                        "--logging.level.com.paymentswitch.payment_switch=WARN");
+        try {
+            AbstractServerConnectionFactory factory = context.getBean(AbstractServerConnectionFactory.class);
+            waitUntil(factory::isListening);
+            int port = factory.getPort();
+
+            List<Socket> idle = new ArrayList<>(connections);
+            for (int i = 0; i < connections; i++) {
+                idle.add(new Socket("localhost", port));
+            }
+            waitUntil(() -> factory.getOpenConnectionIds().size() >= connections);
+            System.gc();
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            long heapMb = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20;
+
+            long[] latencies = drive(port, active, requests);
+            Arrays.sort(latencies);
+
+            for (Socket socket : idle) {
+                socket.close();
+            }
+            return String.format("%-18s %11d %9d %10d %9d %9d %9d",
+                    mode + "/" + execution, connections, threads, heapMb,
+                    percentile(latencies, 0.50) / 1000,
+                    percentile(latencies, 0.99) / 1000,
+                    latencies[latencies.length - 1] / 1000);
+        } finally {
+            context.close();
+        }
+    }
+
+    // Each active connection sends its requests back to back; returns all round trip times in nanos
+    private static long[] drive(int port, int active, int requests) throws Exception {
+        GenericPackager packager;
+        try (InputStream is = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            packager = new GenericPackager(is);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(active);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int c = 0; c < active; c++) {
+            String terminalId = String.format("BENCH%03d", c);
+            results.add(pool.submit(() -> {
+                long[] samples = new long[requests];
+                try (Socket socket = new Socket("localhost", port)) {
+                    socket.setTcpNoDelay(true);
+                    OutputStream out = socket.getOutputStream();
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    for (int i = 0; i < requests; i++) {
+                        byte[] frame = frame(balanceInquiry(packager, terminalId, i));
+                        long start = System.nanoTime();
+                        out.write(frame);
+                        out.flush();
+                        in.readFully(new byte[in.readUnsignedShort()]);
+                        samples[i] = System.nanoTime() - start;
+                    }
+                }
+                return samples;
+            }));
+        }
+        long[] all = new long[active * requests];
+        int offset = 0;
+        for (Future<long[]> result : results) {
+            long[] samples = result.get();
+            System.arraycopy(samples, 0, all, offset, samples.length);
+            offset += samples.length;
+        }
+        pool.shutdown();
+        return all;
+    }
+
+    private static byte[] balanceInquiry(GenericPackager packager, String terminalId, int seq) throws Exception {
+        ISOMsg msg = new ISOMsg();
+        msg.setPackager(packager);
+        msg.setMTI("0200");
+        msg.set(2, "4111111111111111");
+        msg.set(3, "310000");
+        msg.set(4, "000000000000");
+        msg.set(7, "1217101500");
+        msg.set(11, String.format("%06d", seq % 1000000));
+        msg.set(32, "123456");
+        msg.set(41, terminalId);
+        msg.set(43, "BENCHMARK TERMINAL");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        msg.pack(baos);
+        return baos.toByteArray();
+    }
+
+    private static byte[] frame(byte[] payload) {
+        byte[] frame = new byte[payload.length + 2];
+        frame[0] = (byte) ((payload.length >> 8) & 0xFF);
+        frame[1] = (byte) (payload.length & 0xFF);
+        System.arraycopy(payload, 0, frame, 2, payload.length);
+        return frame;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Timed out waiting for the switch");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,75 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.iso.CompiledIsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.iso.PackagerDefinition;
+import com.paymentswitch.payment_switch.transformer.DateTimeCodec;
+import org.jpos.iso.ISOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Field 7 read from a fresh lazy view, turned into a LocalDateTime and formatted back. {@code javaTime} is the
+ * previous transformer code (five substring + parseInt, LocalDate.now(), DateTimeFormatter), {@code codec} is
+ * DateTimeCodec with its coarse clock; {@code readOnly} is the view cost both include.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DateTimeBenchmark {
+
+    private static final DateTimeFormatter ISO_DATE_FORMAT = DateTimeFormatter.ofPattern("MMddHHmmss");
+
+    private final DateTimeCodec dateTimeCodec = BenchmarkMessages.dateTimeCodec();
+    private CompiledIsoCodec codec;
+    private byte[] request;
+
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream xml = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            codec = new CompiledIsoCodec(PackagerDefinition.load(xml), BenchmarkMessages.packager());
+        }
+        request = BenchmarkMessages.withdrawalRequest();
+    }
+
+    @Benchmark
+    public IsoMessageView readOnly() throws ISOException {
+        return codec.read(request);
+    }
+
+    @Benchmark
+    public void javaTime(Blackhole bh) throws ISOException {
+        String dateTime = codec.read(request).getString(7);
+        LocalDateTime parsed = LocalDateTime.of(LocalDate.now().getYear(),
+                Integer.parseInt(dateTime.substring(0, 2)), Integer.parseInt(dateTime.substring(2, 4)),
+                Integer.parseInt(dateTime.substring(4, 6)), Integer.parseInt(dateTime.substring(6, 8)),
+                Integer.parseInt(dateTime.substring(8, 10)));
+        bh.consume(parsed.format(ISO_DATE_FORMAT));
+    }
+
+    @Benchmark
+    public void codec(Blackhole bh) throws ISOException {
+        LocalDateTime parsed = dateTimeCodec.transmissionDateTime(codec.read(request).getLong(7));
+        bh.consume(dateTimeCodec.formatTransmissionDateTime(parsed));
+    }
+}
@@ -0,0 +1,78 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.handler.DuplicateTransactionCache;
+import com.paymentswitch.payment_switch.iso.CompiledIsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.iso.PackagerDefinition;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jpos.iso.ISOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What DuplicateTransactionCache adds to a request. {@code firstSighting} claims a new key and completes it with
+ * the response (every request pays this), over distinct STANs whose 1 ms window has passed by the time they come
+ * round again; {@code retransmission} answers a repeat from the cache. Both include reading the key fields from
+ * a fresh lazy view.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DuplicateCacheBenchmark {
+
+    private static final int DISTINCT = 1 << 16;
+
+    private final DuplicateTransactionCache shortWindow = new DuplicateTransactionCache(true,
+            Duration.ofMillis(1), DataSize.ofMegabytes(64), Duration.ofSeconds(5), new SimpleMeterRegistry());
+    private final DuplicateTransactionCache cache = BenchmarkMessages.duplicates(true);
+    private CompiledIsoCodec codec;
+    private byte[][] requests;
+    private byte[] repeat;
+    private final byte[] response = new byte[120];
+    private int next;
+
+    @Setup
+    public void setup() throws IOException, ISOException {
+        try (InputStream xml = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            codec = new CompiledIsoCodec(PackagerDefinition.load(xml), BenchmarkMessages.packager());
+        }
+        requests = new byte[DISTINCT][];
+        for (int i = 0; i < DISTINCT; i++) {
+            requests[i] = BenchmarkMessages.request("011000", "000000010000", String.format("%06d", i));
+        }
+        repeat = BenchmarkMessages.withdrawalRequest();
+        cache.complete(cache.claim(codec.read(repeat)), response, "00");
+    }
+
+    @Benchmark
+    public DuplicateTransactionCache.Claim firstSighting() throws ISOException {
+        IsoMessageView request = codec.read(requests[next]);
+        next = (next + 1) & (DISTINCT - 1);
+        DuplicateTransactionCache.Claim claim = shortWindow.claim(request);
+        shortWindow.complete(claim, response, "00");
+        return claim;
+    }
+
+    @Benchmark
+    public DuplicateTransactionCache.Claim retransmission() throws ISOException {
+        return cache.claim(codec.read(repeat));
+    }
+}
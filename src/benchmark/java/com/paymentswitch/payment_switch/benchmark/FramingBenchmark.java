@@ -0,0 +1,126 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.config.ByteArrayLengthHeader2ByteSerializer;
+import com.paymentswitch.payment_switch.framing.FrameBufferPool;
+import com.paymentswitch.payment_switch.framing.LengthHeaderFormat;
+import com.paymentswitch.payment_switch.framing.LengthPrefixedFrameSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.CompilerControl;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame read and write cost of the original 2-byte serializer against the pooled framing codec.
+ * Run with {@code -prof gc} to compare allocated bytes per message ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class FramingBenchmark {
+
+    private final ByteArrayLengthHeader2ByteSerializer legacy = new ByteArrayLengthHeader2ByteSerializer();
+    private final LengthPrefixedFrameSerializer pooled = new LengthPrefixedFrameSerializer(
+            LengthHeaderFormat.BINARY_2, 2048, new FrameBufferPool(16, 2 + 2048, false));
+
+    private byte[] payload;
+    private SocketLikeInputStream frameStream;
+    private final DiscardingOutputStream sink = new DiscardingOutputStream();
+
+    @Setup
+    public void setup() {
+        payload = BenchmarkMessages.withdrawalRequest();
+        byte[] frame = new byte[payload.length + 2];
+        LengthHeaderFormat.BINARY_2.encode(payload.length, frame, 0);
+        System.arraycopy(payload, 0, frame, 2, payload.length);
+        frameStream = new SocketLikeInputStream(frame);
+    }
+
+    @Benchmark
+    public byte[] legacyDeserialize() throws IOException {
+        frameStream.reset();
+        return legacy.deserialize(frameStream);
+    }
+
+    @Benchmark
+    public byte[] pooledDeserialize() throws IOException {
+        frameStream.reset();
+        return pooled.deserialize(frameStream);
+    }
+
+    @Benchmark
+    public int legacySerialize() throws IOException {
+        legacy.serialize(payload, sink);
+        return sink.written;
+    }
+
+    @Benchmark
+    public int pooledSerialize() throws IOException {
+        pooled.serialize(payload, sink);
+        return sink.written;
+    }
+
+    // Socket stand-ins. Socket streams end in native calls the JIT cannot see through, so reads and
+    // writes are kept out of line here too; otherwise escape analysis removes the very header arrays
+    // this benchmark is meant to count.
+    static final class DiscardingOutputStream extends OutputStream {
+        int written;
+
+        @Override
+        public void write(int b) {
+            written++;
+        }
+
+        @Override
+        @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+        public void write(byte[] b, int off, int len) {
+            written += len;
+        }
+    }
+
+    static final class SocketLikeInputStream extends InputStream {
+        private final byte[] data;
+        private int position;
+
+        SocketLikeInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+        public int read(byte[] b, int off, int len) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int n = Math.min(len, data.length - position);
+            System.arraycopy(data, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public synchronized void reset() {
+            position = 0;
+        }
+    }
+}
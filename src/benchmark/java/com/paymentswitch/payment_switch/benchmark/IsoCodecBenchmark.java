@@ -0,0 +1,94 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.iso.CompiledIsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.iso.JposIsoCodec;
+import com.paymentswitch.payment_switch.iso.PackagerDefinition;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unpack and pack cost of the jPOS GenericPackager against the compiled codec, on a withdrawal request.
+ * The *HandlerFields benchmarks read the fields validation and transformation use, after a full unpack
+ * or through the lazy view.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IsoCodecBenchmark {
+
+    private static final int[] HANDLER_FIELDS = {2, 3, 4, 7, 11, 32, 41, 43, 48};
+
+    private IsoCodec jpos;
+    private IsoCodec compiled;
+    private byte[] request;
+    private ISOMsg message;
+
+    @Setup
+    public void setup() throws IOException, ISOException {
+        jpos = new JposIsoCodec(BenchmarkMessages.packager());
+        try (InputStream xml = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            compiled = new CompiledIsoCodec(PackagerDefinition.load(xml), BenchmarkMessages.packager());
+        }
+        request = BenchmarkMessages.withdrawalRequest();
+        message = jpos.unpack(request);
+    }
+
+    @Benchmark
+    public ISOMsg jposUnpack() throws ISOException {
+        return jpos.unpack(request);
+    }
+
+    @Benchmark
+    public ISOMsg compiledUnpack() throws ISOException {
+        return compiled.unpack(request);
+    }
+
+    @Benchmark
+    public byte[] jposPack() throws ISOException {
+        return jpos.pack(message);
+    }
+
+    @Benchmark
+    public byte[] compiledPack() throws ISOException {
+        return compiled.pack(message);
+    }
+
+    @Benchmark
+    public void compiledUnpackHandlerFields(Blackhole blackhole) throws ISOException {
+        ISOMsg msg = compiled.unpack(request);
+        blackhole.consume(msg.getMTI());
+        for (int field : HANDLER_FIELDS) {
+            blackhole.consume(msg.getString(field));
+        }
+    }
+
+    @Benchmark
+    public void compiledReadHandlerFields(Blackhole blackhole) throws ISOException {
+        IsoMessageView view = compiled.read(request);
+        blackhole.consume(view.getMTI());
+        for (int field : HANDLER_FIELDS) {
+            blackhole.consume(view.getString(field));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.ledger.AccountLedger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AccountLedger under contention: every thread posts to one of {@code cards} accounts, so {@code cards=1} is a
+ * single hot account and larger values spread the postings over the segments. {@code balance} is the optimistic
+ * read path, {@code debitCredit} a debit and its reversal. Run with {@code -t} to vary the thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LedgerBenchmark {
+
+    @Param({"1", "64", "100000"})
+    int cards;
+
+    private AccountLedger ledger;
+    private String[] pans;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+        int next(int bound) {
+            return bound == 1 ? 0 : random.nextInt(bound);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        ledger = BenchmarkMessages.ledger();
+        pans = new String[cards];
+        for (int i = 0; i < cards; i++) {
+            pans[i] = String.format("4%015d", i);
+            ledger.put(pans[i], "00", 1_000_000_000L);
+        }
+    }
+
+    @Benchmark
+    public long balance(Cursor cursor) {
+        return ledger.balance(pans[cursor.next(cards)], 0);
+    }
+
+    @Benchmark
+    public long debitCredit(Cursor cursor) {
+        String pan = pans[cursor.next(cards)];
+        ledger.debit(pan, 0, 100);
+        return ledger.credit(pan, 0, 100);
+    }
+}
@@ -0,0 +1,365 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.client.AtmSimulatorClient;
+import com.paymentswitch.payment_switch.client.AtmSimulatorClient.TransactionType;
+import com.paymentswitch.payment_switch.framing.LengthHeaderFormat;
+import org.HdrHistogram.Histogram;
+import org.jpos.iso.ISOMsg;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for a running switch.
+ * <p>
+ * Requests are built with {@link AtmSimulatorClient} and sent over N persistent connections at a fixed
+ * aggregate arrival rate: the k-th request of connection c is scheduled at {@code start + (k * N + c) / rate},
+ * independent of how fast replies come back. Latency is measured from that scheduled time, not from the
+ * moment the request was actually written, so a stalled switch shows up as queueing delay in the percentiles
+ * instead of silently lowering the offered load (coordinated omission). The time from the actual write is
+ * reported separately as service time.
+ * <p>
+ * Replies are matched to requests by STAN; each connection has its own STAN sequence and cycles through
+ * {@code --terminals} terminal IDs of its own. The traffic is spread over {@code --cards} cards, opened on first
+ * use by the switch; {@code --cards=1} debits the one simulator card (a single hot ledger account). Both are
+ * spread by default so the switch's velocity rules and daily limits don't turn the run into 65 and 61 declines;
+ * a run where those are the majority of the answers fails after printing its results, as its numbers measure the
+ * decline path rather than the switch. Requests still unanswered when the drain timeout expires count as timeouts.
+ * <p>
+ * Arguments (all optional):
+ * {@code --host=localhost --port=8583 --connections=16 --rate=2000 --duration=30 --warmup=5 --drain=5
+ * --mix=withdrawal:40,purchase:30,balance:20,transfer:5,statement:5 --header=binary-2 --cards=100000
+ * --terminals=100 --summary=target/load-summary.json}
+ */
+public class LoadGenerator {
+
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private static final Map<String, TransactionType> MIX_NAMES = Map.of(
+            "balance", TransactionType.BALANCE_INQUIRY,
+            "withdrawal", TransactionType.WITHDRAWAL,
+            "purchase", TransactionType.PURCHASE,
+            "transfer", TransactionType.TRANSFER,
+            "statement", TransactionType.MINI_STATEMENT);
+
+    private static final Map<TransactionType, String> AMOUNTS = new EnumMap<>(Map.of(
+            TransactionType.BALANCE_INQUIRY, "000000000000",
+            TransactionType.WITHDRAWAL, "000000010000",
+            TransactionType.PURCHASE, "000000025000",
+            TransactionType.TRANSFER, "000000040000",
+            TransactionType.MINI_STATEMENT, "000000000000"));
+
+    // Scheduled and actual send time of an outstanding request
+    private record Pending(long intended, long sent, boolean measured) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        String host = options.getOrDefault("host", "localhost");
+        int port = Integer.parseInt(options.getOrDefault("port", "8583"));
+        int connections = Integer.parseInt(options.getOrDefault("connections", "16"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "2000"));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "30")));
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup", "5")));
+        long drainNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("drain", "5")));
+        TransactionType[] mix = parseMix(options.getOrDefault("mix",
+                "withdrawal:40,purchase:30,balance:20,transfer:5,statement:5"));
+        LengthHeaderFormat header = LengthHeaderFormat.valueOf(
+                options.getOrDefault("header", "binary-2").toUpperCase(Locale.ROOT).replace('-', '_'));
+        Path summary = Path.of(options.getOrDefault("summary", "target/load-summary.json"));
+        int cards = Integer.parseInt(options.getOrDefault("cards", "100000"));
+        int terminals = Integer.parseInt(options.getOrDefault("terminals", "100"));
+
+        AtmSimulatorClient client = new AtmSimulatorClient();
+        long intervalNanos = Math.round(1_000_000_000d / rate);
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+
+        Map<String, LongAdder> responseCodes = new ConcurrentHashMap<>();
+        List<Connection> running = new ArrayList<>(connections);
+        for (int c = 0; c < connections; c++) {
+            Connection connection = new Connection(c, connections, host, port, header, client, mix, cards,
+                    terminals, responseCodes);
+            running.add(connection);
+        }
+        System.out.printf("Offering %.0f tx/s over %d connections to %s:%d for %ds (+%ds warmup)%n",
+                rate, connections, host, port,
+                TimeUnit.NANOSECONDS.toSeconds(durationNanos), TimeUnit.NANOSECONDS.toSeconds(warmupNanos));
+        for (Connection connection : running) {
+            connection.start(start, intervalNanos, measureFrom, end);
+        }
+        for (Connection connection : running) {
+            connection.awaitSender();
+        }
+        long drainDeadline = System.nanoTime() + drainNanos;
+        for (Connection connection : running) {
+            connection.drain(drainDeadline);
+        }
+
+        Histogram latency = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+        Histogram serviceTime = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+        long sent = 0, timeouts = 0, errors = 0;
+        for (Connection connection : running) {
+            latency.add(connection.latency);
+            serviceTime.add(connection.serviceTime);
+            sent += connection.sent;
+            timeouts += connection.timeouts;
+            errors += connection.errors.sum();
+        }
+        Map<String, Long> codes = new TreeMap<>();
+        responseCodes.forEach((code, count) -> codes.put(code, count.sum()));
+
+        double seconds = durationNanos / 1e9;
+        double achieved = latency.getTotalCount() / seconds;
+        System.out.printf("%nsent %d, completed %d, timeouts %d, errors %d, achieved %.0f tx/s%n",
+                sent, latency.getTotalCount(), timeouts, errors, achieved);
+        System.out.printf("%-14s %9s %9s %9s %9s %9s%n", "(us)", "p50", "p90", "p99", "p99.9", "max");
+        printRow("latency", latency);
+        printRow("service time", serviceTime);
+        System.out.println("response codes " + codes);
+
+        String json = "{"
+                + "\"targetRate\":" + rate
+                + ",\"achievedRate\":" + Math.round(achieved)
+                + ",\"connections\":" + connections
+                + ",\"cards\":" + cards
+                + ",\"terminals\":" + terminals
+                + ",\"durationSeconds\":" + seconds
+                + ",\"sent\":" + sent
+                + ",\"completed\":" + latency.getTotalCount()
+                + ",\"timeouts\":" + timeouts
+                + ",\"errors\":" + errors
+                + ",\"latencyMicros\":" + percentilesJson(latency)
+                + ",\"serviceTimeMicros\":" + percentilesJson(serviceTime)
+                + ",\"responseCodes\":" + codesJson(codes)
+                + "}";
+        if (summary.getParent() != null) {
+            Files.createDirectories(summary.getParent());
+        }
+        Files.writeString(summary, json + System.lineSeparator());
+        System.out.println("summary written to " + summary);
+
+        // Velocity (65) and daily limit (61) declines never reach the issuer
+        long limitDeclines = codes.getOrDefault("65", 0L) + codes.getOrDefault("61", 0L);
+        if (limitDeclines * 2 > latency.getTotalCount()) {
+            throw new IllegalStateException(limitDeclines + " of " + latency.getTotalCount()
+                    + " answers were velocity (65) or daily limit (61) declines, the results above don't measure"
+                    + " the switch; spread the load with --cards and --terminals or start the switch with"
+                    + " --switch.velocity.enabled=false --switch.limits.daily.withdrawal=-1"
+                    + " --switch.limits.daily.purchase=-1");
+        }
+    }
+
+    // One persistent connection: a sender on its schedule and a reader matching replies by STAN
+    private static final class Connection {
+
+        private final int index;
+        private final int connections;
+        private final String connectionName;
+        private final int terminals;
+        private final LengthHeaderFormat header;
+        private final AtmSimulatorClient client;
+        private final TransactionType[] mix;
+        private final int cards;
+        private final Map<String, LongAdder> responseCodes;
+        private final Socket socket;
+        private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+        private final SplittableRandom random;
+
+        // Written by the reader only, read after it has stopped
+        private final Histogram latency = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+        private final Histogram serviceTime = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+        private final LongAdder errors = new LongAdder();
+        private long timeouts;
+        private long sent;
+
+        private Thread sender;
+        private Thread reader;
+
+        Connection(int index, int connections, String host, int port, LengthHeaderFormat header,
+                   AtmSimulatorClient client, TransactionType[] mix, int cards, int terminals,
+                   Map<String, LongAdder> responseCodes) throws IOException {
+            this.index = index;
+            this.connections = connections;
+            this.connectionName = String.format("LOAD%04d", index);
+            this.terminals = terminals;
+            this.header = header;
+            this.client = client;
+            this.mix = mix;
+            this.cards = cards;
+            this.responseCodes = responseCodes;
+            this.random = new SplittableRandom(index);
+            this.socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+        }
+
+        void start(long start, long intervalNanos, long measureFrom, long end) {
+            reader = Thread.ofPlatform().daemon().name("load-reader-" + index).start(this::read);
+            sender = Thread.ofVirtual().name("load-sender-" + index).start(() -> send(start, intervalNanos, measureFrom, end));
+        }
+
+        void awaitSender() throws InterruptedException {
+            sender.join();
+        }
+
+        void drain(long deadline) throws IOException, InterruptedException {
+            while (!pending.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            socket.close();
+            reader.join();
+            for (Pending outstanding : pending.values()) {
+                if (outstanding.measured()) {
+                    timeouts++;
+                }
+            }
+        }
+
+        private void send(long start, long intervalNanos, long measureFrom, long end) {
+            try {
+                OutputStream out = socket.getOutputStream();
+                for (long k = 0; ; k++) {
+                    long intended = start + (k * connections + index) * intervalNanos;
+                    if (intended >= end) {
+                        return;
+                    }
+                    long wait;
+                    while ((wait = intended - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    TransactionType type = mix[random.nextInt(mix.length)];
+                    int stan = (int) (k % 999_999) + 1;
+                    // L + connection + terminal, 8 characters (ans8)
+                    String terminalId = String.format("L%03d%04d", index % 1000, k % terminals);
+                    ISOMsg request = client.createRequest(type, AMOUNTS.get(type), String.format("%06d", stan), terminalId);
+                    if (cards > 1) {
+                        request.set(2, String.format("4%015d", random.nextInt(cards)));
+                    }
+                    byte[] payload = request.pack();
+                    byte[] frame = new byte[header.headerLength() + payload.length];
+                    header.encode(payload.length, frame, 0);
+                    System.arraycopy(payload, 0, frame, header.headerLength(), payload.length);
+
+                    boolean measured = intended >= measureFrom;
+                    pending.put(stan, new Pending(intended, System.nanoTime(), measured));
+                    out.write(frame);
+                    if (measured) {
+                        sent++;
+                    }
+                }
+            } catch (Exception e) {
+                if (!socket.isClosed()) {
+                    System.err.println(connectionName + " send failed: " + e.getMessage());
+                    errors.increment();
+                }
+            }
+        }
+
+        private void read() {
+            try {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                byte[] lengthHeader = new byte[header.headerLength()];
+                while (true) {
+                    in.readFully(lengthHeader);
+                    byte[] payload = new byte[header.decode(lengthHeader, 0)];
+                    in.readFully(payload);
+                    long now = System.nanoTime();
+
+                    ISOMsg response = client.parseResponse(payload);
+                    String stan = response.getString(11);
+                    Pending request = stan == null ? null : pending.remove(Integer.parseInt(stan));
+                    if (request == null) {
+                        // Replies without a usable STAN (e.g. the fixed system-malfunction reply) can't be timed
+                        errors.increment();
+                        continue;
+                    }
+                    if (request.measured()) {
+                        String code = response.hasField(39) ? response.getString(39) : "none";
+                        responseCodes.computeIfAbsent(code, c -> new LongAdder()).increment();
+                        latency.recordValue(Math.min((now - request.intended()) / 1000, HIGHEST_LATENCY_MICROS));
+                        serviceTime.recordValue(Math.min((now - request.sent()) / 1000, HIGHEST_LATENCY_MICROS));
+                    }
+                }
+            } catch (Exception e) {
+                if (!socket.isClosed()) {
+                    System.err.println(connectionName + " read failed: " + e.getMessage());
+                    errors.increment();
+                }
+            }
+        }
+    }
+
+    // "withdrawal:40,purchase:30" -> lookup table with one slot per unit of weight
+    private static TransactionType[] parseMix(String spec) {
+        List<TransactionType> table = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split(":");
+            TransactionType type = MIX_NAMES.get(parts[0].toLowerCase(Locale.ROOT));
+            if (type == null) {
+                throw new IllegalArgumentException("Unknown transaction in mix: " + parts[0]
+                        + " (expected one of " + MIX_NAMES.keySet() + ")");
+            }
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            for (int i = 0; i < weight; i++) {
+                table.add(type);
+            }
+        }
+        if (table.isEmpty()) {
+            throw new IllegalArgumentException("Empty transaction mix");
+        }
+        return table.toArray(TransactionType[]::new);
+    }
+
+    private static void printRow(String name, Histogram histogram) {
+        System.out.printf("%-14s %9d %9d %9d %9d %9d%n", name,
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9),
+                histogram.getMaxValue());
+    }
+
+    private static String percentilesJson(Histogram histogram) {
+        return String.format(Locale.ROOT,
+                "{\"p50\":%d,\"p90\":%d,\"p99\":%d,\"p99_9\":%d,\"max\":%d,\"mean\":%.1f}",
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9),
+                histogram.getMaxValue(), histogram.getMean());
+    }
+
+    private static String codesJson(Map<String, Long> codes) {
+        StringBuilder json = new StringBuilder("{");
+        codes.forEach((code, count) -> {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(code).append("\":").append(count);
+        });
+        return json.append('}').toString();
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,106 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.handler.AdaptiveConcurrencyLimiter;
+import com.paymentswitch.payment_switch.handler.DuplicateTransactionCache;
+import com.paymentswitch.payment_switch.handler.IsoMessageHandler;
+import com.paymentswitch.payment_switch.handler.TransactionConcurrencyLimiter;
+import com.paymentswitch.payment_switch.iso.CompiledIsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoCodec;
+import com.paymentswitch.payment_switch.iso.JposIsoCodec;
+import com.paymentswitch.payment_switch.iso.PackagerDefinition;
+import com.paymentswitch.payment_switch.iso.ResponsePacker;
+import com.paymentswitch.payment_switch.logging.TransactionLog;
+import com.paymentswitch.payment_switch.metrics.SwitchMetrics;
+import com.paymentswitch.payment_switch.transformer.IsoMessageTransformer;
+import com.paymentswitch.payment_switch.validator.IsoMessageValidator;
+import com.paymentswitch.payment_switch.velocity.VelocityChecker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jpos.iso.ISOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.ip.IpHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end IsoMessageHandler.handleMessage over the {@link BenchmarkMessages#mix() traffic mix}: decode,
+ * validate, transform, route, pack the reply. Wired by hand like the Spring context does, without the
+ * TCP adapters; {@code codec} switches between the compiled codec and GenericPackager.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 4) // the whole pipeline needs ~10s of warmup to settle
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({"compiled", "jpos"})
+    public String codec;
+
+    private IsoMessageHandler handler;
+    private Message<byte[]>[] messages;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws IOException, ISOException {
+        BenchmarkMessages.quietLogging();
+
+        PackagerDefinition definition;
+        try (InputStream xml = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            definition = PackagerDefinition.load(xml);
+        }
+        IsoCodec isoCodec = codec.equals("jpos")
+                ? new JposIsoCodec(BenchmarkMessages.packager())
+                : new CompiledIsoCodec(definition, BenchmarkMessages.packager());
+        IsoMessageTransformer transformer = BenchmarkMessages.transformer();
+        handler = new IsoMessageHandler(
+                isoCodec,
+                new ResponsePacker(isoCodec),
+                new IsoMessageValidator(),
+                transformer,
+                BenchmarkMessages.router(),
+                new TransactionConcurrencyLimiter(0),
+                new AdaptiveConcurrencyLimiter(false, 1, 1, 1, Duration.ZERO, 1, 0.5, 0),
+                new SwitchMetrics(new SimpleMeterRegistry()),
+                new TransactionLog(0),
+                // The mix repeats the same requests, which would all be answered from the cache
+                BenchmarkMessages.duplicates(false),
+                // One card and terminal would hit every limit; VelocityBenchmark measures the check
+                new VelocityChecker(false, new String[0], 8, 1, 1, new SimpleMeterRegistry()),
+                // Only admit sends to it, handleMessage is called directly
+                new DirectChannel());
+
+        byte[][] mix = BenchmarkMessages.mix();
+        messages = new Message[mix.length];
+        for (int i = 0; i < mix.length; i++) {
+            messages[i] = MessageBuilder.withPayload(mix[i])
+                    .setHeader(IpHeaders.CONNECTION_ID, "benchmark-connection")
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public Message<byte[]> handleMessage() {
+        Message<byte[]> message = messages[next];
+        next = next + 1 == messages.length ? 0 : next + 1;
+        return handler.handleMessage(message);
+    }
+}
@@ -0,0 +1,77 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.model.ProcessingCode;
+import com.paymentswitch.payment_switch.model.TransactionRequest;
+import com.paymentswitch.payment_switch.model.TransactionResponse;
+import com.paymentswitch.payment_switch.router.TransactionRouter;
+import com.paymentswitch.payment_switch.transformer.IsoMessageTransformer;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProcessingCode.parse and TransactionRouter.route (which includes the simulated issuer) over the
+ * {@link BenchmarkMessages#mix() traffic mix}. {@code deadline} 0s calls the issuer inline, 2s hands it to a
+ * virtual thread under a timer wheel deadline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+    @Param({"0s", "2s"})
+    public String deadline;
+
+    private TransactionRouter router;
+    private TransactionRequest[] requests;
+    private int next;
+
+    @Setup
+    public void setup() throws ISOException {
+        BenchmarkMessages.quietLogging();
+        router = BenchmarkMessages.router(Duration.parse("PT" + deadline.toUpperCase()));
+        IsoMessageTransformer transformer = BenchmarkMessages.transformer();
+        byte[][] mix = BenchmarkMessages.mix();
+        requests = new TransactionRequest[mix.length];
+        for (int i = 0; i < mix.length; i++) {
+            ISOMsg msg = new ISOMsg();
+            msg.setPackager(BenchmarkMessages.packager());
+            msg.unpack(mix[i]);
+            requests[i] = transformer.toTransactionRequest(IsoMessageView.of(msg));
+        }
+    }
+
+    @Benchmark
+    public ProcessingCode parse() {
+        TransactionRequest request = requests[nextIndex()];
+        return ProcessingCode.parse(request.processingCode(), request.transactionAmount(), request.currencyExponent());
+    }
+
+    @Benchmark
+    public TransactionResponse route() {
+        return router.route(requests[nextIndex()]);
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == requests.length ? 0 : index + 1;
+        return index;
+    }
+}
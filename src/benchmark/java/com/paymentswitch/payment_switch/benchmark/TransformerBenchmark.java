@@ -0,0 +1,74 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.model.TransactionRequest;
+import com.paymentswitch.payment_switch.model.TransactionResponse;
+import com.paymentswitch.payment_switch.router.TransactionRouter;
+import com.paymentswitch.payment_switch.transformer.IsoMessageTransformer;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IsoMessageTransformer in both directions over the {@link BenchmarkMessages#mix() traffic mix}. Requests are
+ * unpacked up front, so only the mapping to and from the domain records is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformerBenchmark {
+
+    private IsoMessageTransformer transformer;
+    private IsoMessageView[] requests;
+    private TransactionResponse[] responses;
+    private int next;
+
+    @Setup
+    public void setup() throws ISOException {
+        BenchmarkMessages.quietLogging();
+        transformer = BenchmarkMessages.transformer();
+        TransactionRouter router = BenchmarkMessages.router();
+
+        byte[][] mix = BenchmarkMessages.mix();
+        requests = new IsoMessageView[mix.length];
+        responses = new TransactionResponse[mix.length];
+        for (int i = 0; i < mix.length; i++) {
+            ISOMsg msg = new ISOMsg();
+            msg.setPackager(BenchmarkMessages.packager());
+            msg.unpack(mix[i]);
+            requests[i] = IsoMessageView.of(msg);
+            TransactionRequest request = transformer.toTransactionRequest(requests[i]);
+            responses[i] = router.route(request);
+        }
+    }
+
+    @Benchmark
+    public TransactionRequest toTransactionRequest() {
+        return transformer.toTransactionRequest(requests[nextIndex()]);
+    }
+
+    @Benchmark
+    public ISOMsg toIsoMessage() throws ISOException {
+        return transformer.toIsoMessage(responses[nextIndex()]);
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == requests.length ? 0 : index + 1;
+        return index;
+    }
+}
@@ -0,0 +1,82 @@
+package com.paymentswitch.payment_switch.benchmark;
+
+import com.paymentswitch.payment_switch.iso.CompiledIsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.iso.PackagerDefinition;
+import com.paymentswitch.payment_switch.model.ValidationResult;
+import com.paymentswitch.payment_switch.validator.IsoMessageValidator;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IsoMessageValidator on a valid request and on the common rejects, through the lazy view the handler uses.
+ * Views are created once, so field values are decoded on the first call only and validation itself is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+    private final IsoMessageValidator validator = new IsoMessageValidator();
+    private CompiledIsoCodec codec;
+    private IsoMessageView valid;
+    private IsoMessageView missingTerminal;
+    private IsoMessageView badPan;
+    private IsoMessageView badMti;
+
+    @Setup
+    public void setup() throws IOException, ISOException {
+        BenchmarkMessages.quietLogging();
+        try (InputStream xml = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            codec = new CompiledIsoCodec(PackagerDefinition.load(xml), BenchmarkMessages.packager());
+        }
+        valid = codec.read(BenchmarkMessages.withdrawalRequest());
+        ISOMsg msg = codec.unpack(BenchmarkMessages.withdrawalRequest());
+        msg.unset(41);
+        missingTerminal = codec.read(codec.pack(msg));
+        msg = codec.unpack(BenchmarkMessages.withdrawalRequest());
+        msg.set(2, "41111111111X1111");
+        badPan = codec.read(codec.pack(msg));
+        msg = codec.unpack(BenchmarkMessages.withdrawalRequest());
+        msg.setMTI("0800");
+        badMti = codec.read(codec.pack(msg));
+    }
+
+    @Benchmark
+    public ValidationResult pass() {
+        return validator.validate(valid);
+    }
+
+    @Benchmark
+    public ValidationResult missingField() {
+        return validator.validate(missingTerminal);
+    }
+
+    @Benchmark
+    public ValidationResult invalidPan() {
+        return validator.validate(badPan);
+    }
+
+    @Benchmark
+    public ValidationResult invalidMti() {
+        return validator.validate(badMti);
+    }
+}
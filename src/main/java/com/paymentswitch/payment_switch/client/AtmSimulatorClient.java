@@ -1,5 +1,6 @@
 package com.paymentswitch.payment_switch.client;
 
+import com.paymentswitch.payment_switch.logging.PanMasker;
 import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOMsg;
 import org.jpos.iso.ISOUtil;
@@ -19,6 +20,26 @@ public class AtmSimulatorClient {
     private static final int PORT= 8583;
     private static final DateTimeFormatter ISO_DATE_FORMAT=DateTimeFormatter.ofPattern("MMddHHmmss");
     private GenericPackager packager;
+
+    // ATM transactions and their processing codes (field 3)
+    public enum TransactionType {
+        BALANCE_INQUIRY("310000"),
+        WITHDRAWAL("010000"),
+        PURCHASE("000000"),
+        TRANSFER("400000"),
+        MINI_STATEMENT("380000");
+
+        private final String processingCode;
+
+        TransactionType(String processingCode) {
+            this.processingCode = processingCode;
+        }
+
+        public String processingCode() {
+            return processingCode;
+        }
+    }
+
     public AtmSimulatorClient() throws Exception {
         try (InputStream is = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
             packager = new GenericPackager(is);
@@ -48,23 +69,38 @@ public class AtmSimulatorClient {
     }
 
     public void sendBalanceInquiry() throws Exception{
-        ISOMsg msg= createBaseMessage("0200");
-        msg.set(3,"310000");
-        msg.set(4,"000000000000");
-        sendAndReceive(msg);
+        sendAndReceive(createRequest(TransactionType.BALANCE_INQUIRY, "000000000000"));
     }
 
     public void sendWithDrawal() throws Exception{
-        ISOMsg msg= createBaseMessage("0200");
-        msg.set(3,"010000");
-        msg.set(4,"000000010000");
-        sendAndReceive(msg);
+        sendAndReceive(createRequest(TransactionType.WITHDRAWAL, "000000010000"));
     }
     public void sendPurchase() throws Exception{
+        sendAndReceive(createRequest(TransactionType.PURCHASE, "000000025000"));
+    }
+
+    // 0200 request for a transaction type; amount in minor units, 12 digits
+    public ISOMsg createRequest(TransactionType type, String amount) throws ISOException {
         ISOMsg msg = createBaseMessage("0200");
-        msg.set(3,"000000");
-        msg.set(4,"000000025000");
-        sendAndReceive(msg);
+        msg.set(3, type.processingCode());
+        msg.set(4, amount);
+        return msg;
+    }
+
+    // Same, for a given STAN and terminal (load generation keeps them unique per connection)
+    public ISOMsg createRequest(TransactionType type, String amount, String stan, String terminalId)
+            throws ISOException {
+        ISOMsg msg = createRequest(type, amount);
+        msg.set(11, stan);
+        msg.set(41, terminalId);
+        return msg;
+    }
+
+    public ISOMsg parseResponse(byte[] responseBytes) throws ISOException {
+        ISOMsg response = new ISOMsg();
+        response.setPackager(packager);
+        response.unpack(responseBytes);
+        return response;
     }
 
     private ISOMsg createBaseMessage(String mti)throws ISOException {
@@ -103,13 +139,13 @@ public class AtmSimulatorClient {
 
             System.out.println("Request sent:");
             System.out.println("  MTI: " + request.getMTI());
-            System.out.println("  PAN: " + maskPAN(request.getString(2)));
+            System.out.println("  PAN: " + PanMasker.mask(request.getString(2)));
             System.out.println("  Processing Code: " + request.getString(3));
             System.out.println("  Amount: " + request.getString(4));
             System.out.println("Time:" +request.getString(7));
             System.out.println("  STAN: " + request.getString(11));
             System.out.println("  Terminal ID: " + request.getString(41)); // Show terminal ID
-            System.out.println("  Request bytes: " + ISOUtil.hexString(requestBytes));
+            System.out.println("  Request bytes: " + ISOUtil.hexString(PanMasker.maskIn(requestBytes, request.getString(2))));
             System.out.println("  Request length: " + requestBytes.length + " bytes");
 
             // Read response length header
@@ -143,25 +179,26 @@ public class AtmSimulatorClient {
             }
 
             System.out.println("Response bytes read: " + totalRead);
-            System.out.println("Response hex: " + ISOUtil.hexString(responseBytes));
+            System.out.println("Response hex: " + ISOUtil.hexString(PanMasker.maskIn(responseBytes, request.getString(2))));
 
             // Unpack response
-            ISOMsg response = new ISOMsg();
-            response.setPackager(packager);
-            response.unpack(responseBytes);
+            ISOMsg response = parseResponse(responseBytes);
 
             System.out.println("\n Response received:");
             System.out.println("MTI :"+ response.getMTI());
             System.out.println("Time:" +request.getString(7));
             System.out.println("STAN :"+ response.getString(11));
             System.out.println("Response code : "+ response.getString(39)+ "(" + getResponseDescription(response.getString(39))+")");
+            if(response.hasField(37)){
+                System.out.println("RRN:" + response.getString(37));
+            }
             if(response.hasField(38)){
                 System.out.println("Auth code:" + response.getString(38));
             }
             if(response.hasField(48)){
                 System.out.println("Additional Data: "+response.getString(48));
             }
-            System.out.println("Response bytes: "+ ISOUtil.hexString(responseBytes));
+            System.out.println("Response bytes: "+ ISOUtil.hexString(PanMasker.maskIn(responseBytes, request.getString(2))));
 
         } catch (Exception e) {
             System.err.println("Error communicating with switch: "+e.getMessage());
@@ -169,10 +206,6 @@ public class AtmSimulatorClient {
         }
     }
 
-    private String maskPAN(String pan){
-        if(pan==null || pan.length() <10) return "****";
-        return pan.substring(0,6)+"*******"+pan.substring(pan.length()-4);
-    }
     private String getResponseDescription(String code){
         return switch (code){
             case "00" -> "Approved";
@@ -8,6 +8,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+/**
+ * Original 2-byte length header framing.
+ *
+ * @deprecated replaced by {@link com.paymentswitch.payment_switch.framing.LengthPrefixedFrameSerializer};
+ * kept only as the baseline for the framing benchmark.
+ */
+@Deprecated
 public class ByteArrayLengthHeader2ByteSerializer extends AbstractByteArraySerializer {
 
     @Override
@@ -0,0 +1,90 @@
+package com.paymentswitch.payment_switch.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationListener;
+import org.springframework.integration.ip.IpHeaders;
+import org.springframework.integration.ip.tcp.connection.TcpConnectionCloseEvent;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+// Caps the requests one terminal connection has in the pipeline when pipelining is enabled.
+// Once a connection reaches the cap its reader blocks in preSend, so that socket stops being read
+// (TCP backpressure) while other connections keep going. The permit is returned after the handler
+// has produced the response, on the worker thread, to the semaphore it was taken from: the message
+// carries it, as the connection may have closed in between.
+@Slf4j
+public class ConnectionInFlightLimiter
+        implements ExecutorChannelInterceptor, ApplicationListener<TcpConnectionCloseEvent> {
+
+    static final String PERMIT_HEADER = "switch_inFlightPermit";
+
+    private final int maxInFlightPerConnection;
+    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    public ConnectionInFlightLimiter(int maxInFlightPerConnection) {
+        this.maxInFlightPerConnection = maxInFlightPerConnection;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String connectionId = connectionId(message);
+        if (connectionId == null) {
+            return message;
+        }
+        Semaphore semaphore = permits.computeIfAbsent(connectionId, id -> new Semaphore(maxInFlightPerConnection));
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException(message, "Interrupted waiting for in-flight slot on " + connectionId, e);
+        }
+        return MessageBuilder.fromMessage(message).setHeader(PERMIT_HEADER, semaphore).build();
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        // Handed to the executor: released in afterMessageHandled; rejected: release now
+        if (!sent || ex != null) {
+            release(message);
+        }
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        release(message);
+    }
+
+    @Override
+    public void onApplicationEvent(TcpConnectionCloseEvent event) {
+        Semaphore semaphore = permits.remove(event.getConnectionId());
+        if (semaphore != null) {
+            // Wakes a reader blocked at the cap, which would otherwise wait for releases that no longer come
+            semaphore.release(maxInFlightPerConnection);
+        }
+    }
+
+    public int inFlight() {
+        return permits.values().stream()
+                .mapToInt(semaphore -> maxInFlightPerConnection - semaphore.availablePermits())
+                .sum();
+    }
+
+    private void release(Message<?> message) {
+        Semaphore semaphore = message.getHeaders().get(PERMIT_HEADER, Semaphore.class);
+        if (semaphore != null) {
+            semaphore.release();
+        }
+    }
+
+    private String connectionId(Message<?> message) {
+        return message.getHeaders().get(IpHeaders.CONNECTION_ID, String.class);
+    }
+}
@@ -0,0 +1,46 @@
+package com.paymentswitch.payment_switch.config;
+
+import com.paymentswitch.payment_switch.issuer.GuardedIssuerGateway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+// Bulkhead and circuit breaker settings, applied to each issuer of switch.issuers separately
+@Configuration
+public class IssuerConfig {
+
+    @Value("${switch.issuer.guard.enabled:true}")
+    private boolean enabled;
+
+    @Value("${switch.issuer.guard.max-concurrent:200}")
+    private int maxConcurrent;
+
+    @Value("${switch.issuer.guard.window:100}")
+    private int window;
+
+    @Value("${switch.issuer.guard.minimum-calls:20}")
+    private int minimumCalls;
+
+    @Value("${switch.issuer.guard.failure-rate:50}")
+    private int failureRate;
+
+    @Value("${switch.issuer.guard.slow-call:1s}")
+    private Duration slowCall;
+
+    @Value("${switch.issuer.guard.slow-call-rate:80}")
+    private int slowCallRate;
+
+    @Value("${switch.issuer.guard.open-duration:10s}")
+    private Duration openDuration;
+
+    @Value("${switch.issuer.guard.half-open-probes:5}")
+    private int halfOpenProbes;
+
+    @Bean
+    public GuardedIssuerGateway.Settings issuerGuardSettings() {
+        return new GuardedIssuerGateway.Settings(enabled, maxConcurrent, window, minimumCalls, failureRate, slowCall,
+                slowCallRate, openDuration, halfOpenProbes);
+    }
+}
@@ -1,21 +1,60 @@
 package com.paymentswitch.payment_switch.config;
 
+import com.paymentswitch.payment_switch.iso.CompiledIsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoCodec;
+import com.paymentswitch.payment_switch.iso.JposIsoCodec;
+import com.paymentswitch.payment_switch.iso.PackagerDefinition;
+import com.paymentswitch.payment_switch.iso.ResponsePacker;
 import org.jpos.iso.ISOException;
 import org.jpos.iso.packager.GenericPackager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 @Configuration
 public class JposConfig {
 
+    private static final String PACKAGER_DEFINITION = "packager/iso87ascii.xml";
+
+    // How messages are packed and unpacked on the hot path
+    public enum CodecMode {
+        COMPILED, // field tables compiled from the packager XML, works on the byte array directly
+        JPOS      // GenericPackager, kept as fallback
+    }
+
+    @Value("${switch.iso.codec:compiled}")
+    private CodecMode codecMode;
+
     @Bean
     public GenericPackager isoPackager() throws ISOException, IOException {
         GenericPackager packager = new GenericPackager();
-        packager.readFile(new ClassPathResource("packager/iso87ascii.xml").getInputStream());
+        packager.readFile(new ClassPathResource(PACKAGER_DEFINITION).getInputStream());
         return packager;
     }
 
+    @Bean
+    public PackagerDefinition packagerDefinition() throws IOException {
+        try (InputStream xml = new ClassPathResource(PACKAGER_DEFINITION).getInputStream()) {
+            return PackagerDefinition.load(xml);
+        }
+    }
+
+    @Bean
+    public IsoCodec isoCodec(PackagerDefinition packagerDefinition, GenericPackager isoPackager) {
+        return switch (codecMode) {
+            case JPOS -> new JposIsoCodec(isoPackager);
+            case COMPILED -> new CompiledIsoCodec(packagerDefinition, isoPackager);
+        };
+    }
+
+    // On the selected codec, so the jPOS fallback covers replies as well as requests
+    @Bean
+    public ResponsePacker responsePacker(IsoCodec isoCodec) throws ISOException {
+        return new ResponsePacker(isoCodec);
+    }
+
 }
@@ -0,0 +1,140 @@
+package com.paymentswitch.payment_switch.config;
+
+import com.paymentswitch.payment_switch.handler.AdaptiveConcurrencyLimiter;
+import com.paymentswitch.payment_switch.handler.DuplicateTransactionCache;
+import com.paymentswitch.payment_switch.handler.TransactionConcurrencyLimiter;
+import com.paymentswitch.payment_switch.issuer.GuardedIssuerGateway;
+import com.paymentswitch.payment_switch.issuer.IsoLinkIssuerGateway;
+import com.paymentswitch.payment_switch.issuer.IsoLinkPool;
+import com.paymentswitch.payment_switch.issuer.IssuerDirectory;
+import com.paymentswitch.payment_switch.issuer.IssuerGateway;
+import com.paymentswitch.payment_switch.router.BinRoutes;
+import com.paymentswitch.payment_switch.router.TransactionRouter;
+import com.paymentswitch.payment_switch.velocity.DailyLimits;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.ip.tcp.connection.AbstractServerConnectionFactory;
+
+// Live gauges next to the stage timers of SwitchMetrics, all served by actuator on the web port
+@Configuration
+public class MetricsConfig {
+
+    // MTIs and response codes come off the wire; cap the distinct values so garbage can't blow up the registry
+    @Bean
+    public MeterFilter switchMtiCardinality() {
+        return MeterFilter.maximumAllowableTags("switch", "mti", 20, MeterFilter.deny());
+    }
+
+    @Bean
+    public MeterFilter switchResponseCodeCardinality() {
+        return MeterFilter.maximumAllowableTags("switch", "response_code", 40, MeterFilter.deny());
+    }
+
+    @Bean
+    public MeterBinder switchGauges(TransactionConcurrencyLimiter concurrencyLimiter,
+                                    AdaptiveConcurrencyLimiter admission,
+                                    ConnectionInFlightLimiter connectionInFlightLimiter,
+                                    AbstractServerConnectionFactory serverConnectionFactory,
+                                    DuplicateTransactionCache duplicates,
+                                    DailyLimits dailyLimits,
+                                    TransactionRouter router,
+                                    BinRoutes binRoutes,
+                                    IssuerDirectory issuers) {
+        return registry -> {
+            Gauge.builder("switch.inflight", concurrencyLimiter, TransactionConcurrencyLimiter::inFlight)
+                    .description("Transactions currently in the pipeline")
+                    .register(registry);
+            Gauge.builder("switch.admission.limit", admission, AdaptiveConcurrencyLimiter::limit)
+                    .description("Requests the switch currently admits at once, adapted to processing latency")
+                    .register(registry);
+            Gauge.builder("switch.admission.inflight", admission, AdaptiveConcurrencyLimiter::inFlight)
+                    .description("Requests admitted and not yet answered")
+                    .register(registry);
+            FunctionCounter.builder("switch.admission.limit.changes", admission, AdaptiveConcurrencyLimiter::increases)
+                    .description("Adjustments of the admission limit")
+                    .tag("direction", "increase")
+                    .register(registry);
+            FunctionCounter.builder("switch.admission.limit.changes", admission, AdaptiveConcurrencyLimiter::decreases)
+                    .description("Adjustments of the admission limit")
+                    .tag("direction", "decrease")
+                    .register(registry);
+            for (AdaptiveConcurrencyLimiter.Priority priority : AdaptiveConcurrencyLimiter.Priority.values()) {
+                FunctionCounter.builder("switch.admission.shed", admission, a -> a.shed(priority))
+                        .description("Requests answered 91 at the edge, without being unpacked")
+                        .tag("priority", priority.name().toLowerCase())
+                        .register(registry);
+            }
+            Gauge.builder("switch.pipeline.inflight", connectionInFlightLimiter, ConnectionInFlightLimiter::inFlight)
+                    .description("Requests accepted on pipelined connections and not yet answered")
+                    .register(registry);
+            Gauge.builder("switch.connections", serverConnectionFactory, factory -> factory.getOpenConnectionIds().size())
+                    .description("Open terminal connections")
+                    .register(registry);
+            Gauge.builder("switch.duplicates.entries", duplicates, DuplicateTransactionCache::entries)
+                    .description("Requests remembered for retransmission detection")
+                    .register(registry);
+            Gauge.builder("switch.duplicates.bytes", duplicates, DuplicateTransactionCache::bytes)
+                    .description("Estimated memory held by the retransmission cache")
+                    .register(registry);
+            FunctionCounter.builder("switch.limits.daily.evictions", dailyLimits, DailyLimits::evictions)
+                    .description("Cards whose daily totals were dropped from a full limits table")
+                    .register(registry);
+            Gauge.builder("switch.issuer.pending", router, TransactionRouter::pending)
+                    .description("Issuer calls still running, including those already answered with 91")
+                    .register(registry);
+            FunctionCounter.builder("switch.issuer.timeouts", router, TransactionRouter::timeouts)
+                    .description("Transactions answered 91 because the issuer missed its deadline")
+                    .register(registry);
+            FunctionCounter.builder("switch.issuer.late", router, TransactionRouter::lateResponses)
+                    .description("Issuer answers discarded after the deadline, approvals among them reversed")
+                    .register(registry);
+            Gauge.builder("switch.routing.ranges", binRoutes, routes -> routes.table().ranges())
+                    .description("BIN ranges in the routing table in use")
+                    .register(registry);
+            for (IssuerGateway issuer : issuers.all()) {
+                if (issuer instanceof GuardedIssuerGateway guarded) {
+                    Gauge.builder("switch.issuer.circuit.state", guarded, g -> g.state().ordinal())
+                            .description("Circuit breaker state: 0 closed, 1 half-open, 2 open")
+                            .tag("issuer", guarded.name())
+                            .register(registry);
+                    FunctionCounter.builder("switch.issuer.circuit.opened", guarded, GuardedIssuerGateway::circuitOpened)
+                            .description("Times the circuit breaker opened")
+                            .tag("issuer", guarded.name())
+                            .register(registry);
+                    Gauge.builder("switch.issuer.bulkhead.inflight", guarded, GuardedIssuerGateway::inFlight)
+                            .description("Calls in flight against the issuer's bulkhead limit")
+                            .tag("issuer", guarded.name())
+                            .register(registry);
+                    FunctionCounter.builder("switch.issuer.rejected", guarded, GuardedIssuerGateway::rejectedOpen)
+                            .description("Transactions answered 91 without calling the issuer")
+                            .tags("issuer", guarded.name(), "reason", "circuit_open")
+                            .register(registry);
+                    FunctionCounter.builder("switch.issuer.rejected", guarded, GuardedIssuerGateway::rejectedFull)
+                            .description("Transactions answered 91 without calling the issuer")
+                            .tags("issuer", guarded.name(), "reason", "bulkhead_full")
+                            .register(registry);
+                    issuer = guarded.delegate();
+                }
+                if (issuer instanceof IsoLinkIssuerGateway linked) {
+                    IsoLinkPool link = linked.link();
+                    Gauge.builder("switch.issuer.link.connections", link, IsoLinkPool::connected)
+                            .description("Connections to the issuer host currently up")
+                            .tag("issuer", link.name())
+                            .register(registry);
+                    Gauge.builder("switch.issuer.link.pending", link, IsoLinkPool::pending)
+                            .description("Requests sent to the issuer host and not yet answered")
+                            .tag("issuer", link.name())
+                            .register(registry);
+                    FunctionCounter.builder("switch.issuer.link.reconnects", link, IsoLinkPool::reconnects)
+                            .description("Reconnect attempts after a connection to the issuer host dropped")
+                            .tag("issuer", link.name())
+                            .register(registry);
+                }
+            }
+        };
+    }
+}
@@ -1,35 +1,125 @@
 package com.paymentswitch.payment_switch.config;
 
+import com.paymentswitch.payment_switch.framing.BufferedNetConnectionSupport;
+import com.paymentswitch.payment_switch.framing.FrameBufferPool;
+import com.paymentswitch.payment_switch.framing.LengthHeaderFormat;
+import com.paymentswitch.payment_switch.framing.LengthPrefixedFrameSerializer;
+import com.paymentswitch.payment_switch.metrics.SwitchMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
 import org.springframework.integration.ip.tcp.connection.AbstractServerConnectionFactory;
 import org.springframework.integration.ip.tcp.connection.TcpNetServerConnectionFactory;
+import org.springframework.integration.ip.tcp.connection.TcpNioServerConnectionFactory;
 import org.springframework.integration.ip.tcp.inbound.TcpReceivingChannelAdapter;
 import org.springframework.integration.ip.tcp.outbound.TcpSendingMessageHandler;
-import org.springframework.integration.ip.tcp.serializer.ByteArrayLengthHeaderSerializer;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
 
 @Configuration
+@RequiredArgsConstructor
 public class TcpServerConfig {
 
+    // Listener implementation for the ISO 8583 port
+    public enum ListenerMode {
+        BLOCKING, // one platform thread blocked per open connection (TcpNet)
+        NIO       // selector thread multiplexes all connections, workers only run for ready frames (TcpNio)
+    }
+
+    // Threads that read connections and run the transaction pipeline
+    public enum ExecutionMode {
+        PLATFORM, // the connection factory's own pooled platform threads
+        VIRTUAL   // a fresh virtual thread per connection reader (and so per transaction)
+    }
+
     @Value("${switch.tcp.port}")
     private int port;
 
+    @Value("${spring.integration.tcp.accept-backlog:100}")
+    private int acceptBacklog;
+
+    // 0 keeps idle terminals connected, so the nio mode holds them without a thread
+    @Value("${spring.integration.tcp.so-timeout:0}")
+    private int soTimeout;
+
+    @Value("${switch.tcp.mode:blocking}")
+    private ListenerMode mode;
+
+    @Value("${switch.tcp.nio.direct-buffers:true}")
+    private boolean directBuffers;
+
+    @Value("${switch.tcp.framing.header:binary-2}")
+    private LengthHeaderFormat headerFormat;
+
+    @Value("${switch.tcp.framing.max-frame-size:2048}")
+    private int maxFrameSize;
+
+    @Value("${switch.tcp.framing.buffer-pool-size:256}")
+    private int bufferPoolSize;
+
+    @Value("${switch.execution.mode:platform}")
+    private ExecutionMode executionMode;
+
+    @Value("${switch.tcp.pipelining.enabled:false}")
+    private boolean pipelining;
+
+    @Value("${switch.tcp.pipelining.max-in-flight-per-connection:16}")
+    private int maxInFlightPerConnection;
+
+    @Value("${switch.tcp.pipelining.workers:64}")
+    private int pipelineWorkers;
+
+    @Value("${switch.tcp.pipelining.queue-capacity:1000}")
+    private int pipelineQueueCapacity;
+
+    private final SwitchMetrics metrics;
+
+    private ThreadPoolTaskExecutor pipelinePool;
+
     @Bean
     public AbstractServerConnectionFactory serverConnectionFactory() {
-        TcpNetServerConnectionFactory factory = new TcpNetServerConnectionFactory(port);
+        AbstractServerConnectionFactory factory = switch (mode) {
+            case BLOCKING -> {
+                TcpNetServerConnectionFactory net = new TcpNetServerConnectionFactory(port);
+                net.setTcpNetConnectionSupport(
+                        new BufferedNetConnectionSupport(headerFormat.headerLength() + maxFrameSize));
+                yield net;
+            }
+            case NIO -> {
+                TcpNioServerConnectionFactory nio = new TcpNioServerConnectionFactory(port);
+                nio.setUsingDirectBuffers(directBuffers);
+                yield nio;
+            }
+        };
         factory.setSerializer(lengthHeaderSerializer());
         factory.setDeserializer(lengthHeaderSerializer());
         factory.setSingleUse(false);
+        factory.setBacklog(acceptBacklog);
+        factory.setSoTimeout(soTimeout);
+        // Replies are single small frames; Nagle would hold each one back waiting for the terminal's delayed ACK
+        factory.setSoTcpNoDelay(true);
+        if (executionMode == ExecutionMode.VIRTUAL) {
+            factory.setTaskExecutor(new VirtualThreadTaskExecutor("iso-conn-"));
+        }
         return factory;
     }
 
     @Bean
-    public ByteArrayLengthHeader2ByteSerializer lengthHeaderSerializer() {
-        return new ByteArrayLengthHeader2ByteSerializer();
+    public FrameBufferPool frameBufferPool() {
+        return new FrameBufferPool(bufferPoolSize, headerFormat.headerLength() + maxFrameSize, false);
+    }
+
+    @Bean
+    public LengthPrefixedFrameSerializer lengthHeaderSerializer() {
+        return new LengthPrefixedFrameSerializer(headerFormat, maxFrameSize, frameBufferPool(), metrics);
     }
 
 
@@ -41,11 +131,30 @@ public class TcpServerConfig {
         return adapter;
     }
 
+    // Read by the reader thread, which runs admission before the pipeline
     @Bean
     public MessageChannel inboundChannel() {
         return new DirectChannel();
     }
 
+    // Without pipelining the reader thread runs the handler, so one connection processes one message at a time.
+    // With pipelining every request is handed to a worker and its response is written as soon as it is ready;
+    // the terminal correlates responses by STAN (11) and terminal ID (41).
+    @Bean
+    public MessageChannel pipelineChannel() {
+        if (!pipelining) {
+            return new DirectChannel();
+        }
+        ExecutorChannel channel = new ExecutorChannel(pipelineExecutor());
+        channel.addInterceptor(connectionInFlightLimiter());
+        return channel;
+    }
+
+    @Bean
+    public ConnectionInFlightLimiter connectionInFlightLimiter() {
+        return new ConnectionInFlightLimiter(maxInFlightPerConnection);
+    }
+
     @Bean
     public MessageChannel outboundChannel() {
         return new DirectChannel();
@@ -59,4 +168,25 @@ public class TcpServerConfig {
         return handler;
     }
 
+    private Executor pipelineExecutor() {
+        if (executionMode == ExecutionMode.VIRTUAL) {
+            return new VirtualThreadTaskExecutor("iso-txn-");
+        }
+        pipelinePool = new ThreadPoolTaskExecutor();
+        pipelinePool.setCorePoolSize(pipelineWorkers);
+        pipelinePool.setMaxPoolSize(pipelineWorkers);
+        // Past it requests are rejected, and answered 91 on the reader thread
+        pipelinePool.setQueueCapacity(pipelineQueueCapacity);
+        pipelinePool.setThreadNamePrefix("iso-txn-");
+        pipelinePool.initialize();
+        return pipelinePool;
+    }
+
+    @PreDestroy
+    public void shutdownPipeline() {
+        if (pipelinePool != null) {
+            pipelinePool.shutdown();
+        }
+    }
+
     }
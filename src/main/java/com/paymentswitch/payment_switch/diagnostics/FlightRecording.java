@@ -0,0 +1,78 @@
+package com.paymentswitch.payment_switch.diagnostics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+
+// Always-on flight recording: the JDK's default profile (GC, safepoints, locks, I/O) plus the transaction
+// events of transactions slower than the threshold, kept for max-age and written to the file on shutdown.
+// Dump it earlier with: jcmd <pid> JFR.dump name=payment-switch filename=<file>
+// Without this, the same events can be enabled with -XX:StartFlightRecording and
+// com.paymentswitch.Transaction#threshold in a .jfc file.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "switch.jfr.enabled", havingValue = "true")
+public class FlightRecording implements SmartLifecycle {
+
+    static final String RECORDING_NAME = "payment-switch";
+
+    private final Duration threshold;
+    private final Duration maxAge;
+    private final Path file;
+    private volatile Recording recording;
+
+    public FlightRecording(
+            @Value("${switch.jfr.threshold:20ms}") Duration threshold,
+            @Value("${switch.jfr.max-age:1h}") Duration maxAge,
+            @Value("${switch.jfr.file:logs/payment-switch.jfr}") Path file) {
+        this.threshold = threshold;
+        this.maxAge = maxAge;
+        this.file = file;
+    }
+
+    @Override
+    public void start() {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Recording started = new Recording(Configuration.getConfiguration("default"));
+            started.setName(RECORDING_NAME);
+            started.setToDisk(true);
+            started.setMaxAge(maxAge);
+            started.setDestination(file);
+            started.enable(TransactionEvent.NAME).withThreshold(threshold);
+            started.enable(StageEvent.NAME).withThreshold(Duration.ZERO);
+            started.start();
+            recording = started;
+            log.info("Flight recording of transactions slower than {} ms, written to {}", threshold.toMillis(), file);
+        } catch (IOException | ParseException e) {
+            log.error("Could not start the flight recording", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        Recording started = recording;
+        recording = null;
+        if (started != null) {
+            started.stop(); // writes the destination file
+            started.close();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return recording != null;
+    }
+}
@@ -0,0 +1,119 @@
+package com.paymentswitch.payment_switch.diagnostics;
+
+import com.paymentswitch.payment_switch.metrics.Stage;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Offline per-stage latency breakdown of a flight recording.
+ * <p>
+ * Reads the transaction and stage events from a {@code .jfr} file and prints, per stage, the count, mean,
+ * percentiles and the share of total transaction time, the response code counts, and the slowest transactions
+ * with their stage breakdown.
+ * <p>
+ * {@code java -cp target/classes com.paymentswitch.payment_switch.diagnostics.JfrSummary logs/payment-switch.jfr --top=10}
+ */
+public class JfrSummary {
+
+    // Stages in pipeline order, names from a newer build after the known ones
+    private static final Comparator<String> PIPELINE_ORDER = Comparator
+            .comparingInt((String tag) -> Arrays.stream(Stage.values())
+                    .filter(stage -> stage.tag().equals(tag))
+                    .mapToInt(Stage::ordinal)
+                    .findFirst()
+                    .orElse(Integer.MAX_VALUE))
+            .thenComparing(Comparator.naturalOrder());
+
+    private record Transaction(long id, long nanos, String stan, String terminalId, String processingCode,
+                               String responseCode) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: JfrSummary <recording.jfr> [--top=10]");
+            System.exit(2);
+        }
+        int top = 10;
+        for (String arg : args) {
+            if (arg.startsWith("--top=")) {
+                top = Integer.parseInt(arg.substring("--top=".length()));
+            }
+        }
+
+        List<Transaction> transactions = new ArrayList<>();
+        Map<String, List<Long>> stageNanos = new TreeMap<>(PIPELINE_ORDER);
+        Map<Long, Map<String, Long>> stagesById = new HashMap<>();
+        try (RecordingFile file = new RecordingFile(Path.of(args[0]))) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                String name = event.getEventType().getName();
+                long nanos = event.getDuration().toNanos();
+                if (name.equals(TransactionEvent.NAME)) {
+                    transactions.add(new Transaction(event.getLong("transactionId"), nanos,
+                            event.getString("stan"), event.getString("terminalId"),
+                            event.getString("processingCode"), event.getString("responseCode")));
+                } else if (name.equals(StageEvent.NAME)) {
+                    String stage = event.getString("stage");
+                    stageNanos.computeIfAbsent(stage, s -> new ArrayList<>()).add(nanos);
+                    stagesById.computeIfAbsent(event.getLong("transactionId"), id -> new TreeMap<>(PIPELINE_ORDER))
+                            .merge(stage, nanos, Long::sum);
+                }
+            }
+        }
+        if (transactions.isEmpty()) {
+            System.out.println("No " + TransactionEvent.NAME + " events in " + args[0]);
+            return;
+        }
+
+        long totalNanos = transactions.stream().mapToLong(Transaction::nanos).sum();
+        System.out.printf("%d transactions in %s%n%n", transactions.size(), args[0]);
+        System.out.printf("%-12s %8s %10s %10s %10s %10s %10s %7s%n",
+                "(us)", "count", "mean", "p50", "p90", "p99", "max", "share");
+        printRow("transaction", transactions.stream().map(Transaction::nanos).toList(), totalNanos);
+        stageNanos.forEach((stage, nanos) -> printRow(stage, nanos, totalNanos));
+
+        Map<String, Integer> codes = new TreeMap<>();
+        transactions.forEach(t -> codes.merge(String.valueOf(t.responseCode()), 1, Integer::sum));
+        System.out.println();
+        System.out.println("response codes " + codes);
+
+        System.out.printf("%nslowest %d%n", Math.min(top, transactions.size()));
+        transactions.stream()
+                .sorted(Comparator.comparingLong(Transaction::nanos).reversed())
+                .limit(top)
+                .forEach(t -> System.out.printf("%9d us  STAN %s  terminal %s  pc %s  rc %s  %s%n",
+                        t.nanos() / 1000, t.stan(), t.terminalId(), t.processingCode(), t.responseCode(),
+                        breakdown(stagesById.getOrDefault(t.id(), Map.of()))));
+    }
+
+    private static void printRow(String name, List<Long> nanos, long totalNanos) {
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        long sum = Arrays.stream(sorted).sum();
+        System.out.printf("%-12s %8d %10d %10d %10d %10d %10d %6.1f%%%n", name, sorted.length,
+                sum / sorted.length / 1000,
+                percentile(sorted, 0.50) / 1000, percentile(sorted, 0.90) / 1000,
+                percentile(sorted, 0.99) / 1000, sorted[sorted.length - 1] / 1000,
+                100.0 * sum / totalNanos);
+    }
+
+    private static String breakdown(Map<String, Long> stages) {
+        StringBuilder line = new StringBuilder();
+        stages.forEach((stage, nanos) -> line.append(stage).append('=').append(nanos / 1000).append(' '));
+        return line.toString().trim();
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,37 @@
+package com.paymentswitch.payment_switch.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One pipeline stage of a transaction (see metrics.Stage for the names). Never carries the PAN.
+@Name(StageEvent.NAME)
+@Label("ISO Transaction Stage")
+@Category({"Payment Switch"})
+@Description("Pipeline stage of a recorded ISO Transaction, committed together with it")
+@StackTrace(false)
+class StageEvent extends Event {
+
+    static final String NAME = "com.paymentswitch.TransactionStage";
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Transaction Id")
+    long transactionId;
+
+    @Label("STAN")
+    String stan;
+
+    @Label("Terminal Id")
+    String terminalId;
+
+    @Label("Processing Code")
+    String processingCode;
+
+    @Label("Response Code")
+    String responseCode;
+}
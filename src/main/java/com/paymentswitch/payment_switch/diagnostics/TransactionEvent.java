@@ -0,0 +1,40 @@
+package com.paymentswitch.payment_switch.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// One ISO transaction from frame received to response packed. Never carries the PAN.
+@Name(TransactionEvent.NAME)
+@Label("ISO Transaction")
+@Category({"Payment Switch"})
+@Description("Transaction handled by IsoMessageHandler; its stages are recorded as ISO Transaction Stage events")
+@StackTrace(false)
+@Threshold("0 ms")
+class TransactionEvent extends Event {
+
+    static final String NAME = "com.paymentswitch.Transaction";
+
+    @Label("Transaction Id")
+    @Description("Links the stage events of this transaction")
+    long transactionId;
+
+    @Label("MTI")
+    String mti;
+
+    @Label("STAN")
+    String stan;
+
+    @Label("Terminal Id")
+    String terminalId;
+
+    @Label("Processing Code")
+    String processingCode;
+
+    @Label("Response Code")
+    String responseCode;
+}
@@ -0,0 +1,89 @@
+package com.paymentswitch.payment_switch.diagnostics;
+
+import com.paymentswitch.payment_switch.metrics.Stage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JFR events for the transaction running on the current thread.
+ * <p>
+ * The handler starts a trace, and the components along the pipeline (validator, router, bank) time their own
+ * stage with {@link #beginStage}/{@link #endStage}. Stage events are held until {@link #finish}: only when the
+ * transaction event passes its JFR threshold are it and its stages committed, so a threshold of 20 ms records
+ * the full breakdown of every transaction slower than 20 ms and nothing for the others.
+ * <p>
+ * While no recording has the transaction event enabled, {@link #start} returns null and the stage calls are a
+ * thread-local lookup.
+ */
+public final class TransactionTrace {
+
+    private static final ThreadLocal<TransactionTrace> CURRENT = new ThreadLocal<>();
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private final TransactionEvent transaction;
+    private final StageEvent[] stages = new StageEvent[Stage.values().length];
+
+    private TransactionTrace(TransactionEvent transaction) {
+        this.transaction = transaction;
+    }
+
+    public static TransactionTrace start() {
+        TransactionEvent event = new TransactionEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        TransactionTrace trace = new TransactionTrace(event);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    public static void beginStage(Stage stage) {
+        TransactionTrace trace = CURRENT.get();
+        if (trace != null) {
+            StageEvent event = new StageEvent();
+            event.stage = stage.tag();
+            event.begin();
+            trace.stages[stage.ordinal()] = event;
+        }
+    }
+
+    public static void endStage(Stage stage) {
+        TransactionTrace trace = CURRENT.get();
+        if (trace != null && trace.stages[stage.ordinal()] != null) {
+            trace.stages[stage.ordinal()].end();
+        }
+    }
+
+    // Values as received and as answered, any of them may be null
+    public static void finish(TransactionTrace trace, String mti, String stan, String terminalId,
+                              String processingCode, String responseCode) {
+        if (trace == null) {
+            return;
+        }
+        CURRENT.remove();
+        TransactionEvent transaction = trace.transaction;
+        transaction.end();
+        if (!transaction.shouldCommit()) {
+            return;
+        }
+        long id = IDS.incrementAndGet();
+        transaction.transactionId = id;
+        transaction.mti = mti;
+        transaction.stan = stan;
+        transaction.terminalId = terminalId;
+        transaction.processingCode = processingCode;
+        transaction.responseCode = responseCode;
+        transaction.commit();
+        for (StageEvent stage : trace.stages) {
+            if (stage != null) {
+                stage.transactionId = id;
+                stage.stan = stan;
+                stage.terminalId = terminalId;
+                stage.processingCode = processingCode;
+                stage.responseCode = responseCode;
+                stage.commit();
+            }
+        }
+    }
+}
@@ -4,7 +4,6 @@ package com.paymentswitch.payment_switch.examples;
 
 import com.paymentswitch.payment_switch.model.*;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -23,9 +22,11 @@ public class Java21FeaturesShowcase {
                 "0200",
                 "4111111111111111",
                 "310000",
-                BigDecimal.valueOf(100),
+                10_000L,
+                840,
                 LocalDateTime.now(),
                 "123456",
+                "001123000001",
                 "000001",
                 "ATM001",
                 "Test Location",
@@ -34,9 +35,9 @@ public class Java21FeaturesShowcase {
 
         // Pattern matching with records
         String info = switch (request) {
-            case TransactionRequest r when r.transactionAmount().compareTo(BigDecimal.ZERO) == 0 ->
+            case TransactionRequest r when r.transactionAmount() == 0 ->
                     "Zero amount transaction for PAN: " + r.maskedPAN();
-            case TransactionRequest r when r.transactionAmount().compareTo(BigDecimal.valueOf(1000)) > 0 ->
+            case TransactionRequest r when r.transactionAmount() > Amounts.minorUnits(1000, r.currencyExponent()) ->
                     "High value transaction: " + r.transactionAmount();
             case TransactionRequest r ->
                     "Standard transaction: " + r.stan();
@@ -50,16 +51,16 @@ public class Java21FeaturesShowcase {
     // ============================================
 
     public void demonstrateSealedInterfacePatternMatching() {
-        ProcessingCode pc = ProcessingCode.parse("310000", BigDecimal.ZERO);
+        ProcessingCode pc = ProcessingCode.parse("310000", 0, Amounts.DEFAULT_EXPONENT);
 
         // Exhaustive pattern matching with sealed interfaces
         String description = switch (pc) {
             case ProcessingCode.BalanceInquiry(var code) ->
                     "Balance check with code: " + code;
-            case ProcessingCode.Withdrawal(var code, var amount) ->
-                    String.format("Withdrawal of %.2f with code: %s", amount, code);
-            case ProcessingCode.Purchase(var code, var amount) ->
-                    String.format("Purchase of %.2f with code: %s", amount, code);
+            case ProcessingCode.Withdrawal(var code, var amount, var exponent) ->
+                    String.format("Withdrawal of %d minor units (exponent %d) with code: %s", amount, exponent, code);
+            case ProcessingCode.Purchase(var code, var amount, var exponent) ->
+                    String.format("Purchase of %d minor units (exponent %d) with code: %s", amount, exponent, code);
             case ProcessingCode.Transfer(var code, var from, var to) ->
                     "Transfer operation: " + code;
             case ProcessingCode.MiniStatement(var code) ->
@@ -78,24 +79,25 @@ public class Java21FeaturesShowcase {
     public String categorizeTransaction(TransactionRequest request) {
         ProcessingCode pc = ProcessingCode.parse(
                 request.processingCode(),
-                request.transactionAmount()
+                request.transactionAmount(),
+                request.currencyExponent()
         );
 
         // Pattern matching with guards
         return switch (pc) {
-            case ProcessingCode.Withdrawal(var code, var amount)
-                    when amount.compareTo(BigDecimal.valueOf(10000)) > 0 ->
+            case ProcessingCode.Withdrawal(var code, var amount, var exponent)
+                    when amount > Amounts.minorUnits(10000, exponent) ->
                     "Large withdrawal";
 
-            case ProcessingCode.Withdrawal(var code, var amount)
-                    when amount.compareTo(BigDecimal.valueOf(1000)) > 0 ->
+            case ProcessingCode.Withdrawal(var code, var amount, var exponent)
+                    when amount > Amounts.minorUnits(1000, exponent) ->
                     "Medium withdrawal";
 
             case ProcessingCode.Withdrawal w ->
                     "Small withdrawal";
 
-            case ProcessingCode.Purchase(var code, var amount)
-                    when amount.compareTo(BigDecimal.valueOf(5000)) > 0 ->
+            case ProcessingCode.Purchase(var code, var amount, var exponent)
+                    when amount > Amounts.minorUnits(5000, exponent) ->
                     "High value purchase";
 
             case ProcessingCode.Purchase p ->
@@ -167,7 +169,7 @@ public class Java21FeaturesShowcase {
     public void demonstrateTypePatterns(Object obj) {
         // Modern instanceof with pattern matching
         if (obj instanceof TransactionRequest request
-                && request.transactionAmount().compareTo(BigDecimal.ZERO) > 0) {
+                && request.transactionAmount() > 0) {
             System.out.println("Valid transaction: " + request.stan());
         }
 
@@ -183,7 +185,8 @@ public class Java21FeaturesShowcase {
     // ============================================
 
     public TransactionResponse handleTransactionWithYield(TransactionRequest request) {
-        return switch (ProcessingCode.parse(request.processingCode(), request.transactionAmount())) {
+        return switch (ProcessingCode.parse(request.processingCode(), request.transactionAmount(),
+                request.currencyExponent())) {
             case ProcessingCode.BalanceInquiry bi -> {
                 // Complex logic with yield
                 System.out.println("Processing balance inquiry");
@@ -211,10 +214,11 @@ public class Java21FeaturesShowcase {
                     null,  // Will throw IllegalArgumentException
                     "4111111111111111",
                     "310000",
-                    BigDecimal.valueOf(100),
+                    10_000L,
+                    Amounts.NO_CURRENCY,
                     LocalDateTime.now(),
                     "123456",
-                    null, null, null, null
+                    null, null, null, null, null
             );
         } catch (IllegalArgumentException e) {
             System.out.println("Validation in compact constructor: " + e.getMessage());
@@ -231,11 +235,14 @@ public class Java21FeaturesShowcase {
                 request.primaryAccountNumber(),
                 request.processingCode(),
                 request.transactionAmount(),
+                request.currencyCode(),
                 request.transmissionDateTime(),
                 request.stan(),
+                request.retrievalReferenceNumber(),
                 code,
                 "123456",
                 request.acquiringInstitutionCode(),
+                request.cardAcceptorTerminalId(),
                 null
         );
     }
@@ -262,8 +269,8 @@ public class Java21FeaturesShowcase {
         System.out.println("\n3. Guarded Patterns:");
         TransactionRequest testRequest = new TransactionRequest(
                 "0200", "4111111111111111", "010000",
-                BigDecimal.valueOf(15000), LocalDateTime.now(),
-                "123456", null, null, null, null
+                1_500_000L, 840, LocalDateTime.now(),
+                "123456", null, null, null, null, null
         );
         System.out.println(showcase.categorizeTransaction(testRequest));
 
@@ -0,0 +1,40 @@
+package com.paymentswitch.payment_switch.framing;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.integration.ip.tcp.connection.TcpNetConnection;
+import org.springframework.integration.ip.tcp.connection.TcpNetConnectionSupport;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+// Blocking connections that read the socket through a buffer: the frame header is decoded a byte at a time, and a
+// raw socket stream would make each of those bytes a read call. One read also picks up pipelined frames together.
+public class BufferedNetConnectionSupport implements TcpNetConnectionSupport {
+
+    private final int bufferSize;
+
+    public BufferedNetConnectionSupport(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public TcpNetConnection createNewConnection(Socket socket, boolean server, boolean lookupHost,
+                                                ApplicationEventPublisher applicationEventPublisher,
+                                                String connectionFactoryName) {
+        return new TcpNetConnection(socket, server, lookupHost, applicationEventPublisher, connectionFactoryName) {
+
+            // Asked for before every frame, so it is created once and kept
+            private InputStream in;
+
+            @Override
+            protected InputStream inputStream() throws IOException {
+                if (in == null) {
+                    in = new BufferedInputStream(super.inputStream(), bufferSize);
+                }
+                return in;
+            }
+        };
+    }
+}
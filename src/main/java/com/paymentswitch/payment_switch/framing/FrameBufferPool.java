@@ -0,0 +1,69 @@
+package com.paymentswitch.payment_switch.framing;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Fixed set of reusable frame buffers shared by all connection threads.
+// Slots are claimed with getAndSet / compareAndSet starting at a per-thread index, so acquire and release
+// are lock-free and allocate nothing; when every slot is taken a throwaway buffer is handed out instead.
+public class FrameBufferPool {
+
+    private final AtomicReferenceArray<ByteBuffer> slots;
+    private final int mask;
+    private final int bufferSize;
+    private final boolean direct;
+    private final AtomicLong misses = new AtomicLong();
+
+    public FrameBufferPool(int poolSize, int bufferSize, boolean direct) {
+        int size = Integer.highestOneBit(Math.max(1, poolSize - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        for (int i = 0; i < size; i++) {
+            slots.set(i, allocate());
+        }
+    }
+
+    public ByteBuffer acquire() {
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i <= mask; i++) {
+            ByteBuffer buffer = slots.getAndSet((start + i) & mask, null);
+            if (buffer != null) {
+                return buffer.clear();
+            }
+        }
+        misses.incrementAndGet();
+        return allocate();
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+            return;
+        }
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i <= mask; i++) {
+            if (slots.compareAndSet((start + i) & mask, null, buffer)) {
+                return;
+            }
+        }
+        // Pool already full (a miss buffer coming back): let it be collected
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    private ByteBuffer allocate() {
+        return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+}
@@ -0,0 +1,71 @@
+package com.paymentswitch.payment_switch.framing;
+
+import java.io.IOException;
+
+// Length prefix in front of every ISO 8583 message on the wire
+public enum LengthHeaderFormat {
+
+    BINARY_2(2, 0xFFFF),          // big-endian unsigned short (the format ATMs use today)
+    BINARY_4(4, Integer.MAX_VALUE), // big-endian int
+    ASCII_4(4, 9999);             // four ASCII digits, e.g. "0128"
+
+    private final int headerLength;
+    private final int maxLength;
+
+    LengthHeaderFormat(int headerLength, int maxLength) {
+        this.headerLength = headerLength;
+        this.maxLength = maxLength;
+    }
+
+    public int headerLength() {
+        return headerLength;
+    }
+
+    public int maxLength() {
+        return maxLength;
+    }
+
+    public int decode(byte[] header, int offset) throws IOException {
+        int length = 0;
+        for (int i = offset; i < offset + headerLength; i++) {
+            length = append(length, header[i] & 0xFF);
+        }
+        return length;
+    }
+
+    // The length decoded so far with the next header byte (0-255), so a stream can be decoded a byte at a time
+    public int append(int length, int headerByte) throws IOException {
+        if (this != ASCII_4) {
+            return length << 8 | headerByte;
+        }
+        int digit = headerByte - '0';
+        if (digit < 0 || digit > 9) {
+            throw new IOException("Invalid ASCII length header byte: 0x" + Integer.toHexString(headerByte));
+        }
+        return length * 10 + digit;
+    }
+
+    public void encode(int length, byte[] target, int offset) {
+        if (length < 0 || length > maxLength) {
+            throw new IllegalArgumentException("Length " + length + " does not fit a " + this + " header");
+        }
+        switch (this) {
+            case BINARY_2 -> {
+                target[offset] = (byte) (length >> 8);
+                target[offset + 1] = (byte) length;
+            }
+            case BINARY_4 -> {
+                target[offset] = (byte) (length >> 24);
+                target[offset + 1] = (byte) (length >> 16);
+                target[offset + 2] = (byte) (length >> 8);
+                target[offset + 3] = (byte) length;
+            }
+            case ASCII_4 -> {
+                for (int i = offset + 3; i >= offset; i--) {
+                    target[i] = (byte) ('0' + length % 10);
+                    length /= 10;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.paymentswitch.payment_switch.framing;
+
+import com.paymentswitch.payment_switch.metrics.SwitchMetrics;
+import org.springframework.integration.ip.tcp.serializer.AbstractByteArraySerializer;
+import org.springframework.integration.ip.tcp.serializer.SoftEndOfStreamException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+// Length-prefixed framing for ISO 8583 over TCP.
+// Header and body are read with loops, so frames split across TCP segments are handled, and the payload is
+// read straight into the message array. On the way out header and body are assembled in a pooled buffer
+// and written with a single write call; a pooled buffer is only held while a frame is written.
+// With metrics, frame read (complete header to complete body) and write are timed as their own stages.
+public class LengthPrefixedFrameSerializer extends AbstractByteArraySerializer {
+
+    private final LengthHeaderFormat headerFormat;
+    private final FrameBufferPool bufferPool;
+    private final SwitchMetrics metrics;
+
+    public LengthPrefixedFrameSerializer(LengthHeaderFormat headerFormat, int maxFrameSize, FrameBufferPool bufferPool) {
+        this(headerFormat, maxFrameSize, bufferPool, null);
+    }
+
+    public LengthPrefixedFrameSerializer(LengthHeaderFormat headerFormat, int maxFrameSize, FrameBufferPool bufferPool,
+                                         SwitchMetrics metrics) {
+        if (maxFrameSize > headerFormat.maxLength()) {
+            throw new IllegalArgumentException("Max frame size " + maxFrameSize + " exceeds what a "
+                    + headerFormat + " header can carry");
+        }
+        if (bufferPool.isDirect()) {
+            throw new IllegalArgumentException("Stream based framing needs a heap buffer pool");
+        }
+        if (bufferPool.bufferSize() < headerFormat.headerLength() + maxFrameSize) {
+            throw new IllegalArgumentException("Pooled buffers are smaller than header plus max frame size");
+        }
+        this.headerFormat = headerFormat;
+        this.bufferPool = bufferPool;
+        this.metrics = metrics;
+        setMaxMessageSize(maxFrameSize);
+    }
+
+    @Override
+    public void serialize(byte[] bytes, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        int headerLength = headerFormat.headerLength();
+        if (bytes.length > getMaxMessageSize()) {
+            throw new IOException("Message length " + bytes.length + " exceeds max frame size " + getMaxMessageSize());
+        }
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            byte[] frame = buffer.array();
+            headerFormat.encode(bytes.length, frame, 0);
+            System.arraycopy(bytes, 0, frame, headerLength, bytes.length);
+            out.write(frame, 0, headerLength + bytes.length);
+            out.flush();
+        } finally {
+            bufferPool.release(buffer);
+        }
+        if (metrics != null) {
+            metrics.recordFrameWrite(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public byte[] deserialize(InputStream in) throws IOException {
+        int messageLength = readHeader(in);
+        long start = System.nanoTime();
+        if (messageLength <= 0 || messageLength > getMaxMessageSize()) {
+            IOException e = new IOException("Invalid message length: " + messageLength);
+            publishEvent(e, new byte[0], 0);
+            throw e;
+        }
+
+        byte[] message = new byte[messageLength];
+        int totalRead = 0;
+        while (totalRead < messageLength) {
+            int read = in.read(message, totalRead, messageLength - totalRead);
+            if (read < 0) {
+                throw new SoftEndOfStreamException("Connection closed while reading message");
+            }
+            totalRead += read;
+        }
+        if (metrics != null) {
+            metrics.recordFrameRead(System.nanoTime() - start);
+        }
+        return message;
+    }
+
+    // A byte at a time into an int, nothing allocated: the read blocks until the next frame arrives, which for an
+    // idle connection may be never, and a pooled buffer held here would be one serialize can't have.
+    // The stream should be buffered (see BufferedNetConnectionSupport), or each byte is a read from the socket.
+    private int readHeader(InputStream in) throws IOException {
+        int length = 0;
+        for (int i = 0; i < headerFormat.headerLength(); i++) {
+            int read = in.read();
+            if (read < 0) {
+                if (i == 0) {
+                    checkClosure(read); // clean close between messages
+                }
+                throw new SoftEndOfStreamException("Connection closed while reading length header");
+            }
+            length = headerFormat.append(length, read);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,181 @@
+package com.paymentswitch.payment_switch.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission at the switch edge: an adaptive cap on the requests being processed, so overload is answered at once
+ * instead of queuing until every transaction is late.
+ * <p>
+ * The limit follows the switch's own latency, from the frame being read to the reply, the issuer call left out
+ * (each issuer has its own guard), so requests queuing for a pipeline worker count too. Requests are admitted on
+ * the connection's reader thread before the hand-off to a worker, so a shed one never waits in that queue.
+ * Every {@code window} completions, a window averaging over {@code latencyTarget} cuts the limit by
+ * {@code backoffRatio}, and one under it that used at least half the limit raises it by one (AIMD), between
+ * {@code minLimit} and {@code maxLimit}. Requests are told apart by their MTI before anything is unpacked:
+ * transactions are shed at the limit, reversals (04xx) only {@code reversalHeadroom} percent over it and network
+ * management (08xx) never. The validator only has rules for classes 01 and 02 so far and answers the others 30, so
+ * until reversals and network management are supported these two priorities only spare their format errors.
+ */
+@Slf4j
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    // In shedding order; REVERSAL and NETWORK only matter once the validator accepts 04xx and 08xx
+    public enum Priority {
+        TRANSACTION, REVERSAL, NETWORK
+    }
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final int window;
+    private final double backoffRatio;
+    private final int reversalHeadroomPercent;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder[] shed = new LongAdder[Priority.values().length];
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile int limit;
+    // Current window
+    private int samples;
+    private long latencySum;
+    private int peakInFlight;
+    private volatile long increases;
+    private volatile long decreases;
+
+    public AdaptiveConcurrencyLimiter(
+            @Value("${switch.admission.enabled:true}") boolean enabled,
+            @Value("${switch.admission.initial-limit:200}") int initialLimit,
+            @Value("${switch.admission.min-limit:16}") int minLimit,
+            @Value("${switch.admission.max-limit:2000}") int maxLimit,
+            @Value("${switch.admission.latency-target:20ms}") Duration latencyTarget,
+            @Value("${switch.admission.window:100}") int window,
+            @Value("${switch.admission.backoff-ratio:0.9}") double backoffRatio,
+            @Value("${switch.admission.reversal-headroom:50}") int reversalHeadroomPercent) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit || window < 1
+                || backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException(
+                    "Admission limit needs 1 <= min <= initial <= max, window >= 1 and 0 < backoff ratio < 1");
+        }
+        this.enabled = enabled;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTargetNanos = latencyTarget.toNanos();
+        this.window = window;
+        this.backoffRatio = backoffRatio;
+        this.reversalHeadroomPercent = reversalHeadroomPercent;
+        for (int i = 0; i < shed.length; i++) {
+            shed[i] = new LongAdder();
+        }
+        log.info("Admission limit: {}", enabled ? initialLimit + " adaptive in [" + minLimit + ", " + maxLimit + "]"
+                : "disabled");
+    }
+
+    // From the MTI's message class digit; both codecs read packager/iso87ascii.xml, where it is ASCII at offset 1
+    public static Priority priority(byte[] payload) {
+        if (payload.length < 4) {
+            return Priority.TRANSACTION;
+        }
+        return switch (payload[1]) {
+            case '4' -> Priority.REVERSAL;
+            case '8' -> Priority.NETWORK;
+            default -> Priority.TRANSACTION;
+        };
+    }
+
+    // Whether the request may be processed; every request admitted must be released
+    public boolean tryAcquire(Priority priority) {
+        int current = limit;
+        int ceiling = !enabled ? Integer.MAX_VALUE : switch (priority) {
+            case TRANSACTION -> current;
+            case REVERSAL -> current + current * reversalHeadroomPercent / 100;
+            case NETWORK -> Integer.MAX_VALUE;
+        };
+        while (true) {
+            int admitted = inFlight.get();
+            if (admitted >= ceiling) {
+                shed[priority.ordinal()].increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(admitted, admitted + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Admitted but turned away after all, as no pipeline worker could take it: the slot is given back, no sample
+    public void reject(Priority priority) {
+        inFlight.decrementAndGet();
+        shed[priority.ordinal()].increment();
+    }
+
+    // latencyNanos: what the request spent in the switch, queued or processed, the issuer call left out
+    public void release(long latencyNanos) {
+        int admitted = inFlight.getAndDecrement();
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            samples++;
+            latencySum += latencyNanos;
+            peakInFlight = Math.max(peakInFlight, admitted);
+            if (samples == window) {
+                adjust(latencySum / samples);
+                samples = 0;
+                latencySum = 0;
+                peakInFlight = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long shed(Priority priority) {
+        return shed[priority.ordinal()].sum();
+    }
+
+    public long increases() {
+        return increases;
+    }
+
+    public long decreases() {
+        return decreases;
+    }
+
+    private void adjust(long averageNanos) {
+        int current = limit;
+        int next;
+        if (averageNanos > latencyTargetNanos) {
+            next = Math.max(minLimit, (int) (current * backoffRatio));
+        } else if (peakInFlight * 2 >= current) {
+            next = Math.min(maxLimit, current + 1);
+        } else {
+            // Not enough demand to tell whether more would do
+            return;
+        }
+        if (next < current) {
+            decreases++;
+            log.debug("Admission limit {} -> {} - average latency {}us", current, next, averageNanos / 1000);
+        } else if (next > current) {
+            increases++;
+        }
+        limit = next;
+    }
+}
@@ -0,0 +1,224 @@
+package com.paymentswitch.payment_switch.handler;
+
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Answers terminal retransmissions with the packed response of the original instead of running them again.
+ * <p>
+ * Requests are keyed by MTI (the repeat bit cleared, so 0201 matches 0200 and 0221 matches 0220), STAN (11),
+ * transmission date and time (7), terminal (41) and acquirer (32). The first request claims its key and
+ * {@link #complete completes} it with the response bytes; a repeat within {@code switch.duplicates.window} gets
+ * those bytes back, and a repeat that arrives while the original is still in the pipeline waits for it, up to
+ * {@code in-flight-wait}.
+ * <p>
+ * Entries live in two generations of {@link ConcurrentHashMap}, so lookups never lock. The current generation
+ * becomes the previous one every window, or earlier once it holds half of {@code max-size}, and the previous one
+ * is dropped: memory stays under the ceiling and the oldest entries go first.
+ */
+@Slf4j
+@Component
+public class DuplicateTransactionCache {
+
+    // Rough per entry cost besides the key characters and response bytes: map node, entry, future, key String
+    private static final int ENTRY_OVERHEAD = 200;
+
+    public sealed interface Claim {
+        // First sighting: process it, then complete or abandon the claim
+        record Original(String key, Entry entry) implements Claim {}
+        // Answered before, or while this one waited: send these bytes
+        record Repeat(byte[] response, String responseCode) implements Claim {}
+        // The original is still in flight after in-flight-wait
+        record Busy() implements Claim {}
+        // Disabled, or a request without the key fields
+        record Untracked() implements Claim {}
+    }
+
+    public static final class Entry {
+        private final long createdNanos;
+        private final CompletableFuture<Claim.Repeat> reply = new CompletableFuture<>();
+
+        private Entry(long createdNanos) {
+            this.createdNanos = createdNanos;
+        }
+    }
+
+    private record Generation(long startedNanos, ConcurrentHashMap<String, Entry> entries, AtomicLong bytes) {
+        Generation(long startedNanos) {
+            this(startedNanos, new ConcurrentHashMap<>(), new AtomicLong());
+        }
+    }
+
+    private record Generations(Generation current, Generation previous) {
+    }
+
+    private static final Claim.Untracked UNTRACKED = new Claim.Untracked();
+    private static final Claim.Busy BUSY = new Claim.Busy();
+
+    private final boolean enabled;
+    private final long windowNanos;
+    private final long maxBytes;
+    private final long inFlightWaitNanos;
+    private final LongSupplier nanoTime;
+    private final AtomicReference<Generations> generations;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter busy;
+
+    @Autowired
+    public DuplicateTransactionCache(@Value("${switch.duplicates.enabled:true}") boolean enabled,
+                                     @Value("${switch.duplicates.window:60s}") Duration window,
+                                     @Value("${switch.duplicates.max-size:64MB}") DataSize maxSize,
+                                     @Value("${switch.duplicates.in-flight-wait:5s}") Duration inFlightWait,
+                                     MeterRegistry registry) {
+        this(enabled, window, maxSize, inFlightWait, registry, System::nanoTime);
+    }
+
+    DuplicateTransactionCache(boolean enabled, Duration window, DataSize maxSize, Duration inFlightWait,
+                              MeterRegistry registry, LongSupplier nanoTime) {
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.maxBytes = maxSize.toBytes();
+        this.inFlightWaitNanos = inFlightWait.toNanos();
+        this.nanoTime = nanoTime;
+        long now = nanoTime.getAsLong();
+        this.generations = new AtomicReference<>(new Generations(new Generation(now), new Generation(now)));
+        this.hits = counter(registry, "hit", "Retransmissions answered with the original response");
+        this.misses = counter(registry, "miss", "Requests seen for the first time");
+        this.busy = counter(registry, "busy", "Retransmissions whose original was still in flight after the wait");
+        log.info("Duplicate detection: {}", enabled ? "window " + window + ", up to " + maxSize : "disabled");
+    }
+
+    public Claim claim(IsoMessageView request) {
+        String key = enabled ? key(request) : null;
+        if (key == null) {
+            return UNTRACKED;
+        }
+        long now = nanoTime.getAsLong();
+        Generations live = rotateIfDue(now);
+        Entry found = find(live, key, now);
+        if (found == null) {
+            Entry entry = new Entry(now);
+            found = live.current().entries().putIfAbsent(key, entry);
+            if (found == null) {
+                live.current().bytes().addAndGet(ENTRY_OVERHEAD + 2L * key.length());
+                misses.increment();
+                return new Claim.Original(key, entry);
+            }
+        }
+        return awaitOriginal(found, request);
+    }
+
+    // The response the original got, handed to its repeats
+    public void complete(Claim claim, byte[] response, String responseCode) {
+        if (claim instanceof Claim.Original(var key, var entry)) {
+            generations.get().current().bytes().addAndGet(response.length);
+            entry.reply.complete(new Claim.Repeat(response, responseCode));
+        }
+    }
+
+    // No response worth repeating (system error): forget the claim so a retransmission is processed again
+    public void abandon(Claim claim) {
+        if (claim instanceof Claim.Original(var key, var entry)) {
+            Generations live = generations.get();
+            if (!live.current().entries().remove(key, entry)) {
+                live.previous().entries().remove(key, entry);
+            }
+            entry.reply.complete(null);
+        }
+    }
+
+    public long entries() {
+        Generations live = generations.get();
+        return live.current().entries().size() + live.previous().entries().size();
+    }
+
+    public long bytes() {
+        Generations live = generations.get();
+        return live.current().bytes().get() + live.previous().bytes().get();
+    }
+
+    private Claim awaitOriginal(Entry entry, IsoMessageView request) {
+        Claim.Repeat reply;
+        try {
+            reply = entry.reply.getNow(null);
+            if (reply == null && !entry.reply.isDone()) {
+                reply = entry.reply.get(inFlightWaitNanos, TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException e) {
+            busy.increment();
+            return BUSY;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            busy.increment();
+            return BUSY;
+        } catch (ExecutionException e) {
+            reply = null;
+        }
+        if (reply == null) {
+            // The original was abandoned, this one takes over
+            return claim(request);
+        }
+        hits.increment();
+        return reply;
+    }
+
+    private Entry find(Generations live, String key, long now) {
+        Entry entry = live.current().entries().get(key);
+        if (entry == null) {
+            entry = live.previous().entries().get(key);
+        }
+        return entry != null && now - entry.createdNanos < windowNanos ? entry : null;
+    }
+
+    // A lost race means another thread rotated just now, which is all that was due
+    private Generations rotateIfDue(long now) {
+        Generations live = generations.get();
+        Generation current = live.current();
+        if (now - current.startedNanos() < windowNanos && current.bytes().get() < maxBytes / 2) {
+            return live;
+        }
+        Generations rotated = new Generations(new Generation(now), current);
+        return generations.compareAndSet(live, rotated) ? rotated : generations.get();
+    }
+
+    // mti class + STAN + transmission time + terminal + acquirer, null when a request isn't one to remember
+    static String key(IsoMessageView request) {
+        String mti = request.getMTI();
+        if (mti == null || mti.length() != 4 || (mti.charAt(1) != '1' && mti.charAt(1) != '2')) {
+            return null;
+        }
+        String stan = request.getString(11);
+        String transmission = request.getString(7);
+        String terminal = request.getString(41);
+        if (stan == null || transmission == null || terminal == null) {
+            return null;
+        }
+        String acquirer = request.getString(32);
+        return mti.substring(0, 3) + (char) (mti.charAt(3) & ~1) + '|' + stan + '|' + transmission + '|'
+                + terminal + '|' + (acquirer == null ? "" : acquirer);
+    }
+
+    private static Counter counter(MeterRegistry registry, String result, String description) {
+        return Counter.builder("switch.duplicates")
+                .description(description)
+                .tag("result", result)
+                .register(registry);
+    }
+}
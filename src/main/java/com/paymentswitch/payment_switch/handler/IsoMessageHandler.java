@@ -1,77 +1,150 @@
 package com.paymentswitch.payment_switch.handler;
 //package com.paymentswitch.handler;
 
+import com.paymentswitch.payment_switch.diagnostics.TransactionTrace;
+import com.paymentswitch.payment_switch.iso.IsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.iso.ResponsePacker;
+import com.paymentswitch.payment_switch.logging.TransactionLog;
+import com.paymentswitch.payment_switch.metrics.Stage;
+import com.paymentswitch.payment_switch.metrics.StageTimings;
+import com.paymentswitch.payment_switch.metrics.SwitchMetrics;
+import com.paymentswitch.payment_switch.model.ProcessingCode;
+import com.paymentswitch.payment_switch.model.ResponseCode;
 import com.paymentswitch.payment_switch.model.TransactionRequest;
 import com.paymentswitch.payment_switch.model.TransactionResponse;
 import com.paymentswitch.payment_switch.model.ValidationResult;
 import com.paymentswitch.payment_switch.router.TransactionRouter;
 import com.paymentswitch.payment_switch.transformer.IsoMessageTransformer;
 import com.paymentswitch.payment_switch.validator.IsoMessageValidator;
+import com.paymentswitch.payment_switch.velocity.VelocityChecker;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOException;
-import org.jpos.iso.ISOMsg;
-import org.jpos.iso.ISOUtil;
-import org.jpos.iso.packager.GenericPackager;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayOutputStream;
+import java.util.concurrent.RejectedExecutionException;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class IsoMessageHandler {
 
-    private final GenericPackager packager;
+    private final IsoCodec codec;
+    private final ResponsePacker responsePacker;
     private final IsoMessageValidator validator;
     private final IsoMessageTransformer transformer;
     private final TransactionRouter router;
+    private final TransactionConcurrencyLimiter concurrencyLimiter;
+    private final AdaptiveConcurrencyLimiter admission;
+    private final SwitchMetrics metrics;
+    private final TransactionLog transactionLog;
+    private final DuplicateTransactionCache duplicates;
+    private final VelocityChecker velocity;
+    // By bean name: the pipeline workers with pipelining, else straight through on the reader thread
+    private final MessageChannel pipelineChannel;
 
     // Sealed interface for processing results
     sealed interface ProcessingResult {
-        record Success(TransactionResponse response) implements ProcessingResult {}
-        record ValidationError(ValidationResult.Failure failure, ISOMsg originalMsg) implements ProcessingResult {}
+        record Success(TransactionResponse response, IsoMessageView request, DuplicateTransactionCache.Claim claim)
+                implements ProcessingResult {}
+        record ValidationError(ValidationResult.Failure failure, IsoMessageView originalMsg,
+                               DuplicateTransactionCache.Claim claim) implements ProcessingResult {}
+        record Duplicate(DuplicateTransactionCache.Claim.Repeat original, IsoMessageView request)
+                implements ProcessingResult {}
         record SystemError(String error) implements ProcessingResult {}
     }
 
+    // On the connection's reader thread: over the admission limit a request is answered here, before anything is
+    // unpacked and without waiting for a pipeline worker; admitted ones are replied to by handleMessage
     @ServiceActivator(inputChannel = "inboundChannel", outputChannel = "outboundChannel")
+    public Message<byte[]> admit(Message<byte[]> message) {
+        AdaptiveConcurrencyLimiter.Priority priority = AdaptiveConcurrencyLimiter.priority(message.getPayload());
+        if (!admission.tryAcquire(priority)) {
+            return shed(message, new StageTimings(), TransactionTrace.start());
+        }
+        try {
+            pipelineChannel.send(message);
+        } catch (MessageDeliveryException e) {
+            if (!(e.getCause() instanceof RejectedExecutionException)) {
+                throw e;
+            }
+            // Every worker busy and the queue full
+            admission.reject(priority);
+            return shed(message, new StageTimings(), TransactionTrace.start());
+        }
+        return null;
+    }
+
+    // Admitted requests only, the permit taken in admit is released here
+    @ServiceActivator(inputChannel = "pipelineChannel", outputChannel = "outboundChannel")
     public Message<byte[]> handleMessage(Message<byte[]> message) {
-        long startTime = System.currentTimeMillis();
+        StageTimings timings = new StageTimings();
+        TransactionTrace trace = TransactionTrace.start();
 
         byte[] payload = message.getPayload();
-        log.info("Received message: {} bytes", payload.length);
-        log.debug("Raw message: {}", ISOUtil.hexString(payload));
+        log.debug("Received message: {} bytes", payload.length);
 
         // Process the message and get result
-        ProcessingResult result = processIsoMessage(payload);
+        ProcessingResult result;
+        try {
+            result = concurrencyLimiter.withPermit(() -> processIsoMessage(payload, timings));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result = new ProcessingResult.SystemError("Interrupted waiting for a transaction permit");
+        } finally {
+            admission.release(queuedNanos(message) + timings.elapsedNanos() - timings.nanos(Stage.ISSUER_CALL));
+        }
 
         // Pattern match on result to generate response
+        IsoMessageView received = null;
+        String responseCode;
+        TransactionTrace.beginStage(Stage.PACK);
         byte[] responseBytes = switch (result) {
-            case ProcessingResult.Success(var response) -> {
-                log.info("Transaction processed - STAN: {}, Response Code: {}",
+            case ProcessingResult.Success(var response, var request, var claim) -> {
+                log.debug("Transaction processed - STAN: {}, Response Code: {}",
                         response.stan(), response.responseCode());
-                System.out.println("transmission time from handler"+response.transmissionDateTime());
-                yield packResponse(response);
+                received = request;
+                byte[] packed = packResponse(request, response);
+                responseCode = packed != null ? response.responseCode() : ResponseCode.SYSTEM_MALFUNCTION.getCode();
+                yield remember(claim, packed != null ? packed : packSystemErrorResponse(), responseCode);
             }
-            case ProcessingResult.ValidationError(var failure, var originalMsg) -> {
-                log.warn("Validation failed: {} (field: {})",
+            case ProcessingResult.ValidationError(var failure, var originalMsg, var claim) -> {
+                log.debug("Validation failed: {} (field: {})",
                         failure.message(), failure.field());
-                yield packErrorResponse(originalMsg, failure);
+                received = originalMsg;
+                byte[] packed = packErrorResponse(originalMsg, failure);
+                responseCode = packed != null ? failure.responseCode().getCode()
+                        : ResponseCode.SYSTEM_MALFUNCTION.getCode();
+                yield remember(claim, packed != null ? packed : packSystemErrorResponse(), responseCode);
+            }
+            case ProcessingResult.Duplicate(var original, var request) -> {
+                log.debug("Retransmission answered with the original response");
+                received = request;
+                responseCode = original.responseCode();
+                yield original.response();
             }
             case ProcessingResult.SystemError(var error) -> {
                 log.error("System error: {}", error);
+                responseCode = ResponseCode.SYSTEM_MALFUNCTION.getCode();
                 yield packSystemErrorResponse();
             }
         };
+        TransactionTrace.endStage(Stage.PACK);
+        timings.lap(Stage.PACK);
+        recordOutcome(timings, trace, received, responseCode);
 
-        log.info("Response sent - {} bytes, Processing time: {} ms",
-                responseBytes.length,
-                System.currentTimeMillis() - startTime);
-        log.debug("Response ISO: {}", ISOUtil.hexString(responseBytes));
+        // One record per transaction; hex only for sampled transactions, built here and not before
+        transactionLog.record(received, responseCode, responseBytes.length, timings.elapsedNanos() / 1000);
+        if (transactionLog.sampleHex()) {
+            transactionLog.hex(received, payload, responseBytes);
+        }
 
         MessageHeaders headers = message.getHeaders();
         return MessageBuilder.withPayload(responseBytes)
@@ -79,93 +152,156 @@ public class IsoMessageHandler {
                 .build();
     }
 
-    private ProcessingResult processIsoMessage(byte[] payload) {
+    // Since the frame was read (the message timestamp, in milliseconds): time spent queued for a pipeline worker
+    private static long queuedNanos(Message<byte[]> message) {
+        Long received = message.getHeaders().getTimestamp();
+        return received == null ? 0 : Math.max(0, System.currentTimeMillis() - received) * 1_000_000;
+    }
+
+    // Pre-packed 91 with the request's reply MTI, STAN and terminal ID; not claimed, so a retransmission gets another try
+    private Message<byte[]> shed(Message<byte[]> message, StageTimings timings, TransactionTrace trace) {
+        byte[] payload = message.getPayload();
+        String responseCode = ResponseCode.ISSUER_UNAVAILABLE.getCode();
+        byte[] responseBytes = responsePacker.fixedReply(payload, ResponseCode.ISSUER_UNAVAILABLE);
+        recordOutcome(timings, trace, null, responseCode);
+        transactionLog.record(null, responseCode, responseBytes.length, timings.elapsedNanos() / 1000);
+        return MessageBuilder.withPayload(responseBytes)
+                .copyHeaders(message.getHeaders())
+                .build();
+    }
+
+    private ProcessingResult processIsoMessage(byte[] payload, StageTimings timings) {
+        DuplicateTransactionCache.Claim claim = null;
         try {
-            // Parse incoming ISO message
-            ISOMsg isoRequest = new ISOMsg();
-            isoRequest.setPackager(packager);
-            isoRequest.unpack(payload);
+            // Waiting for the permit is not charged to a stage
+            timings.restartLap();
+            // Index the incoming ISO message, field values are decoded when read
+            TransactionTrace.beginStage(Stage.UNPACK);
+            IsoMessageView isoRequest = codec.read(payload);
+            TransactionTrace.endStage(Stage.UNPACK);
+            timings.lap(Stage.UNPACK);
 
-            log.info("Parsed ISO Message - MTI: {}, STAN: {}",
-                    isoRequest.getMTI(),
-                    isoRequest.hasField(11) ? isoRequest.getString(11) : "N/A");
+            if (log.isDebugEnabled()) {
+                log.debug("Parsed ISO Message - MTI: {}, STAN: {}",
+                        isoRequest.getMTI(),
+                        isoRequest.hasField(11) ? isoRequest.getString(11) : "N/A");
+            }
+
+            // Retransmissions get the original's response, without running the pipeline again
+            claim = duplicates.claim(isoRequest);
+            switch (claim) {
+                case DuplicateTransactionCache.Claim.Repeat repeat -> {
+                    return new ProcessingResult.Duplicate(repeat, isoRequest);
+                }
+                case DuplicateTransactionCache.Claim.Busy busy -> {
+                    return new ProcessingResult.SystemError("Original of a retransmission still in flight");
+                }
+                default -> {
+                }
+            }
 
             // Validate message using pattern matching
             ValidationResult validationResult = validator.validate(isoRequest);
-//            System.out.println(validationResult);
+            timings.lap(Stage.VALIDATE);
             return switch (validationResult) {
                 case ValidationResult.Success success -> {
                     // Transform to domain model
+                    TransactionTrace.beginStage(Stage.TRANSFORM);
                     TransactionRequest request = transformer.toTransactionRequest(isoRequest);
-                    System.out.println("transmissoon time is "+request.transmissionDateTime());
+                    TransactionTrace.endStage(Stage.TRANSFORM);
+                    timings.lap(Stage.TRANSFORM);
                     // Route and process
-                    TransactionResponse response = router.route(request);
-                    System.out.println("transmission time"+response.transmissionDateTime());
-                    yield new ProcessingResult.Success(response);
+                    ProcessingCode processingCode = router.classify(request);
+                    timings.lap(Stage.ROUTE);
+                    ValidationResult velocityResult = velocity.check(request, processingCode);
+                    timings.lap(Stage.VELOCITY);
+                    if (velocityResult instanceof ValidationResult.Failure limited) {
+                        yield new ProcessingResult.ValidationError(limited, isoRequest, claim);
+                    }
+                    TransactionResponse response = router.dispatchWithDeadline(processingCode, request);
+                    timings.lap(Stage.ISSUER_CALL);
+                    yield new ProcessingResult.Success(response, isoRequest, claim);
                 }
                 case ValidationResult.Failure failure ->
-                        new ProcessingResult.ValidationError(failure, isoRequest);
+                        new ProcessingResult.ValidationError(failure, isoRequest, claim);
             };
 
         } catch (ISOException e) {
             log.error("ISO parsing error", e);
+            duplicates.abandon(claim);
             return new ProcessingResult.SystemError("ISO parsing error: " + e.getMessage());
         } catch (Exception e) {
             log.error("Unexpected error processing message", e);
+            duplicates.abandon(claim);
             return new ProcessingResult.SystemError("Unexpected error: " + e.getMessage());
         }
     }
 
-    private byte[] packResponse(TransactionResponse response) {
+    // Tags come from the request as received; nothing is known about it after a system error
+    private void recordOutcome(StageTimings timings, TransactionTrace trace, IsoMessageView request,
+                               String responseCode) {
+        String mti = null;
+        String processingCode = null;
+        String stan = null;
+        String terminalId = null;
+        if (request != null) {
+            try {
+                mti = request.getMTI();
+                processingCode = request.getString(3);
+                stan = request.getString(11);
+                terminalId = request.getString(41);
+            } catch (RuntimeException e) {
+                // Malformed field, record what was read so far
+            }
+        }
+        metrics.recordTransaction(timings, mti, processingCode, responseCode);
+        TransactionTrace.finish(trace, mti, stan, terminalId, processingCode, responseCode);
+    }
+
+    // Kept for retransmissions; a system error is not, so a retransmission gets another try
+    private byte[] remember(DuplicateTransactionCache.Claim claim, byte[] responseBytes, String responseCode) {
+        if (ResponseCode.SYSTEM_MALFUNCTION.getCode().equals(responseCode)) {
+            duplicates.abandon(claim);
+        } else {
+            duplicates.complete(claim, responseBytes, responseCode);
+        }
+        return responseBytes;
+    }
+
+    // Echoed fields are spliced from the request bytes, see ResponsePacker; null when it could not be packed
+    private byte[] packResponse(IsoMessageView request, TransactionResponse response) {
         try {
-            ISOMsg isoResponse = transformer.toIsoMessage(response);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            isoResponse.pack(baos);
-            return baos.toByteArray();
+            return responsePacker.reply(request, response.messageType(), response.responseCode(),
+                    response.retrievalReferenceNumber(), response.authorizationCode(),
+                    response.additionalResponseData());
         } catch (Exception e) {
             log.error("Error packing response", e);
-            return packSystemErrorResponse();
+            return null;
         }
     }
 
-    private byte[] packErrorResponse(ISOMsg request, ValidationResult.Failure failure) {
+    // Null when it could not be packed
+    private byte[] packErrorResponse(IsoMessageView request, ValidationResult.Failure failure) {
+        String responseMTI;
         try {
             String mti = request.getMTI();
-            String responseMTI = "0" + (Integer.parseInt(mti.substring(1)) + 10);
-
-            TransactionResponse response = new TransactionResponse(
-                    responseMTI,
-                    request.hasField(2) ? request.getString(2) : "",
-                    request.hasField(3) ? request.getString(3) : "",
-                    null,
-                    null,
-                    request.hasField(11) ? request.getString(11) : "000000",
-                    failure.responseCode().getCode(),
-                    null,
-                    null,
-                    failure.message()
-            );
-
-            return packResponse(response);
+            // Repeats (0201, 0221) are answered with the response MTI of the original
+            responseMTI = "0" + ((Integer.parseInt(mti.substring(1)) & ~1) + 10);
+        } catch (RuntimeException e) {
+            // No usable request MTI to answer to
+            return responsePacker.fixedReply(failure.responseCode());
+        }
+        try {
+            return responsePacker.reply(request, responseMTI, failure.responseCode().getCode(), null, null,
+                    failure.message());
         } catch (Exception e) {
             log.error("Error creating error response", e);
-            return packSystemErrorResponse();
+            return null;
         }
     }
 
+    // Pre-packed, so it stays cheap when failures pile up
     private byte[] packSystemErrorResponse() {
-        try {
-            ISOMsg msg = new ISOMsg();
-            msg.setPackager(packager);
-            msg.setMTI("0210");
-            msg.set(39, "96"); // System malfunction
-
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            msg.pack(baos);
-            return baos.toByteArray();
-        } catch (Exception e) {
-            log.error("Failed to create system error response", e);
-            return new byte[0];
-        }
+        return responsePacker.fixedReply(ResponseCode.SYSTEM_MALFUNCTION);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,50 @@
+package com.paymentswitch.payment_switch.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Caps the number of transactions running the pipeline at the same time.
+// With virtual threads there is no pool size to do this, so callers wait here for a permit instead.
+@Slf4j
+@Component
+public class TransactionConcurrencyLimiter {
+
+    private final int maxConcurrent;
+    private final Semaphore permits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public TransactionConcurrencyLimiter(
+            @Value("${switch.execution.max-concurrent-transactions:0}") int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+        this.permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+        log.info("Concurrent transaction cap: {}", maxConcurrent > 0 ? maxConcurrent : "unlimited");
+    }
+
+    public <T> T withPermit(Supplier<T> work) throws InterruptedException {
+        if (permits != null) {
+            permits.acquire();
+        }
+        inFlight.incrementAndGet();
+        try {
+            return work.get();
+        } finally {
+            inFlight.decrementAndGet();
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int maxConcurrent() {
+        return maxConcurrent;
+    }
+}
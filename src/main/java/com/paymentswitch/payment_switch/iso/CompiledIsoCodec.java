@@ -0,0 +1,429 @@
+package com.paymentswitch.payment_switch.iso;
+
+import org.jpos.iso.ISOBinaryField;
+import org.jpos.iso.ISOBitMap;
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOField;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.jpos.iso.ISOUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * ISO 8583 codec compiled from a {@link PackagerDefinition} at startup.
+ * <p>
+ * The field definitions are flattened into per-field type and length tables, so packing and unpacking is a
+ * single loop over the bitmap working directly on the byte array: no per-field packager, interpreter, padder
+ * or prefixer objects, and pack sizes the output exactly before writing it. The wire format is byte-for-byte
+ * the one jPOS {@code GenericPackager} produces for the same definition (see CompiledIsoCodecTest).
+ */
+public class CompiledIsoCodec implements IsoCodec {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private final ISOPackager packager;
+    private final IsoFieldType[] types = new IsoFieldType[PackagerDefinition.MAX_FIELD + 1];
+    private final int[] lengths = new int[PackagerDefinition.MAX_FIELD + 1];
+    private final int mtiLength;
+    private final int bitmapBits;
+    private final int maxDefinedField;
+
+    /**
+     * @param packager attached to unpacked messages so they can still be dumped or packed by jPOS
+     */
+    public CompiledIsoCodec(PackagerDefinition definition, ISOPackager packager) {
+        this.packager = packager;
+        for (int id = 0; id <= PackagerDefinition.MAX_FIELD; id++) {
+            IsoFieldSpec spec = definition.field(id);
+            types[id] = spec != null ? spec.type() : null;
+            lengths[id] = spec != null ? spec.length() : 0;
+        }
+        int highest = 0;
+        for (int id = 0; id <= PackagerDefinition.MAX_FIELD; id++) {
+            if (types[id] != null) {
+                highest = id;
+            }
+        }
+        this.maxDefinedField = highest;
+        this.mtiLength = lengths[0];
+        this.bitmapBits = Math.min(lengths[1] * 8, PackagerDefinition.MAX_FIELD);
+    }
+
+    // ---------------------------------------------------------------- unpack
+
+    @Override
+    public ISOMsg unpack(byte[] data) throws ISOException {
+        ISOMsg msg = new ISOMsg();
+        msg.setPackager(packager);
+
+        require(data, 0, mtiLength, 0);
+        msg.set(new ISOField(0, text(data, 0, mtiLength)));
+        int offset = mtiLength;
+
+        require(data, offset, 16, 1);
+        long primary = parseHex(data, offset);
+        offset += 16;
+        long secondary = 0;
+        if (primary < 0 && bitmapBits > 64) {
+            require(data, offset, 16, 1);
+            secondary = parseHex(data, offset);
+            offset += 16;
+        }
+        msg.set(new ISOBitMap(-1, toBitSet(primary, secondary)));
+
+        // Like jPOS, bits above the highest defined field are ignored rather than rejected.
+        // Bit 1 only flags the secondary bitmap.
+        for (long bits = primary & Long.MAX_VALUE; bits != 0; ) {
+            int index = Long.numberOfLeadingZeros(bits);
+            if (index + 1 > maxDefinedField) {
+                return msg;
+            }
+            offset = unpackField(msg, data, offset, index + 1);
+            bits &= ~(Long.MIN_VALUE >>> index);
+        }
+        for (long bits = secondary; bits != 0; ) {
+            int index = Long.numberOfLeadingZeros(bits);
+            if (65 + index > maxDefinedField) {
+                return msg;
+            }
+            offset = unpackField(msg, data, offset, 65 + index);
+            bits &= ~(Long.MIN_VALUE >>> index);
+        }
+        return msg;
+    }
+
+    // ---------------------------------------------------------------- read
+
+    @Override
+    public IsoMessageView read(byte[] data) throws ISOException {
+        require(data, 0, mtiLength, 0);
+        int offset = mtiLength;
+        require(data, offset, 16, 1);
+        long primary = parseHex(data, offset);
+        offset += 16;
+        long secondary = 0;
+        if (primary < 0 && bitmapBits > 64) {
+            require(data, offset, 16, 1);
+            secondary = parseHex(data, offset);
+            offset += 16;
+        }
+
+        // Index value offsets with the same structural checks and field cut-off as unpack
+        long presentPrimary = 0;
+        long presentSecondary = 0;
+        int[] spans = new int[2 * (Long.bitCount(primary & Long.MAX_VALUE) + Long.bitCount(secondary))];
+        int count = 0;
+        for (long bits = primary & Long.MAX_VALUE; bits != 0; ) {
+            int index = Long.numberOfLeadingZeros(bits);
+            if (index + 1 > maxDefinedField) {
+                break;
+            }
+            offset = indexField(data, offset, index + 1, spans, count++);
+            presentPrimary |= Long.MIN_VALUE >>> index;
+            bits &= ~(Long.MIN_VALUE >>> index);
+        }
+        for (long bits = secondary; bits != 0; ) {
+            int index = Long.numberOfLeadingZeros(bits);
+            if (65 + index > maxDefinedField) {
+                break;
+            }
+            offset = indexField(data, offset, 65 + index, spans, count++);
+            presentSecondary |= Long.MIN_VALUE >>> index;
+            bits &= ~(Long.MIN_VALUE >>> index);
+        }
+        return new LazyIsoMessage(this, data, mtiLength, presentPrimary, presentSecondary, spans, types);
+    }
+
+    // Offset of a primary bitmap field's value, reached by stepping over the fields before it without decoding
+    // them; -1 when the field is absent or the data is malformed up to its end
+    int valueOffset(byte[] data, int field) {
+        if (field < 2 || field > 64 || field > maxDefinedField) {
+            return -1;
+        }
+        try {
+            require(data, 0, mtiLength + 16, 1);
+            long primary = parseHex(data, mtiLength);
+            if ((primary & (Long.MIN_VALUE >>> (field - 1))) == 0) {
+                return -1;
+            }
+            int offset = mtiLength + (primary < 0 && bitmapBits > 64 ? 32 : 16);
+            for (long bits = primary & Long.MAX_VALUE & ~(-1L >>> (field - 1)); bits != 0; ) {
+                int index = Long.numberOfLeadingZeros(bits);
+                offset = valueStart(data, offset, index + 1) + valueLength(data, offset, index + 1);
+                bits &= ~(Long.MIN_VALUE >>> index);
+            }
+            int start = valueStart(data, offset, field);
+            valueLength(data, offset, field);
+            return start;
+        } catch (ISOException e) {
+            return -1;
+        }
+    }
+
+    private int indexField(byte[] data, int offset, int field, int[] spans, int slot) throws ISOException {
+        int start = valueStart(data, offset, field);
+        int length = valueLength(data, offset, field);
+        spans[slot * 2] = start;
+        spans[slot * 2 + 1] = length;
+        return start + length;
+    }
+
+    // Offset of the value after any length prefix
+    private int valueStart(byte[] data, int offset, int field) throws ISOException {
+        IsoFieldType type = types[field];
+        if (type == null) {
+            throw new ISOException("field packager '" + field + "' is null unpacking field=" + field);
+        }
+        if (type == IsoFieldType.BITMAP) {
+            throw new ISOException("Unexpected bitmap definition at field " + field);
+        }
+        return offset + type.prefixLength();
+    }
+
+    // Length of the value at offset, checked against the definition and the remaining data
+    private int valueLength(byte[] data, int offset, int field) throws ISOException {
+        IsoFieldType type = types[field];
+        int maxLength = lengths[field];
+        int prefix = type.prefixLength();
+        int length = maxLength;
+        if (prefix > 0) {
+            require(data, offset, prefix, field);
+            length = parseDigits(data, offset, prefix, field);
+            if (length > maxLength) {
+                throw new ISOException("Field length " + length + " too long. Max: " + maxLength
+                        + " unpacking field=" + field);
+            }
+        }
+        require(data, offset + prefix, length, field);
+        return length;
+    }
+
+    private int unpackField(ISOMsg msg, byte[] data, int offset, int field) throws ISOException {
+        int start = valueStart(data, offset, field);
+        int length = valueLength(data, offset, field);
+        if (types[field] == IsoFieldType.BINARY) {
+            byte[] value = new byte[length];
+            System.arraycopy(data, start, value, 0, length);
+            msg.set(new ISOBinaryField(field, value));
+        } else {
+            msg.set(new ISOField(field, text(data, start, length)));
+        }
+        return start + length;
+    }
+
+    // ---------------------------------------------------------------- pack
+
+    @Override
+    public byte[] pack(ISOMsg msg) throws ISOException {
+        int maxField = msg.getMaxField();
+        if (maxField > bitmapBits) {
+            throw new ISOException("Field " + maxField + " does not fit a " + bitmapBits + " bit bitmap");
+        }
+
+        // First pass: validate and size
+        int size = mtiLength;
+        long primary = 0;
+        long secondary = 0;
+        for (int field = 2; field <= maxField; field++) {
+            ISOComponent component = msg.getComponent(field);
+            if (component == null) {
+                continue;
+            }
+            size += packedLength(field, component.getValue());
+            if (field <= 64) {
+                primary |= 1L << (64 - field);
+            } else {
+                secondary |= 1L << (128 - field);
+            }
+        }
+        if (secondary != 0) {
+            primary |= Long.MIN_VALUE;
+        }
+        // jPOS 2.1 writes no bitmap at all for a message with only an MTI, and cannot unpack the result either
+        if (primary != 0) {
+            size += secondary != 0 ? 32 : 16;
+        }
+
+        // Second pass: write
+        byte[] out = new byte[size];
+        Object mti = msg.getComponent(0) != null ? msg.getComponent(0).getValue() : null;
+        if (!(mti instanceof String mtiValue)) {
+            throw new ISOException("MTI not set");
+        }
+        int offset = writeFixed(out, 0, mtiValue, mtiLength, (byte) '0', true, 0);
+        if (primary != 0) {
+            offset = writeHex(out, offset, primary);
+            if (secondary != 0) {
+                offset = writeHex(out, offset, secondary);
+            }
+        }
+        // Only visit the fields found in the first pass; bit 1 only flags the secondary bitmap
+        for (long bits = primary & Long.MAX_VALUE; bits != 0; ) {
+            int index = Long.numberOfLeadingZeros(bits);
+            offset = packField(out, offset, index + 1, msg.getComponent(index + 1).getValue());
+            bits &= ~(Long.MIN_VALUE >>> index);
+        }
+        for (long bits = secondary; bits != 0; ) {
+            int index = Long.numberOfLeadingZeros(bits);
+            offset = packField(out, offset, 65 + index, msg.getComponent(65 + index).getValue());
+            bits &= ~(Long.MIN_VALUE >>> index);
+        }
+        return out;
+    }
+
+    // Packed size of one field including any length prefix; also validates the value
+    int packedLength(int field, Object value) throws ISOException {
+        IsoFieldType type = types[field];
+        if (type == null) {
+            throw new ISOException("error packing field " + field + " (null field " + field + " packager)");
+        }
+        int maxLength = lengths[field];
+        return switch (type) {
+            case NUMERIC, CHAR -> {
+                checkLength(field, textValue(field, value).length(), maxLength);
+                yield maxLength;
+            }
+            case BINARY -> {
+                int length = binaryValue(value).length;
+                if (length != maxLength) {
+                    throw new ISOException("error packing field " + field
+                            + " (Binary data length not the same as the packager length ("
+                            + length + "/" + maxLength + "))");
+                }
+                yield maxLength;
+            }
+            case LLNUM, LLCHAR, LLLCHAR -> {
+                int length = textValue(field, value).length();
+                checkLength(field, length, maxLength);
+                yield type.prefixLength() + length;
+            }
+            case BITMAP -> throw new ISOException("Unexpected bitmap definition at field " + field);
+        };
+    }
+
+    // Value must have passed packedLength
+    int packField(byte[] out, int offset, int field, Object value) throws ISOException {
+        int maxLength = lengths[field];
+        IsoFieldType type = types[field];
+        return switch (type) {
+            case NUMERIC -> writeFixed(out, offset, (String) value, maxLength, (byte) '0', true, field);
+            case CHAR -> writeFixed(out, offset, (String) value, maxLength, (byte) ' ', false, field);
+            case BINARY -> {
+                System.arraycopy(binaryValue(value), 0, out, offset, maxLength);
+                yield offset + maxLength;
+            }
+            case LLNUM, LLCHAR, LLLCHAR -> {
+                String text = (String) value;
+                int prefix = type.prefixLength();
+                int length = text.length();
+                for (int i = prefix - 1; i >= 0; i--) {
+                    out[offset + i] = (byte) ('0' + length % 10);
+                    length /= 10;
+                }
+                yield writeText(out, offset + prefix, text);
+            }
+            case BITMAP -> throw new ISOException("Unexpected bitmap definition at field " + field);
+        };
+    }
+
+    private static int writeFixed(byte[] out, int offset, String value, int length, byte pad, boolean leftPad,
+                                  int field) throws ISOException {
+        checkLength(field, value.length(), length);
+        int padding = length - value.length();
+        if (leftPad) {
+            for (int i = 0; i < padding; i++) {
+                out[offset++] = pad;
+            }
+            return writeText(out, offset, value);
+        }
+        offset = writeText(out, offset, value);
+        for (int i = 0; i < padding; i++) {
+            out[offset++] = pad;
+        }
+        return offset;
+    }
+
+    // ISO-8859-1, unmappable characters become '?' like String.getBytes would produce
+    private static int writeText(byte[] out, int offset, String value) {
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            out[offset++] = c <= 0xFF ? (byte) c : (byte) '?';
+        }
+        return offset;
+    }
+
+    static int writeHex(byte[] out, int offset, long bits) {
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            out[offset++] = HEX[(int) (bits >>> shift) & 0xF];
+        }
+        return offset;
+    }
+
+    private static void checkLength(int field, int length, int maxLength) throws ISOException {
+        if (length > maxLength) {
+            throw new ISOException("error packing field " + field
+                    + " (Field length " + length + " too long. Max: " + maxLength + ")");
+        }
+    }
+
+    private static String textValue(int field, Object value) throws ISOException {
+        if (value instanceof String text) {
+            return text;
+        }
+        throw new ISOException("error packing field " + field + " (expected a String value)");
+    }
+
+    private static byte[] binaryValue(Object value) {
+        return value instanceof byte[] bytes ? bytes : ISOUtil.hex2byte((String) value);
+    }
+
+    // ---------------------------------------------------------------- helpers
+
+    private static void require(byte[] data, int offset, int length, int field) throws ISOException {
+        if (offset + length > data.length) {
+            throw new ISOException("Required " + length + " but just got " + (data.length - offset)
+                    + " bytes unpacking field=" + field + ", consumed=" + offset);
+        }
+    }
+
+    private static String text(byte[] data, int offset, int length) {
+        return new String(data, offset, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int parseDigits(byte[] data, int offset, int length, int field) throws ISOException {
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new ISOException("Invalid character found. Expected digit. unpacking field=" + field);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // Same leniency as jPOS ISOUtil.hex2BitSet: a non-hex character reads as Character.digit == -1, i.e. all bits set
+    private static long parseHex(byte[] data, int offset) {
+        long bits = 0;
+        for (int i = offset; i < offset + 16; i++) {
+            bits = (bits << 4) | (Character.digit(data[i], 16) & 0xF);
+        }
+        return bits;
+    }
+
+    private static BitSet toBitSet(long primary, long secondary) {
+        BitSet bitSet = new BitSet(secondary != 0 ? 129 : 65);
+        for (int i = 0; i < 64; i++) {
+            if ((primary & (Long.MIN_VALUE >>> i)) != 0) {
+                bitSet.set(i + 1);
+            }
+            if ((secondary & (Long.MIN_VALUE >>> i)) != 0) {
+                bitSet.set(i + 65);
+            }
+        }
+        return bitSet;
+    }
+}
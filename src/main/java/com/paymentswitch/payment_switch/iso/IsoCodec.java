@@ -0,0 +1,15 @@
+package com.paymentswitch.payment_switch.iso;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+
+// Wire format <-> ISOMsg, selected with switch.iso.codec
+public interface IsoCodec {
+
+    ISOMsg unpack(byte[] data) throws ISOException;
+
+    // Checks the message structure like unpack, but may defer decoding field values until they are read
+    IsoMessageView read(byte[] data) throws ISOException;
+
+    byte[] pack(ISOMsg msg) throws ISOException;
+}
@@ -0,0 +1,14 @@
+package com.paymentswitch.payment_switch.iso;
+
+// One <isofield> entry of the packager definition
+public record IsoFieldSpec(int id, IsoFieldType type, int length, String name) {
+
+    public IsoFieldSpec {
+        if (id < 0 || id > PackagerDefinition.MAX_FIELD) {
+            throw new IllegalArgumentException("Field id out of range: " + id);
+        }
+        if (type == null || length <= 0) {
+            throw new IllegalArgumentException("Invalid definition for field " + id);
+        }
+    }
+}
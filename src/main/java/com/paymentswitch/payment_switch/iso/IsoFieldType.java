@@ -0,0 +1,38 @@
+package com.paymentswitch.payment_switch.iso;
+
+// Field encodings used by packager/iso87ascii.xml, keyed by their jPOS field packager class
+public enum IsoFieldType {
+
+    NUMERIC("org.jpos.iso.IFA_NUMERIC", 0),   // fixed length ASCII, left padded with '0'
+    CHAR("org.jpos.iso.IF_CHAR", 0),          // fixed length ASCII, right padded with ' '
+    BINARY("org.jpos.iso.IFB_BINARY", 0),     // fixed length raw bytes
+    LLNUM("org.jpos.iso.IFA_LLNUM", 2),       // 2 ASCII length digits + ASCII data
+    LLCHAR("org.jpos.iso.IFA_LLCHAR", 2),
+    LLLCHAR("org.jpos.iso.IFA_LLLCHAR", 3),
+    BITMAP("org.jpos.iso.IFA_BITMAP", 0);     // 16 hex characters per 64 bit bitmap
+
+    private final String jposClass;
+    private final int prefixLength;
+
+    IsoFieldType(String jposClass, int prefixLength) {
+        this.jposClass = jposClass;
+        this.prefixLength = prefixLength;
+    }
+
+    public int prefixLength() {
+        return prefixLength;
+    }
+
+    public boolean isVariable() {
+        return prefixLength > 0;
+    }
+
+    public static IsoFieldType fromJposClass(String className) {
+        for (IsoFieldType type : values()) {
+            if (type.jposClass.equals(className)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported field packager class: " + className);
+    }
+}
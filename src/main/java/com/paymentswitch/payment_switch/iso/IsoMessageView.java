@@ -0,0 +1,33 @@
+package com.paymentswitch.payment_switch.iso;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+
+/**
+ * Read-only access to an inbound message, with the same field semantics as {@link ISOMsg}.
+ * <p>
+ * {@link IsoCodec#read} returns a view that only decodes the fields that are actually read, so validation and
+ * early rejects don't pay for a full unpack.
+ */
+public interface IsoMessageView {
+
+    String getMTI();
+
+    boolean hasField(int field);
+
+    // Present fields 2-64 as a bit mask, field n at 1L << (64 - n) like the primary bitmap
+    long presenceMask();
+
+    // Field value as ISOMsg.getString returns it (binary fields as hex), null when absent
+    String getString(int field);
+
+    // Numeric field value taken straight from its digits; NumberFormatException when absent or not all digits
+    long getLong(int field);
+
+    // Full decode, for callers that need a mutable ISOMsg
+    ISOMsg toISOMsg() throws ISOException;
+
+    static IsoMessageView of(ISOMsg msg) {
+        return new UnpackedIsoMessage(msg);
+    }
+}
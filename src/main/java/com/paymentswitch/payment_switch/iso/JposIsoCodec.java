@@ -0,0 +1,34 @@
+package com.paymentswitch.payment_switch.iso;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.packager.GenericPackager;
+
+// Reference implementation: jPOS GenericPackager, field by field through ISOFieldPackager components
+public class JposIsoCodec implements IsoCodec {
+
+    private final GenericPackager packager;
+
+    public JposIsoCodec(GenericPackager packager) {
+        this.packager = packager;
+    }
+
+    @Override
+    public ISOMsg unpack(byte[] data) throws ISOException {
+        ISOMsg msg = new ISOMsg();
+        msg.setPackager(packager);
+        msg.unpack(data);
+        return msg;
+    }
+
+    @Override
+    public IsoMessageView read(byte[] data) throws ISOException {
+        return IsoMessageView.of(unpack(data));
+    }
+
+    @Override
+    public byte[] pack(ISOMsg msg) throws ISOException {
+        msg.setPackager(packager);
+        return msg.pack();
+    }
+}
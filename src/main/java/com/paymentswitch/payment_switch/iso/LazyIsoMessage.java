@@ -0,0 +1,140 @@
+package com.paymentswitch.payment_switch.iso;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * View over a raw payload produced by {@link CompiledIsoCodec#read}.
+ * <p>
+ * The bitmap is parsed and the value offsets of the present fields are indexed once, which also checks the
+ * message structure exactly like a full unpack would. Field values are only turned into Strings when read,
+ * and cached.
+ */
+final class LazyIsoMessage implements IsoMessageView {
+
+    private final CompiledIsoCodec codec;
+    private final byte[] data;
+    private final int mtiLength;
+    private final long primary;   // present fields 1-64, bit 1 never set
+    private final long secondary; // present fields 65-128
+    private final int[] spans;    // start, length of each present field value, in bitmap order
+    private final IsoFieldType[] types;
+    private String mti;
+    private String[] values;
+
+    LazyIsoMessage(CompiledIsoCodec codec, byte[] data, int mtiLength, long primary, long secondary, int[] spans,
+                   IsoFieldType[] types) {
+        this.codec = codec;
+        this.data = data;
+        this.mtiLength = mtiLength;
+        this.primary = primary;
+        this.secondary = secondary;
+        this.spans = spans;
+        this.types = types;
+    }
+
+    @Override
+    public String getMTI() {
+        if (mti == null) {
+            mti = new String(data, 0, mtiLength, StandardCharsets.ISO_8859_1);
+        }
+        return mti;
+    }
+
+    @Override
+    public boolean hasField(int field) {
+        if (field == 0) {
+            return true;
+        }
+        if (field < 2 || field > 128) {
+            return false;
+        }
+        return field <= 64
+                ? (primary & (Long.MIN_VALUE >>> (field - 1))) != 0
+                : (secondary & (Long.MIN_VALUE >>> (field - 65))) != 0;
+    }
+
+    @Override
+    public long presenceMask() {
+        return primary;
+    }
+
+    @Override
+    public String getString(int field) {
+        if (field == 0) {
+            return getMTI();
+        }
+        if (!hasField(field)) {
+            return null;
+        }
+        int rank = rank(field);
+        if (values == null) {
+            values = new String[spans.length / 2];
+        }
+        String value = values[rank];
+        if (value == null) {
+            int start = spans[rank * 2];
+            int length = spans[rank * 2 + 1];
+            value = types[field] == IsoFieldType.BINARY
+                    ? ISOUtil.hexString(data, start, length)
+                    : new String(data, start, length, StandardCharsets.ISO_8859_1);
+            values[rank] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public long getLong(int field) {
+        if (field < 2 || !hasField(field) || types[field] == IsoFieldType.BINARY) {
+            throw new NumberFormatException("Field " + field + " is not a present numeric field");
+        }
+        int rank = rank(field);
+        int start = spans[rank * 2];
+        int length = spans[rank * 2 + 1];
+        // 18 digits always fit in a long
+        if (length == 0 || length > 18) {
+            throw new NumberFormatException("Field " + field + " has " + length + " digits");
+        }
+        long value = 0;
+        for (int i = start, end = start + length; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Field " + field + " is not all digits");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    @Override
+    public ISOMsg toISOMsg() throws ISOException {
+        return codec.unpack(data);
+    }
+
+    // Wire size of a present field including its length prefix
+    int encodedLength(int field) {
+        return types[field].prefixLength() + spans[rank(field) * 2 + 1];
+    }
+
+    // Copies a present field as it was received, length prefix included
+    int copyEncoded(int field, byte[] out, int offset) {
+        int rank = rank(field);
+        int prefix = types[field].prefixLength();
+        int length = prefix + spans[rank * 2 + 1];
+        System.arraycopy(data, spans[rank * 2] - prefix, out, offset, length);
+        return offset + length;
+    }
+
+    // Position of a present field among the present fields
+    private int rank(int field) {
+        if (field <= 64) {
+            return Long.bitCount(primary >>> (65 - field));
+        }
+        // A shift by 64 is a shift by 0 in Java, so field 65 has no earlier secondary fields to count
+        int before = field == 65 ? 0 : Long.bitCount(secondary >>> (129 - field));
+        return Long.bitCount(primary) + before;
+    }
+}
@@ -0,0 +1,61 @@
+package com.paymentswitch.payment_switch.iso;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Field definitions read from a jPOS generic packager XML file (e.g. packager/iso87ascii.xml)
+public final class PackagerDefinition {
+
+    public static final int MAX_FIELD = 128;
+
+    private final IsoFieldSpec[] fields;
+
+    private PackagerDefinition(IsoFieldSpec[] fields) {
+        this.fields = fields;
+    }
+
+    public static PackagerDefinition load(InputStream xml) throws IOException {
+        IsoFieldSpec[] fields = new IsoFieldSpec[MAX_FIELD + 1];
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            // The DOCTYPE points at jpos.org; never fetch it
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.setExpandEntityReferences(false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            Document document = builder.parse(xml);
+
+            NodeList nodes = document.getElementsByTagName("isofield");
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Element element = (Element) nodes.item(i);
+                IsoFieldSpec spec = new IsoFieldSpec(
+                        Integer.parseInt(element.getAttribute("id")),
+                        IsoFieldType.fromJposClass(element.getAttribute("class")),
+                        Integer.parseInt(element.getAttribute("length")),
+                        element.getAttribute("name"));
+                fields[spec.id()] = spec;
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Cannot read packager definition", e);
+        }
+
+        if (fields[0] == null || fields[0].type() != IsoFieldType.NUMERIC) {
+            throw new IOException("Packager definition needs a numeric MTI as field 0");
+        }
+        if (fields[1] == null || fields[1].type() != IsoFieldType.BITMAP) {
+            throw new IOException("Packager definition needs an IFA_BITMAP as field 1");
+        }
+        return new PackagerDefinition(fields);
+    }
+
+    public IsoFieldSpec field(int id) {
+        return id >= 0 && id <= MAX_FIELD ? fields[id] : null;
+    }
+}
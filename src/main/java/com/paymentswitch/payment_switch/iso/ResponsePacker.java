@@ -0,0 +1,189 @@
+package com.paymentswitch.payment_switch.iso;
+
+import com.paymentswitch.payment_switch.model.ResponseCode;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+
+/**
+ * Packs replies straight to bytes, without building an ISOMsg.
+ * <p>
+ * Echoed fields are spliced from the request: copied byte for byte from the received payload when the request
+ * was read through the lazy view, re-encoded from its value otherwise. The reply is sized before it is written,
+ * so the returned array is the only allocation. Replies that can't echo anything (0210 with just a response
+ * code, e.g. system malfunction) are packed once at startup for every {@link ResponseCode}, in the reply MTIs
+ * of the authorization, financial, reversal and network management classes; the ones answering a request that
+ * is never unpacked also carry its STAN (11) and terminal ID (41).
+ * <p>
+ * All of that needs the field tables of the {@link CompiledIsoCodec}. Given any other codec (the jPOS fallback)
+ * replies are built as an ISOMsg and packed by that codec, and fixed replies echo 11 and 41 only from a request
+ * that unpacks.
+ */
+public class ResponsePacker {
+
+    // Reply fields in bitmap order; 37, 38, 39 and 48 come from the outcome, the others are echoed from the request
+    // (49 so the echoed amount keeps its currency)
+    private static final int[] REPLY_FIELDS = {2, 3, 4, 7, 11, 32, 37, 38, 39, 41, 48, 49};
+    private static final int[] FIXED_REPLY_CLASSES = {1, 2, 4, 8};
+    // Fixed length in iso87ascii (n6, ans8), so they sit at the same offsets in every fixed reply
+    private static final String BLANK_STAN = "000000";
+    private static final String BLANK_TERMINAL_ID = "        ";
+    private static final ResponseCode[] CODES = ResponseCode.values();
+
+    private final IsoCodec codec;
+    // Null when the codec isn't the compiled one, see the class comment
+    private final CompiledIsoCodec compiled;
+    // By message class, function (1 response, 3 advice response) and response code; null for other classes
+    private final byte[][] fixedReplies = new byte[10 * 2 * CODES.length][];
+    // The same with 11 and 41 blanked, to be filled in from the request
+    private final byte[][] echoingFixedReplies = new byte[fixedReplies.length][];
+    private final int stanOffset;
+    private final int terminalIdOffset;
+
+    public ResponsePacker(IsoCodec codec) throws ISOException {
+        this.codec = codec;
+        this.compiled = codec instanceof CompiledIsoCodec compiledCodec ? compiledCodec : null;
+        for (int messageClass : FIXED_REPLY_CLASSES) {
+            for (int function = 1; function <= 3; function += 2) {
+                for (ResponseCode code : CODES) {
+                    int index = fixedReplyIndex(messageClass, function, code);
+                    ISOMsg msg = new ISOMsg("0" + messageClass + function + "0");
+                    msg.set(39, code.getCode());
+                    fixedReplies[index] = codec.pack(msg);
+                    msg.set(11, BLANK_STAN);
+                    msg.set(41, BLANK_TERMINAL_ID);
+                    echoingFixedReplies[index] = codec.pack(msg);
+                }
+            }
+        }
+        byte[] template = echoingFixedReplies[fixedReplyIndex(2, 1, ResponseCode.APPROVED)];
+        stanOffset = compiled != null ? compiled.valueOffset(template, 11) : -1;
+        terminalIdOffset = compiled != null ? compiled.valueOffset(template, 41) : -1;
+    }
+
+    // 0210 carrying only field 39
+    public byte[] fixedReply(ResponseCode code) {
+        return fixedReplies[fixedReplyIndex(2, 1, code)].clone();
+    }
+
+    // Fixed reply to a request still in its packed form, with nothing unpacked: the reply MTI comes from the
+    // request's ASCII MTI (0100 -> 0110, 0221 -> 0230, 0420 -> 0430, 0800 -> 0810; 0210 for other classes) and
+    // 11 and 41 are copied from offsets found by stepping over the fields before them. A request missing either
+    // gets field 39 alone.
+    public byte[] fixedReply(byte[] request, ResponseCode code) {
+        int messageClass = 2;
+        int function = 1;
+        if (request.length >= 4) {
+            int requestClass = request[1] - '0';
+            int requestFunction = (request[2] - '0') | 1;
+            if (requestClass >= 0 && requestClass <= 9 && (requestFunction == 1 || requestFunction == 3)
+                    && fixedReplies[fixedReplyIndex(requestClass, requestFunction, code)] != null) {
+                messageClass = requestClass;
+                function = requestFunction;
+            }
+        }
+        int index = fixedReplyIndex(messageClass, function, code);
+        if (compiled == null) {
+            return unpackedFixedReply(request, "0" + messageClass + function + "0", code, index);
+        }
+        int stan = compiled.valueOffset(request, 11);
+        int terminalId = compiled.valueOffset(request, 41);
+        if (stan < 0 || terminalId < 0) {
+            return fixedReplies[index].clone();
+        }
+        byte[] reply = echoingFixedReplies[index].clone();
+        System.arraycopy(request, stan, reply, stanOffset, BLANK_STAN.length());
+        System.arraycopy(request, terminalId, reply, terminalIdOffset, BLANK_TERMINAL_ID.length());
+        return reply;
+    }
+
+    private byte[] unpackedFixedReply(byte[] request, String mti, ResponseCode code, int index) {
+        try {
+            IsoMessageView view = codec.read(request);
+            if (view.hasField(11) && view.hasField(41)) {
+                ISOMsg msg = new ISOMsg(mti);
+                msg.set(11, view.getString(11));
+                msg.set(39, code.getCode());
+                msg.set(41, view.getString(41));
+                return codec.pack(msg);
+            }
+        } catch (ISOException e) {
+            // Nothing to echo from
+        }
+        return fixedReplies[index].clone();
+    }
+
+    public byte[] reply(IsoMessageView request, String mti, String responseCode, String retrievalReferenceNumber,
+                        String authorizationCode, String additionalData) throws ISOException {
+        if (compiled == null) {
+            ISOMsg msg = new ISOMsg(mti);
+            for (int field : REPLY_FIELDS) {
+                String value = isEchoed(field) ? request.getString(field)
+                        : outcomeValue(field, responseCode, retrievalReferenceNumber, authorizationCode,
+                        additionalData);
+                if (value != null) {
+                    msg.set(field, value);
+                }
+            }
+            return codec.pack(msg);
+        }
+
+        // First pass: bitmap and exact size, validating every value
+        int size = compiled.packedLength(0, mti) + 16;
+        long bitmap = 0;
+        for (int field : REPLY_FIELDS) {
+            int length;
+            if (isEchoed(field)) {
+                length = !request.hasField(field) ? -1
+                        : request instanceof LazyIsoMessage lazy ? lazy.encodedLength(field)
+                        : compiled.packedLength(field, request.getString(field));
+            } else {
+                String value = outcomeValue(field, responseCode, retrievalReferenceNumber, authorizationCode,
+                        additionalData);
+                length = value == null ? -1 : compiled.packedLength(field, value);
+            }
+            if (length >= 0) {
+                bitmap |= Long.MIN_VALUE >>> (field - 1);
+                size += length;
+            }
+        }
+
+        // Second pass: write
+        byte[] out = new byte[size];
+        int offset = compiled.packField(out, 0, 0, mti);
+        offset = CompiledIsoCodec.writeHex(out, offset, bitmap);
+        for (int field : REPLY_FIELDS) {
+            if ((bitmap & (Long.MIN_VALUE >>> (field - 1))) == 0) {
+                continue;
+            }
+            if (!isEchoed(field)) {
+                offset = compiled.packField(out, offset, field,
+                        outcomeValue(field, responseCode, retrievalReferenceNumber, authorizationCode,
+                                additionalData));
+            } else if (request instanceof LazyIsoMessage lazy) {
+                offset = lazy.copyEncoded(field, out, offset);
+            } else {
+                offset = compiled.packField(out, offset, field, request.getString(field));
+            }
+        }
+        return out;
+    }
+
+    private static boolean isEchoed(int field) {
+        return field != 37 && field != 38 && field != 39 && field != 48;
+    }
+
+    private static String outcomeValue(int field, String responseCode, String retrievalReferenceNumber,
+                                       String authorizationCode, String additionalData) {
+        return switch (field) {
+            case 37 -> retrievalReferenceNumber;
+            case 38 -> authorizationCode;
+            case 39 -> responseCode;
+            case 48 -> additionalData;
+            default -> null;
+        };
+    }
+
+    private static int fixedReplyIndex(int messageClass, int function, ResponseCode code) {
+        return (messageClass * 2 + (function >> 1)) * CODES.length + code.ordinal();
+    }
+}
@@ -0,0 +1,50 @@
+package com.paymentswitch.payment_switch.iso;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+
+// View over an already unpacked ISOMsg (jpos codec)
+final class UnpackedIsoMessage implements IsoMessageView {
+
+    private final ISOMsg msg;
+
+    UnpackedIsoMessage(ISOMsg msg) {
+        this.msg = msg;
+    }
+
+    @Override
+    public String getMTI() {
+        return msg.getString(0);
+    }
+
+    @Override
+    public boolean hasField(int field) {
+        return msg.hasField(field);
+    }
+
+    @Override
+    public long presenceMask() {
+        long mask = 0;
+        for (int field = 2, last = Math.min(64, msg.getMaxField()); field <= last; field++) {
+            if (msg.hasField(field)) {
+                mask |= Long.MIN_VALUE >>> (field - 1);
+            }
+        }
+        return mask;
+    }
+
+    @Override
+    public String getString(int field) {
+        return msg.getString(field);
+    }
+
+    @Override
+    public long getLong(int field) {
+        return Long.parseLong(msg.getString(field));
+    }
+
+    @Override
+    public ISOMsg toISOMsg() {
+        return msg;
+    }
+}
@@ -0,0 +1,150 @@
+package com.paymentswitch.payment_switch.issuer;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Closed, open or half-open, from the outcomes of the last {@code window} calls.
+ * <p>
+ * Closed lets every call through and opens once at least {@code minimumCalls} of the window are in and either the
+ * failure rate or the slow call rate reaches its threshold. Open refuses calls for {@code openDuration}, then
+ * turns half-open and lets {@code probes} calls through: the first failing or slow probe opens it again, all of
+ * them passing closes it with an empty window. Outcomes of calls let through before the circuit opened are
+ * ignored.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final int failureRatePercent;
+    private final long slowCallNanos;
+    private final int slowCallRatePercent;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int probes;
+    private final LongSupplier nanoTime;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Outcome ring, bit 0 failed, bit 1 slow
+    private final byte[] outcomes;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private int probesIssued;
+    private int probesPassed;
+    private volatile long opened;
+
+    public CircuitBreaker(int window, int minimumCalls, int failureRatePercent, Duration slowCall,
+                          int slowCallRatePercent, Duration openDuration, int probes) {
+        this(window, minimumCalls, failureRatePercent, slowCall, slowCallRatePercent, openDuration, probes,
+                System::nanoTime);
+    }
+
+    CircuitBreaker(int window, int minimumCalls, int failureRatePercent, Duration slowCall, int slowCallRatePercent,
+                   Duration openDuration, int probes, LongSupplier nanoTime) {
+        if (window < 1 || minimumCalls < 1 || minimumCalls > window || probes < 1) {
+            throw new IllegalArgumentException("Circuit breaker needs 1 <= minimum calls <= window and probes >= 1");
+        }
+        this.outcomes = new byte[window];
+        this.minimumCalls = minimumCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallNanos = slowCall.toNanos();
+        this.slowCallRatePercent = slowCallRatePercent;
+        this.openNanos = openDuration.toNanos();
+        this.probes = probes;
+        this.nanoTime = nanoTime;
+    }
+
+    // Whether a call may go ahead; every call let through must report its outcome with onResult
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                if (nanoTime.getAsLong() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probesIssued = 0;
+                probesPassed = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesIssued == probes) {
+                    return false;
+                }
+                probesIssued++;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onResult(boolean failed, long latencyNanos) {
+        boolean slow = latencyNanos >= slowCallNanos;
+        lock.lock();
+        try {
+            switch (state) {
+                case CLOSED -> {
+                    record(failed, slow);
+                    if (calls >= minimumCalls && (failures * 100 >= failureRatePercent * calls
+                            || slowCalls * 100 >= slowCallRatePercent * calls)) {
+                        open();
+                    }
+                }
+                case HALF_OPEN -> {
+                    if (failed || slow) {
+                        open();
+                    } else if (++probesPassed == probes) {
+                        state = State.CLOSED;
+                    }
+                }
+                case OPEN -> {
+                    // A call from before the circuit opened
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public State state() {
+        return state;
+    }
+
+    // Times the circuit opened
+    public long opened() {
+        return opened;
+    }
+
+    private void record(boolean failed, boolean slow) {
+        if (calls == outcomes.length) {
+            byte oldest = outcomes[next];
+            failures -= oldest & 1;
+            slowCalls -= oldest >> 1;
+        } else {
+            calls++;
+        }
+        outcomes[next] = (byte) ((failed ? 1 : 0) | (slow ? 2 : 0));
+        failures += failed ? 1 : 0;
+        slowCalls += slow ? 1 : 0;
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = nanoTime.getAsLong();
+        opened++;
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+}
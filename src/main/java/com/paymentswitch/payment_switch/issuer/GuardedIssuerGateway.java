@@ -0,0 +1,147 @@
+package com.paymentswitch.payment_switch.issuer;
+
+import com.paymentswitch.payment_switch.model.ProcessingCode;
+import com.paymentswitch.payment_switch.model.ResponseCode;
+import com.paymentswitch.payment_switch.model.TransactionRequest;
+import com.paymentswitch.payment_switch.model.TransactionResponse;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An issuer behind its own bulkhead and circuit breaker, so one slow or failing issuer can't hold the threads and
+ * connections the others need.
+ * <p>
+ * The bulkhead caps the calls in flight to the issuer at {@code maxConcurrent}; a call over it is answered 91 at
+ * once instead of queuing. Calls answered 91 or 96 or throwing count as failures, calls slower than
+ * {@code slowCall} as slow (see {@link CircuitBreaker}); while the circuit is open calls are answered 91 without
+ * reaching the issuer. Reversals always go through.
+ */
+@Slf4j
+public final class GuardedIssuerGateway implements IssuerGateway, AutoCloseable {
+
+    // switch.issuer.guard, the same for every issuer
+    public record Settings(boolean enabled, int maxConcurrent, int window, int minimumCalls, int failureRatePercent,
+                           Duration slowCall, int slowCallRatePercent, Duration openDuration, int halfOpenProbes) {
+
+        public static final Settings DISABLED = new Settings(false, 0, 1, 1, 100, Duration.ofDays(1), 100,
+                Duration.ZERO, 1);
+    }
+
+    private final IssuerGateway delegate;
+    private final int maxConcurrent;
+    private final Semaphore bulkhead;
+    private final CircuitBreaker breaker;
+    private final LongAdder rejectedOpen = new LongAdder();
+    private final LongAdder rejectedFull = new LongAdder();
+
+    public GuardedIssuerGateway(IssuerGateway delegate, Settings settings) {
+        this(delegate, settings.maxConcurrent(), new CircuitBreaker(settings.window(), settings.minimumCalls(),
+                settings.failureRatePercent(), settings.slowCall(), settings.slowCallRatePercent(),
+                settings.openDuration(), settings.halfOpenProbes()));
+    }
+
+    GuardedIssuerGateway(IssuerGateway delegate, int maxConcurrent, CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.maxConcurrent = maxConcurrent;
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.breaker = breaker;
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    public IssuerGateway delegate() {
+        return delegate;
+    }
+
+    @Override
+    public TransactionResponse authorize(ProcessingCode code, TransactionRequest request) {
+        if (!bulkhead.tryAcquire()) {
+            rejectedFull.increment();
+            return unavailable(request, "Issuer busy");
+        }
+        try {
+            if (!breaker.tryAcquire()) {
+                rejectedOpen.increment();
+                return unavailable(request, "Issuer circuit open");
+            }
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                TransactionResponse response = delegate.authorize(code, request);
+                failed = isFailure(response.responseCode());
+                return response;
+            } finally {
+                breaker.onResult(failed, System.nanoTime() - start);
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    @Override
+    public void reverse(ProcessingCode code, TransactionRequest request) {
+        delegate.reverse(code, request);
+    }
+
+    public CircuitBreaker.State state() {
+        return breaker.state();
+    }
+
+    public long circuitOpened() {
+        return breaker.opened();
+    }
+
+    public int inFlight() {
+        return maxConcurrent - bulkhead.availablePermits();
+    }
+
+    public long rejectedOpen() {
+        return rejectedOpen.sum();
+    }
+
+    public long rejectedFull() {
+        return rejectedFull.sum();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    private static boolean isFailure(String responseCode) {
+        return ResponseCode.ISSUER_UNAVAILABLE.getCode().equals(responseCode)
+                || ResponseCode.SYSTEM_MALFUNCTION.getCode().equals(responseCode);
+    }
+
+    private TransactionResponse unavailable(TransactionRequest request, String reason) {
+        log.debug("{} - issuer: {}, STAN: {}", reason, name(), request.stan());
+        return TransactionResponse.builder()
+                // 0201 and 0221 are repeats, answered like the original
+                .messageType("0" + ((Integer.parseInt(request.messageType().substring(1)) & ~1) + 10))
+                .primaryAccountNumber(request.primaryAccountNumber())
+                .processingCode(request.processingCode())
+                .transactionAmount(request.transactionAmount())
+                .currencyCode(request.currencyCode())
+                .transmissionDateTime(request.transmissionDateTime())
+                .stan(request.stan())
+                .retrievalReferenceNumber(request.retrievalReferenceNumber())
+                .responseCode(ResponseCode.ISSUER_UNAVAILABLE.getCode())
+                .acquiringInstitutionCode(request.acquiringInstitutionCode())
+                .cardAcceptorTerminalId(request.cardAcceptorTerminalId())
+                .additionalResponseData(reason)
+                .build();
+    }
+}
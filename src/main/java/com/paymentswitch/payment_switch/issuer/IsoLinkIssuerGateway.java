@@ -0,0 +1,87 @@
+package com.paymentswitch.payment_switch.issuer;
+
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.model.ProcessingCode;
+import com.paymentswitch.payment_switch.model.ResponseCode;
+import com.paymentswitch.payment_switch.model.TransactionRequest;
+import com.paymentswitch.payment_switch.model.TransactionResponse;
+import com.paymentswitch.payment_switch.transformer.IsoMessageTransformer;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+
+import java.util.concurrent.CompletionException;
+
+// A remote issuer host behind an IsoLinkPool; requests are forwarded as they came in, 91 when the host can't be
+// reached or doesn't answer
+@Slf4j
+public final class IsoLinkIssuerGateway implements IssuerGateway, AutoCloseable {
+
+    private final IsoLinkPool link;
+    private final IsoMessageTransformer transformer;
+
+    public IsoLinkIssuerGateway(IsoLinkPool link, IsoMessageTransformer transformer) {
+        this.link = link;
+        this.transformer = transformer;
+    }
+
+    @Override
+    public String name() {
+        return link.name();
+    }
+
+    public IsoLinkPool link() {
+        return link;
+    }
+
+    @Override
+    public TransactionResponse authorize(ProcessingCode code, TransactionRequest request) {
+        try {
+            IsoMessageView answer = link.send(transformer.toIsoMessage(request)).join();
+            return transformer.toTransactionResponse(answer);
+        } catch (ISOException | CompletionException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.warn("Issuer {} did not answer - STAN: {}, {}", name(), request.stan(), cause.getMessage());
+            return TransactionResponse.error(responseMTI(request.messageType()), request.stan(),
+                    ResponseCode.ISSUER_UNAVAILABLE.getCode());
+        }
+    }
+
+    // 0420 with the original's MTI, STAN and transmission time in field 90, answered 0430
+    @Override
+    public void reverse(ProcessingCode code, TransactionRequest request) {
+        try {
+            ISOMsg reversal = transformer.toIsoMessage(request);
+            reversal.setMTI("0420");
+            reversal.set(90, request.messageType() + request.stan() + reversal.getString(7)
+                    + "%011d".formatted(parseOrZero(request.acquiringInstitutionCode())) + "0".repeat(11));
+            IsoMessageView answer = link.send(reversal).join();
+            log.info("Issuer {} reversal answered - STAN: {}, RRN: {}, Response Code: {}", name(), request.stan(),
+                    request.retrievalReferenceNumber(), answer.getString(39));
+        } catch (ISOException | CompletionException e) {
+            // Issuers settle unmatched approvals at cutoff; nothing is queued to repeat the 0420 here
+            log.error("Issuer {} reversal not delivered - STAN: {}, RRN: {}, {}", name(), request.stan(),
+                    request.retrievalReferenceNumber(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        link.close();
+    }
+
+    @Override
+    public String toString() {
+        return name() + ":iso";
+    }
+
+    private static long parseOrZero(String digits) {
+        return digits != null && !digits.isEmpty() && digits.chars().allMatch(Character::isDigit)
+                ? Long.parseLong(digits) : 0;
+    }
+
+    private static String responseMTI(String requestMTI) {
+        // 0201 and 0221 are repeats, answered like the original
+        return "0" + ((Integer.parseInt(requestMTI.substring(1)) & ~1) + 10);
+    }
+}
@@ -0,0 +1,346 @@
+package com.paymentswitch.payment_switch.issuer;
+
+import com.paymentswitch.payment_switch.framing.FrameBufferPool;
+import com.paymentswitch.payment_switch.framing.LengthHeaderFormat;
+import com.paymentswitch.payment_switch.framing.LengthPrefixedFrameSerializer;
+import com.paymentswitch.payment_switch.iso.IsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.router.HashedTimerWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Persistent connections to one issuer host, shared by every transaction routed there.
+ * <p>
+ * Each of {@code connections} slots keeps a socket open and reconnects with exponential backoff (with jitter,
+ * {@code backoffMin} doubling up to {@code backoffMax}) when it drops. Requests take the connected slots in turn
+ * and are framed with the 2-byte length header terminals use. Any number may be outstanding on a connection:
+ * its reader thread matches answers to requests by STAN (11) and RRN (37), so the host may answer out of order.
+ * A connection nothing has arrived on for {@code echoInterval} is probed with an 0800 echo (70 = 301) and
+ * dropped if the echo goes unanswered. Requests fail when they are not answered within {@code responseTimeout}
+ * or when their connection drops.
+ */
+@Slf4j
+public final class IsoLinkPool implements AutoCloseable {
+
+    private static final int MAX_FRAME_SIZE = 2048;
+    private static final String ECHO = "301";
+
+    private final String name;
+    private final InetSocketAddress address;
+    private final IsoCodec codec;
+    private final Duration responseTimeout;
+    private final Duration echoInterval;
+    private final Duration backoffMin;
+    private final Duration backoffMax;
+    private final LengthPrefixedFrameSerializer framing;
+    private final AtomicReferenceArray<Connection> slots;
+    private final Thread[] maintainers;
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+    private final HashedTimerWheel timeouts;
+    private final ScheduledExecutorService echoScheduler;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger echoStan = new AtomicInteger();
+    private final LongAdder reconnects = new LongAdder();
+    private volatile boolean closed;
+
+    public IsoLinkPool(String name, InetSocketAddress address, int connections, IsoCodec codec,
+                       Duration responseTimeout, Duration echoInterval, Duration backoffMin, Duration backoffMax) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("Issuer link " + name + " needs at least one connection");
+        }
+        this.name = name;
+        this.address = address;
+        this.codec = codec;
+        this.responseTimeout = responseTimeout;
+        this.echoInterval = echoInterval;
+        this.backoffMin = backoffMin;
+        this.backoffMax = backoffMax;
+        LengthHeaderFormat header = LengthHeaderFormat.BINARY_2;
+        this.framing = new LengthPrefixedFrameSerializer(header, MAX_FRAME_SIZE,
+                new FrameBufferPool(connections * 2, header.headerLength() + MAX_FRAME_SIZE, false));
+        this.slots = new AtomicReferenceArray<>(connections);
+        this.timeouts = new HashedTimerWheel(Duration.ofMillis(10), 1024, "iso-link-" + name + "-timeouts");
+        this.echoScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("iso-link-" + name + "-echo").daemon().factory());
+        if (!echoInterval.isZero()) {
+            echoScheduler.scheduleWithFixedDelay(this::echoIdle, echoInterval.toMillis(), echoInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+        this.maintainers = new Thread[connections];
+        for (int slot = 0; slot < connections; slot++) {
+            int index = slot;
+            maintainers[slot] = Thread.ofVirtual().name("iso-link-" + name + "-" + slot).start(() -> maintain(index));
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    // The host's answer to a request with fields 11 and 37 set; fails when there is no connection, on timeout,
+    // or when the connection drops before the answer
+    public CompletableFuture<IsoMessageView> send(ISOMsg request) {
+        Connection connection = nextConnection();
+        if (connection == null) {
+            return CompletableFuture.failedFuture(new ConnectException("Issuer link " + name + " has no connection to "
+                    + address));
+        }
+        return send(request, connection);
+    }
+
+    // Connections currently up
+    public int connected() {
+        int connected = 0;
+        for (int slot = 0; slot < slots.length(); slot++) {
+            if (slots.get(slot) != null) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
+    // Requests sent and not yet answered, echoes included
+    public int pending() {
+        return pending.size();
+    }
+
+    public long reconnects() {
+        return reconnects.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        echoScheduler.shutdownNow();
+        for (int slot = 0; slot < slots.length(); slot++) {
+            Connection connection = slots.getAndSet(slot, null);
+            if (connection != null) {
+                connection.close();
+            }
+            maintainers[slot].interrupt();
+        }
+        pending.values().forEach(p -> p.answer.completeExceptionally(new IOException("Issuer link " + name + " closed")));
+        pending.clear();
+        timeouts.close();
+    }
+
+    private CompletableFuture<IsoMessageView> send(ISOMsg request, Connection connection) {
+        CompletableFuture<IsoMessageView> answer = new CompletableFuture<>();
+        String key = key(request.getString(11), request.getString(37));
+        byte[] bytes;
+        try {
+            bytes = codec.pack(request);
+        } catch (ISOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Pending outstanding = new Pending(answer, connection);
+        if (pending.putIfAbsent(key, outstanding) != null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Issuer link " + name
+                    + " already has a request outstanding with STAN/RRN " + key));
+        }
+        HashedTimerWheel.Timeout timeout = timeouts.schedule(responseTimeout, () -> {
+            if (pending.remove(key, outstanding)) {
+                answer.completeExceptionally(new TimeoutException("Issuer link " + name + " did not answer within "
+                        + responseTimeout));
+            }
+        });
+        answer.whenComplete((message, failure) -> timeout.cancel());
+        try {
+            connection.write(bytes);
+        } catch (IOException e) {
+            pending.remove(key, outstanding);
+            answer.completeExceptionally(e);
+            connection.close();
+        }
+        return answer;
+    }
+
+    private Connection nextConnection() {
+        int size = slots.length();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Connection connection = slots.get((start + i) % size);
+            if (connection != null) {
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    // One slot: connect, read until the connection drops, back off, again
+    private void maintain(int slot) {
+        long backoffMillis = backoffMin.toMillis();
+        while (!closed) {
+            Connection connection = null;
+            try {
+                connection = connect();
+                backoffMillis = backoffMin.toMillis();
+                slots.set(slot, connection);
+                log.info("Issuer link {} connection {} up - {}", name, slot, address);
+                read(connection);
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Issuer link {} connection {} down - {}", name, slot, e.getMessage());
+                }
+            } finally {
+                if (connection != null) {
+                    slots.compareAndSet(slot, connection, null);
+                    connection.close();
+                    failPending(connection);
+                }
+            }
+            try {
+                // Jitter keeps the slots of every switch instance from reconnecting in step
+                Thread.sleep(backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1));
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoffMillis = Math.min(backoffMillis * 2, backoffMax.toMillis());
+            reconnects.increment();
+        }
+    }
+
+    private Connection connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            // Resolved on every connect, so a host that moves is found again
+            socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()),
+                    (int) responseTimeout.toMillis());
+            return new Connection(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        while (!closed) {
+            byte[] frame = framing.deserialize(connection.in);
+            connection.lastReadNanos = System.nanoTime();
+            IsoMessageView message;
+            try {
+                message = codec.read(frame);
+            } catch (ISOException e) {
+                log.warn("Issuer link {} sent an unreadable message - {}", name, e.getMessage());
+                continue;
+            }
+            if ("0800".equals(message.getMTI())) {
+                answerEcho(connection, message);
+                continue;
+            }
+            Pending answered = pending.remove(key(message.getString(11), message.getString(37)));
+            if (answered == null) {
+                log.warn("Issuer link {} answer matches no request - MTI: {}, STAN: {}", name, message.getMTI(),
+                        message.getString(11));
+                continue;
+            }
+            answered.answer.complete(message);
+        }
+    }
+
+    // The host checking on us
+    private void answerEcho(Connection connection, IsoMessageView echo) throws IOException {
+        try {
+            ISOMsg reply = (ISOMsg) echo.toISOMsg().clone();
+            reply.setResponseMTI();
+            reply.set(39, "00");
+            connection.write(codec.pack(reply));
+        } catch (ISOException e) {
+            log.warn("Issuer link {} echo not answered - {}", name, e.getMessage());
+        }
+    }
+
+    private void echoIdle() {
+        long idleNanos = echoInterval.toNanos();
+        for (int slot = 0; slot < slots.length(); slot++) {
+            Connection connection = slots.get(slot);
+            if (connection == null || System.nanoTime() - connection.lastReadNanos < idleNanos) {
+                continue;
+            }
+            ISOMsg echo = new ISOMsg("0800");
+            echo.set(11, String.format("%06d", echoStan.incrementAndGet() % 1_000_000));
+            echo.set(70, ECHO);
+            int index = slot;
+            send(echo, connection).whenComplete((answer, failure) -> {
+                if (failure != null) {
+                    log.warn("Issuer link {} connection {} failed its echo, reconnecting - {}", name, index,
+                            failure.getMessage());
+                    connection.close();
+                }
+            });
+        }
+    }
+
+    private void failPending(Connection connection) {
+        pending.forEach((key, outstanding) -> {
+            if (outstanding.connection == connection && pending.remove(key, outstanding)) {
+                outstanding.answer.completeExceptionally(new IOException("Issuer link " + name
+                        + " connection dropped before the answer"));
+            }
+        });
+    }
+
+    private static String key(String stan, String rrn) {
+        return stan + '|' + (rrn != null ? rrn : "");
+    }
+
+    private record Pending(CompletableFuture<IsoMessageView> answer, Connection connection) {
+    }
+
+    private final class Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        // Not synchronized: senders are virtual threads, a monitor would pin them while the socket blocks
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private volatile long lastReadNanos = System.nanoTime();
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            // The framing reads headers a byte at a time
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = socket.getOutputStream();
+        }
+
+        void write(byte[] bytes) throws IOException {
+            writeLock.lock();
+            try {
+                framing.serialize(bytes, out);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Issuer link {} close failed - {}", name, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.paymentswitch.payment_switch.issuer;
+
+import com.paymentswitch.payment_switch.iso.IsoCodec;
+import com.paymentswitch.payment_switch.service.BankSimlatorService;
+import com.paymentswitch.payment_switch.transformer.IsoMessageTransformer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The issuers BIN routes can name, from {@code switch.issuers}: {@code name:simulator} is the bank simulator,
+ * {@code name:simulator:150ms} the simulator answering after a fixed delay, {@code name:iso:host:port:4} a remote
+ * host over four persistent connections ({@link IsoLinkPool}, settings in {@code switch.issuer.link}). Each
+ * issuer gets its own bulkhead and circuit breaker ({@link GuardedIssuerGateway}, {@code switch.issuer.guard}).
+ * Issuers are fixed for the life of the switch; the routing table naming them is what gets reloaded.
+ */
+@Component
+public class IssuerDirectory {
+
+    private final Map<String, IssuerGateway> issuers = new LinkedHashMap<>();
+
+    // Simulator issuers only
+    public IssuerDirectory(String[] specs, BankSimlatorService bankSimlatorService) {
+        this(specs, bankSimlatorService, null, null, Duration.ofSeconds(10), Duration.ofSeconds(30),
+                Duration.ofMillis(100), Duration.ofSeconds(30), GuardedIssuerGateway.Settings.DISABLED);
+    }
+
+    @Autowired
+    public IssuerDirectory(@Value("${switch.issuers:simulator:simulator}") String[] specs,
+                           BankSimlatorService bankSimlatorService,
+                           IsoCodec codec,
+                           IsoMessageTransformer transformer,
+                           @Value("${switch.issuer.link.response-timeout:10s}") Duration responseTimeout,
+                           @Value("${switch.issuer.link.echo-interval:30s}") Duration echoInterval,
+                           @Value("${switch.issuer.link.backoff.min:100ms}") Duration backoffMin,
+                           @Value("${switch.issuer.link.backoff.max:30s}") Duration backoffMax,
+                           GuardedIssuerGateway.Settings guard) {
+        for (String spec : specs) {
+            if (spec.isBlank()) {
+                continue;
+            }
+            String[] parts = spec.strip().split(":");
+            IssuerGateway issuer = switch (parts.length > 1 ? parts[1].strip() : "") {
+                case "simulator" -> new SimulatorIssuerGateway(parts[0].strip(), bankSimlatorService,
+                        parts.length > 2 ? DurationStyle.detectAndParse(parts[2].strip()) : Duration.ZERO);
+                case "iso" -> {
+                    if (parts.length < 4 || codec == null) {
+                        throw new IllegalArgumentException("Expected name:iso:host:port[:connections] in switch.issuers: "
+                                + spec);
+                    }
+                    int connections = parts.length > 4 ? Integer.parseInt(parts[4].strip()) : 4;
+                    yield new IsoLinkIssuerGateway(new IsoLinkPool(parts[0].strip(),
+                            InetSocketAddress.createUnresolved(parts[2].strip(), Integer.parseInt(parts[3].strip())),
+                            connections, codec, responseTimeout, echoInterval, backoffMin, backoffMax), transformer);
+                }
+                default -> throw new IllegalArgumentException(
+                        "Expected name:simulator[:delay] or name:iso:host:port[:connections] in switch.issuers: " + spec);
+            };
+            if (guard.enabled()) {
+                issuer = new GuardedIssuerGateway(issuer, guard);
+            }
+            if (issuers.putIfAbsent(issuer.name(), issuer) != null) {
+                throw new IllegalArgumentException("Issuer configured twice in switch.issuers: " + issuer.name());
+            }
+        }
+    }
+
+    // null when there is no such issuer
+    public IssuerGateway get(String name) {
+        return issuers.get(name);
+    }
+
+    public Collection<IssuerGateway> all() {
+        return Collections.unmodifiableCollection(issuers.values());
+    }
+
+    @PreDestroy
+    public void close() throws Exception {
+        for (IssuerGateway issuer : issuers.values()) {
+            if (issuer instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
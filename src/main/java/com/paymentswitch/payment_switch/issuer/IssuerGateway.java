@@ -0,0 +1,17 @@
+package com.paymentswitch.payment_switch.issuer;
+
+import com.paymentswitch.payment_switch.model.ProcessingCode;
+import com.paymentswitch.payment_switch.model.TransactionRequest;
+import com.paymentswitch.payment_switch.model.TransactionResponse;
+
+// An issuer destination of the BIN routing table, see IssuerDirectory for how they are configured
+public interface IssuerGateway {
+
+    String name();
+
+    // Called on an issuer thread under the router's deadline; may block
+    TransactionResponse authorize(ProcessingCode code, TransactionRequest request);
+
+    // Undoes an approval that came too late, the terminal was answered 91
+    void reverse(ProcessingCode code, TransactionRequest request);
+}
@@ -0,0 +1,76 @@
+package com.paymentswitch.payment_switch.issuer;
+
+import com.paymentswitch.payment_switch.model.ProcessingCode;
+import com.paymentswitch.payment_switch.model.TransactionRequest;
+import com.paymentswitch.payment_switch.model.TransactionResponse;
+import com.paymentswitch.payment_switch.service.BankSimlatorService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+// The in-process bank simulator as an issuer; the profile's delay stands in for a remote issuer's response time
+@Slf4j
+public final class SimulatorIssuerGateway implements IssuerGateway {
+
+    private final String name;
+    private final BankSimlatorService bankSimlatorService;
+    private final Duration delay;
+
+    public SimulatorIssuerGateway(String name, BankSimlatorService bankSimlatorService, Duration delay) {
+        this.name = name;
+        this.bankSimlatorService = bankSimlatorService;
+        this.delay = delay;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public TransactionResponse authorize(ProcessingCode pc, TransactionRequest request) {
+        if (!delay.isZero()) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return switch (pc){
+            case ProcessingCode.BalanceInquiry(var code) ->{
+                log.debug("Processing Balance Inquiry with code: {}", code);
+                yield bankSimlatorService.processBalanceInquiry(request);
+            }
+            case ProcessingCode.Withdrawal(var code,var amount,var exponent) ->{
+                log.debug("Processing withdrawal - code: {}, Amount: {}", code,amount);
+                yield  bankSimlatorService.processWithdrawal(request);
+            }
+            case ProcessingCode.Purchase(var code, var amount, var exponent) ->{
+                log.debug("Processing Purchase - code: {}, Amont {}", code ,amount);
+                yield bankSimlatorService.processPurchase(request);
+            }
+            case ProcessingCode.Transfer(var code, var from, var to) -> {
+                log.debug("Processing transfer - code: {}", code );
+                yield bankSimlatorService.processTransfer(request);
+            }
+            case ProcessingCode.MiniStatement(var code) ->{
+                log.debug("procesing for mini statement - code: {}", code);
+                yield  bankSimlatorService.processMiniStatement(request);
+            }
+            case ProcessingCode.Unknown(var code) ->{
+                log.debug("Unknown Processing Code: {}", code);
+                yield bankSimlatorService.processTransaction(request,"UNKNOWN");
+            }
+        };
+    }
+
+    @Override
+    public void reverse(ProcessingCode pc, TransactionRequest request) {
+        bankSimlatorService.reverse(pc, request);
+    }
+
+    @Override
+    public String toString() {
+        return name + ":simulator:" + delay.toMillis() + "ms";
+    }
+}
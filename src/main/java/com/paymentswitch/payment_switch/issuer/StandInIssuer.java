@@ -0,0 +1,193 @@
+package com.paymentswitch.payment_switch.issuer;
+
+import com.paymentswitch.payment_switch.framing.FrameBufferPool;
+import com.paymentswitch.payment_switch.framing.LengthHeaderFormat;
+import com.paymentswitch.payment_switch.framing.LengthPrefixedFrameSerializer;
+import com.paymentswitch.payment_switch.iso.CompiledIsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.iso.PackagerDefinition;
+import com.paymentswitch.payment_switch.ledger.AccountLedger;
+import com.paymentswitch.payment_switch.model.ProcessingCode;
+import com.paymentswitch.payment_switch.model.TransactionRequest;
+import com.paymentswitch.payment_switch.model.TransactionResponse;
+import com.paymentswitch.payment_switch.service.BankSimlatorService;
+import com.paymentswitch.payment_switch.service.IdentifierService;
+import com.paymentswitch.payment_switch.time.CoarseClock;
+import com.paymentswitch.payment_switch.transformer.DateTimeCodec;
+import com.paymentswitch.payment_switch.transformer.IsoMessageTransformer;
+import com.paymentswitch.payment_switch.velocity.DailyLimits;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.packager.GenericPackager;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An issuer host on a local port for issuer links to talk to, answering from an IssuerGateway (normally the bank
+ * simulator): 0100/0200 authorizations, 0420 reversals and 0800 echoes. Every request runs on its own virtual
+ * thread and is answered when done, so answers on a connection come back out of order like a real host's.
+ * Runs in tests, or as a process of its own next to the switch:
+ * {@code java -cp <switch classpath> com.paymentswitch.payment_switch.issuer.StandInIssuer 9583}.
+ */
+@Slf4j
+public final class StandInIssuer implements AutoCloseable {
+
+    private static final int MAX_FRAME_SIZE = 2048;
+
+    private final IsoCodec codec;
+    private final IsoMessageTransformer transformer;
+    private final IssuerGateway issuer;
+    private final ServerSocket serverSocket;
+    private final LengthPrefixedFrameSerializer framing;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    public StandInIssuer(int port, IsoCodec codec, IsoMessageTransformer transformer, IssuerGateway issuer)
+            throws IOException {
+        this.codec = codec;
+        this.transformer = transformer;
+        this.issuer = issuer;
+        LengthHeaderFormat header = LengthHeaderFormat.BINARY_2;
+        this.framing = new LengthPrefixedFrameSerializer(header, MAX_FRAME_SIZE,
+                new FrameBufferPool(64, header.headerLength() + MAX_FRAME_SIZE, false));
+        this.serverSocket = new ServerSocket(port);
+        Thread.ofVirtual().name("stand-in-issuer-accept").start(this::accept);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9583;
+        GenericPackager packager = new GenericPackager();
+        PackagerDefinition definition;
+        try (InputStream xml = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            packager.readFile(xml);
+        }
+        try (InputStream xml = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            definition = PackagerDefinition.load(xml);
+        }
+        CoarseClock clock = new CoarseClock(Duration.ofMillis(100));
+        IdentifierService identifiers = new IdentifierService(99, clock);
+        BankSimlatorService bank = new BankSimlatorService(identifiers, new AccountLedger(1 << 20, 64, 2_500_000),
+                new DailyLimits(50_000, 200_000, "00:00", 1 << 20, 256, clock));
+        try (StandInIssuer standIn = new StandInIssuer(port, new CompiledIsoCodec(definition, packager),
+                new IsoMessageTransformer(packager, new DateTimeCodec(clock), identifiers),
+                new SimulatorIssuerGateway("stand-in", bank, Duration.ZERO))) {
+            log.info("Stand-in issuer listening on port {}", standIn.port());
+            Thread.currentThread().join();
+        }
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Accepted and not yet closed
+    public int connections() {
+        return connections.size();
+    }
+
+    // Drops every connection, as a host restart would; the listener stays up
+    public void dropConnections() {
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(serverSocket);
+        dropConnections();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread.ofVirtual().name("stand-in-issuer-connection").start(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Stand-in issuer accept failed - {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        ReentrantLock writeLock = new ReentrantLock();
+        try (socket) {
+            // The framing reads headers a byte at a time
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            while (true) {
+                byte[] frame = framing.deserialize(in);
+                Thread.ofVirtual().start(() -> answer(frame, out, writeLock));
+            }
+        } catch (IOException e) {
+            log.debug("Stand-in issuer connection closed - {}", e.getMessage());
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private void answer(byte[] frame, OutputStream out, ReentrantLock writeLock) {
+        try {
+            byte[] reply = codec.pack(reply(codec.read(frame)));
+            writeLock.lock();
+            try {
+                framing.serialize(reply, out);
+            } finally {
+                writeLock.unlock();
+            }
+        } catch (ISOException | IOException | RuntimeException e) {
+            log.warn("Stand-in issuer could not answer - {}", e.getMessage());
+        }
+    }
+
+    private ISOMsg reply(IsoMessageView message) throws ISOException {
+        switch (message.getMTI()) {
+            case "0800" -> {
+                ISOMsg echo = (ISOMsg) message.toISOMsg().clone();
+                echo.setResponseMTI();
+                echo.set(39, "00");
+                return echo;
+            }
+            case "0420" -> {
+                TransactionRequest request = transformer.toTransactionRequest(message);
+                issuer.reverse(processingCode(request), request);
+                ISOMsg answer = (ISOMsg) message.toISOMsg().clone();
+                answer.setResponseMTI();
+                answer.set(39, "00");
+                return answer;
+            }
+            default -> {
+                TransactionRequest request = transformer.toTransactionRequest(message);
+                TransactionResponse response = issuer.authorize(processingCode(request), request);
+                return transformer.toIsoMessage(response);
+            }
+        }
+    }
+
+    private static ProcessingCode processingCode(TransactionRequest request) {
+        return ProcessingCode.parse(request.processingCode(), request.transactionAmount(), request.currencyExponent());
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            log.debug("Stand-in issuer close failed - {}", e.getMessage());
+        }
+    }
+}
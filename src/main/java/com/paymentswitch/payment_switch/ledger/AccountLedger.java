@@ -0,0 +1,297 @@
+package com.paymentswitch.payment_switch.ledger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Account balances keyed by PAN and account type, in minor units.
+ * <p>
+ * Balances live in one preallocated {@code long[]} split into segments, each guarded by its own
+ * {@link StampedLock}: reads are optimistic and never block, postings lock only the segment of the account (two
+ * segments, in index order, for a transfer between them). Segments are contiguous in the array so accounts of
+ * different segments don't share cache lines. The PAN to slot index is one map per account type, so a lookup
+ * uses the request's PAN String as is.
+ * <p>
+ * Accounts come from the seed file or a snapshot (see {@link LedgerPersistence}); cards that aren't there are
+ * opened on first use with {@code switch.ledger.auto-open-balance}, or refused when it is negative.
+ */
+@Component
+public class AccountLedger {
+
+    // Posting results below zero, balances are never negative
+    public static final long INSUFFICIENT_FUNDS = -1;
+    public static final long NO_ACCOUNT = -2;
+
+    // Offsets of the from and to account types in the processing code
+    public static final int FROM_ACCOUNT = 2;
+    public static final int TO_ACCOUNT = 4;
+
+    // ISO 8583 account types: default, savings, checking, credit
+    private static final String[] ACCOUNT_TYPES = {"00", "10", "20", "30"};
+
+    private final int capacity;
+    private final int segmentBits;
+    private final int segmentMask;
+    private final int perSegment;
+    private final long autoOpenBalance;
+    private final long[] balances;
+    private final StampedLock[] locks;
+    private final String[] pans;
+    private final byte[] types;
+    private final AtomicInteger opened = new AtomicInteger();
+    @SuppressWarnings("unchecked")
+    private final ConcurrentHashMap<String, Integer>[] slots = new ConcurrentHashMap[ACCOUNT_TYPES.length];
+
+    @Autowired
+    public AccountLedger(@Value("${switch.ledger.capacity:1048576}") int capacity,
+                         @Value("${switch.ledger.segments:64}") int segments,
+                         @Value("${switch.ledger.auto-open-balance:2500000}") long autoOpenBalance) {
+        if (Integer.bitCount(segments) != 1 || capacity % segments != 0) {
+            throw new IllegalArgumentException("switch.ledger.segments must be a power of two dividing the capacity");
+        }
+        this.capacity = capacity;
+        this.segmentBits = Integer.numberOfTrailingZeros(segments);
+        this.segmentMask = segments - 1;
+        this.perSegment = capacity / segments;
+        this.autoOpenBalance = autoOpenBalance;
+        this.balances = new long[capacity];
+        this.pans = new String[capacity];
+        this.types = new byte[capacity];
+        this.locks = new StampedLock[segments];
+        for (int i = 0; i < segments; i++) {
+            locks[i] = new StampedLock();
+        }
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    // Balance, or NO_ACCOUNT
+    public long balance(String pan, int accountType) {
+        int slot = slot(pan, accountType);
+        if (slot < 0) {
+            return NO_ACCOUNT;
+        }
+        StampedLock lock = locks[slot & segmentMask];
+        int index = index(slot);
+        long stamp = lock.tryOptimisticRead();
+        long balance = balances[index];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                balance = balances[index];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return balance;
+    }
+
+    // New balance, INSUFFICIENT_FUNDS or NO_ACCOUNT
+    public long debit(String pan, int accountType, long amount) {
+        int slot = slot(pan, accountType);
+        if (slot < 0) {
+            return NO_ACCOUNT;
+        }
+        StampedLock lock = locks[slot & segmentMask];
+        int index = index(slot);
+        long stamp = lock.writeLock();
+        try {
+            long balance = balances[index];
+            if (balance < amount) {
+                return INSUFFICIENT_FUNDS;
+            }
+            balances[index] = balance - amount;
+            return balance - amount;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // New balance or NO_ACCOUNT
+    public long credit(String pan, int accountType, long amount) {
+        int slot = slot(pan, accountType);
+        if (slot < 0) {
+            return NO_ACCOUNT;
+        }
+        StampedLock lock = locks[slot & segmentMask];
+        int index = index(slot);
+        long stamp = lock.writeLock();
+        try {
+            balances[index] += amount;
+            return balances[index];
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Moves amount between two accounts of the card atomically; new from balance, INSUFFICIENT_FUNDS or NO_ACCOUNT
+    public long transfer(String pan, int fromType, int toType, long amount) {
+        int from = slot(pan, fromType);
+        int to = slot(pan, toType);
+        if (from < 0 || to < 0) {
+            return NO_ACCOUNT;
+        }
+        int fromSegment = from & segmentMask;
+        int toSegment = to & segmentMask;
+        StampedLock first = locks[Math.min(fromSegment, toSegment)];
+        StampedLock second = locks[Math.max(fromSegment, toSegment)];
+        long firstStamp = first.writeLock();
+        long secondStamp = first == second ? 0 : second.writeLock();
+        try {
+            long balance = balances[index(from)];
+            if (balance < amount) {
+                return INSUFFICIENT_FUNDS;
+            }
+            balances[index(from)] = balance - amount;
+            balances[index(to)] += amount;
+            return balances[index(from)];
+        } finally {
+            if (first != second) {
+                second.unlockWrite(secondStamp);
+            }
+            first.unlockWrite(firstStamp);
+        }
+    }
+
+    // Opens the account, or sets its balance when it exists
+    public void put(String pan, String accountType, long balance) {
+        int type = accountType(accountType, 0);
+        if (type < 0) {
+            throw new IllegalArgumentException("Unknown account type " + accountType);
+        }
+        int slot = slots[type].computeIfAbsent(pan, p -> open(p, type, balance));
+        StampedLock lock = locks[slot & segmentMask];
+        long stamp = lock.writeLock();
+        try {
+            balances[index(slot)] = balance;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        return Math.min(opened.get(), capacity);
+    }
+
+    // Lines of pan,account_type,balance; blank lines and # comments are skipped. Returns the accounts read.
+    public int load(BufferedReader reader) throws IOException {
+        int count = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.split(",");
+            if (columns.length != 3) {
+                throw new IOException("Expected pan,account_type,balance: " + line);
+            }
+            put(columns[0].strip(), columns[1].strip(), Long.parseLong(columns[2].strip()));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Writes every account in the {@link #load} format. Each segment (balances, and the PANs and types of accounts
+     * opened in it) is copied under an optimistic read, retried under the read lock only if a posting or an
+     * opening got in the way, and written out afterwards, so postings never wait for the disk. A transfer that
+     * lands between two segment copies can appear half applied.
+     */
+    public int writeSnapshot(Writer writer) throws IOException {
+        int count = 0;
+        long[] copy = new long[perSegment];
+        String[] panCopy = new String[perSegment];
+        byte[] typeCopy = new byte[perSegment];
+        for (int segment = 0; segment <= segmentMask; segment++) {
+            StampedLock lock = locks[segment];
+            long stamp = lock.tryOptimisticRead();
+            copySegment(segment, copy, panCopy, typeCopy);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    copySegment(segment, copy, panCopy, typeCopy);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            for (int i = 0; i < perSegment; i++) {
+                if (panCopy[i] != null) {
+                    writer.write(panCopy[i] + ',' + ACCOUNT_TYPES[typeCopy[i]] + ',' + copy[i] + '\n');
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void copySegment(int segment, long[] copy, String[] panCopy, byte[] typeCopy) {
+        System.arraycopy(balances, segment * perSegment, copy, 0, perSegment);
+        for (int i = 0; i < perSegment; i++) {
+            int slot = i << segmentBits | segment;
+            panCopy[i] = pans[slot];
+            typeCopy[i] = types[slot];
+        }
+    }
+
+    // Slot of the account, opening it if auto-open is on; -1 when there is none
+    private int slot(String pan, int type) {
+        if (pan == null || type < 0 || type >= slots.length) {
+            return -1;
+        }
+        Integer slot = slots[type].get(pan);
+        if (slot == null) {
+            if (autoOpenBalance < 0) {
+                return -1;
+            }
+            slot = slots[type].computeIfAbsent(pan, p -> open(p, type, autoOpenBalance));
+        }
+        return slot;
+    }
+
+    private int open(String pan, int type, long balance) {
+        int slot = opened.getAndIncrement();
+        if (slot >= capacity) {
+            opened.decrementAndGet();
+            throw new IllegalStateException("Ledger full: switch.ledger.capacity is " + capacity);
+        }
+        // Still inside computeIfAbsent, so no other thread can post to the slot yet; the lock publishes it to
+        // writeSnapshot, which finds slots through the arrays and not the map
+        StampedLock lock = locks[slot & segmentMask];
+        long stamp = lock.writeLock();
+        try {
+            balances[index(slot)] = balance;
+            types[slot] = (byte) type;
+            pans[slot] = pan;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return slot;
+    }
+
+    // Segments are contiguous: slot s is entry s >> segmentBits of segment s & segmentMask
+    private int index(int slot) {
+        return (slot & segmentMask) * perSegment + (slot >>> segmentBits);
+    }
+
+    // Account type at offset (FROM_ACCOUNT, TO_ACCOUNT) of a processing code, default when absent, -1 if unknown
+    public static int accountType(String code, int offset) {
+        if (code == null || code.length() < offset + 2) {
+            return 0;
+        }
+        char tens = code.charAt(offset);
+        if (code.charAt(offset + 1) != '0' || tens < '0' || tens >= '0' + ACCOUNT_TYPES.length) {
+            return -1;
+        }
+        return tens - '0';
+    }
+}
@@ -0,0 +1,124 @@
+package com.paymentswitch.payment_switch.ledger;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Loads the ledger before the listeners start (the last snapshot if there is one, the seed file otherwise),
+// snapshots it every switch.ledger.snapshot.interval on its own thread, and once more after they stop.
+// Snapshots are written to a temporary file and moved over the previous one, so a crash never leaves half a file.
+@Slf4j
+@Component
+public class LedgerPersistence implements SmartLifecycle {
+
+    private final AccountLedger ledger;
+    private final Resource seed;
+    private final Path snapshotFile;
+    private final Duration interval;
+    private volatile ScheduledExecutorService scheduler;
+
+    public LedgerPersistence(
+            AccountLedger ledger,
+            @Value("${switch.ledger.seed:classpath:ledger/seed.csv}") Resource seed,
+            @Value("${switch.ledger.snapshot.file:data/ledger-snapshot.csv}") Path snapshotFile,
+            @Value("${switch.ledger.snapshot.interval:30s}") Duration interval) {
+        this.ledger = ledger;
+        this.seed = seed;
+        this.snapshotFile = snapshotFile;
+        this.interval = interval;
+    }
+
+    @Override
+    public void start() {
+        try {
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load the ledger", e);
+        }
+        ScheduledExecutorService started = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("ledger-snapshot").daemon().factory());
+        if (!interval.isZero()) {
+            started.scheduleWithFixedDelay(this::snapshotQuietly, interval.toMillis(), interval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+        scheduler = started;
+    }
+
+    @Override
+    public void stop() {
+        ScheduledExecutorService started = scheduler;
+        scheduler = null;
+        if (started != null) {
+            started.shutdownNow();
+            snapshotQuietly();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    // Before the TCP listeners start, after they stop
+    @Override
+    public int getPhase() {
+        return Integer.MIN_VALUE;
+    }
+
+    public void snapshot() throws IOException {
+        long start = System.nanoTime();
+        Path directory = snapshotFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+        try {
+            int accounts;
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.US_ASCII)) {
+                writer.write("# pan,account_type,balance (minor units)\n");
+                accounts = ledger.writeSnapshot(writer);
+            }
+            Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Ledger snapshot of {} accounts in {} ms", accounts, (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void load() throws IOException {
+        if (Files.exists(snapshotFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.US_ASCII)) {
+                log.info("Ledger loaded {} accounts from snapshot {}", ledger.load(reader), snapshotFile);
+            }
+        } else if (seed.exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(seed.getInputStream(), StandardCharsets.US_ASCII))) {
+                log.info("Ledger loaded {} accounts from seed {}", ledger.load(reader), seed.getDescription());
+            }
+        } else {
+            log.info("No ledger snapshot or seed, accounts open on first use");
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.error("Ledger snapshot to {} failed", snapshotFile, e);
+        }
+    }
+}
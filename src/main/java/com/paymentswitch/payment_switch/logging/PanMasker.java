@@ -0,0 +1,69 @@
+package com.paymentswitch.payment_switch.logging;
+
+import java.nio.charset.StandardCharsets;
+
+// The one place PANs are masked for logs and diagnostics: first six and last four digits stay visible.
+public final class PanMasker {
+
+    private static final int VISIBLE_PREFIX = 6;
+    private static final int VISIBLE_SUFFIX = 4;
+
+    private PanMasker() {
+    }
+
+    public static String mask(String pan) {
+        if (pan == null || pan.length() < VISIBLE_PREFIX + VISIBLE_SUFFIX) {
+            return "****";
+        }
+        return pan.substring(0, VISIBLE_PREFIX) + "******" + pan.substring(pan.length() - VISIBLE_SUFFIX);
+    }
+
+    // Copy of a packed message with the middle digits of every occurrence of the PAN (field 2, but also
+    // track data) replaced by '*', for hex dumps. Assumes ASCII encoded fields, as with iso87ascii.
+    // Without a PAN (the message could not be read) every run of 13 or more digits is masked instead; numeric
+    // fields are packed back to back, so a PAN can sit inside a longer run.
+    public static byte[] maskIn(byte[] message, String pan) {
+        byte[] masked = message.clone();
+        if (pan == null || pan.length() < VISIBLE_PREFIX + VISIBLE_SUFFIX) {
+            maskDigitRuns(masked);
+            return masked;
+        }
+        byte[] digits = pan.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i <= masked.length - digits.length; i++) {
+            if (regionMatches(masked, i, digits)) {
+                for (int j = i + VISIBLE_PREFIX; j < i + digits.length - VISIBLE_SUFFIX; j++) {
+                    masked[j] = '*';
+                }
+                i += digits.length - 1;
+            }
+        }
+        return masked;
+    }
+
+    private static void maskDigitRuns(byte[] message) {
+        int runStart = -1;
+        for (int i = 0; i <= message.length; i++) {
+            boolean digit = i < message.length && message[i] >= '0' && message[i] <= '9';
+            if (digit && runStart < 0) {
+                runStart = i;
+            } else if (!digit && runStart >= 0) {
+                int length = i - runStart;
+                if (length >= 13) {
+                    for (int j = runStart + VISIBLE_PREFIX; j < i - VISIBLE_SUFFIX; j++) {
+                        message[j] = '*';
+                    }
+                }
+                runStart = -1;
+            }
+        }
+    }
+
+    private static boolean regionMatches(byte[] message, int offset, byte[] digits) {
+        for (int i = 0; i < digits.length; i++) {
+            if (message[offset + i] != digits[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
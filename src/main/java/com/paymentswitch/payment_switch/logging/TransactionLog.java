@@ -0,0 +1,68 @@
+package com.paymentswitch.payment_switch.logging;
+
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import org.jpos.iso.ISOUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One compact record per transaction, plus sampled hex traces of request and response.
+ * <p>
+ * Records go to the {@code com.paymentswitch.payment_switch.transaction} logger at INFO as key=value pairs with
+ * the PAN masked. Hex traces go to {@code com.paymentswitch.payment_switch.transaction.hex} for a
+ * {@code switch.logging.hex-sample-rate} fraction of transactions; the decision is taken before anything is
+ * converted, so unsampled transactions never build a hex string. The step-by-step lines of handler, validator,
+ * router and bank are at DEBUG.
+ */
+@Component
+public class TransactionLog {
+
+    private static final Logger RECORD = LoggerFactory.getLogger("com.paymentswitch.payment_switch.transaction");
+    private static final Logger HEX = LoggerFactory.getLogger("com.paymentswitch.payment_switch.transaction.hex");
+
+    private final double hexSampleRate;
+
+    public TransactionLog(@Value("${switch.logging.hex-sample-rate:0}") double hexSampleRate) {
+        this.hexSampleRate = hexSampleRate;
+    }
+
+    // Whether this transaction's request and response are hex traced
+    public boolean sampleHex() {
+        return hexSampleRate > 0 && HEX.isInfoEnabled()
+                && (hexSampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < hexSampleRate);
+    }
+
+    // request is null when nothing could be read from it
+    public void record(IsoMessageView request, String responseCode, int responseLength, long micros) {
+        if (!RECORD.isInfoEnabled()) {
+            return;
+        }
+        if (request == null) {
+            RECORD.info("rc={} len={} us={}", responseCode, responseLength, micros);
+            return;
+        }
+        RECORD.info("mti={} stan={} tid={} pc={} amt={} pan={} rc={} len={} us={}",
+                field(request, 0), field(request, 11), field(request, 41), field(request, 3), field(request, 4),
+                PanMasker.mask(field(request, 2)), responseCode, responseLength, micros);
+    }
+
+    public void hex(IsoMessageView request, byte[] requestBytes, byte[] responseBytes) {
+        String pan = request != null ? field(request, 2) : null;
+        HEX.info("stan={} request={} response={}",
+                request != null ? field(request, 11) : null,
+                ISOUtil.hexString(PanMasker.maskIn(requestBytes, pan)),
+                ISOUtil.hexString(PanMasker.maskIn(responseBytes, pan)));
+    }
+
+    private static String field(IsoMessageView request, int field) {
+        try {
+            return request.getString(field);
+        } catch (RuntimeException e) {
+            return null; // malformed field, the record still goes out
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.paymentswitch.payment_switch.metrics;
+
+// Steps a transaction passes through, in order; the tag value is what dashboards select on
+public enum Stage {
+    FRAME_READ("frame_read"),   // length header complete to body complete
+    UNPACK("unpack"),
+    VALIDATE("validate"),
+    TRANSFORM("transform"),
+    ROUTE("route"),             // processing code classification
+    VELOCITY("velocity"),       // per card and terminal frequency limits
+    ISSUER_CALL("issuer_call"),
+    PACK("pack"),
+    WRITE("write");             // response frame assembled and flushed
+
+    private final String tag;
+
+    Stage(String tag) {
+        this.tag = tag;
+    }
+
+    public String tag() {
+        return tag;
+    }
+}
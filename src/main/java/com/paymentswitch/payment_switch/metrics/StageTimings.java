@@ -0,0 +1,44 @@
+package com.paymentswitch.payment_switch.metrics;
+
+/**
+ * Stage durations of one transaction, collected as laps on {@link System#nanoTime()}.
+ * <p>
+ * The pipeline stages run one after the other on the same thread, so each {@link #lap} charges the time since
+ * the previous lap to the given stage. The durations are only turned into meters once the response code is
+ * known, see {@link SwitchMetrics#recordTransaction}. Not thread safe.
+ */
+public final class StageTimings {
+
+    private final long[] nanos = new long[Stage.values().length];
+    private final long start;
+    private long mark;
+    private int reached; // bit per stage ordinal
+
+    public StageTimings() {
+        start = mark = System.nanoTime();
+    }
+
+    public void lap(Stage stage) {
+        long now = System.nanoTime();
+        nanos[stage.ordinal()] += now - mark;
+        reached |= 1 << stage.ordinal();
+        mark = now;
+    }
+
+    // Starts the next lap now, without charging the time since the last one to any stage
+    public void restartLap() {
+        mark = System.nanoTime();
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - start;
+    }
+
+    boolean reached(Stage stage) {
+        return (reached & (1 << stage.ordinal())) != 0;
+    }
+
+    public long nanos(Stage stage) {
+        return nanos[stage.ordinal()];
+    }
+}
@@ -0,0 +1,150 @@
+package com.paymentswitch.payment_switch.metrics;
+
+import com.paymentswitch.payment_switch.model.Amounts;
+import com.paymentswitch.payment_switch.model.ProcessingCode;
+import com.paymentswitch.payment_switch.model.ResponseCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Stage latency and throughput meters, exported through actuator on the web port.
+ * <p>
+ * {@code switch.stage} is a timer per stage, tagged by MTI, processing code family and response code, with a
+ * percentile histogram so p99 can be aggregated across instances. {@code switch.transaction} times the whole
+ * handler and {@code switch.transactions} counts outcomes. Frame read and write happen in the serializer before
+ * the message is parsed, so they carry {@code none} for the transaction tags.
+ * <p>
+ * Meters are looked up once per tag combination and cached, so recording costs a map lookup and a few
+ * histogram increments. MTIs and response codes outside the known sets are tagged {@code other}, so whatever
+ * arrives on the wire cannot grow the cache or the number of series.
+ */
+@Component
+public class SwitchMetrics {
+
+    public static final String STAGE_TIMER = "switch.stage";
+    public static final String TRANSACTION_TIMER = "switch.transaction";
+    public static final String TRANSACTION_COUNTER = "switch.transactions";
+    public static final String NONE = "none";
+    public static final String OTHER = "other";
+
+    private static final Stage[] STAGES = Stage.values();
+    // Stages timed inside the handler, the ones a transaction outcome has timers for
+    private static final EnumSet<Stage> PIPELINE = EnumSet.range(Stage.UNPACK, Stage.PACK);
+    // Requests of the classes the switch handles or sheds by priority, repeats included
+    private static final Set<String> MTIS = Set.of(
+            "0100", "0101", "0120", "0121",
+            "0200", "0201", "0220", "0221",
+            "0400", "0401", "0420", "0421",
+            "0800", "0820");
+    private static final Set<String> RESPONSE_CODES = Arrays.stream(ResponseCode.values())
+            .map(ResponseCode::getCode)
+            .collect(Collectors.toUnmodifiableSet());
+
+    private final MeterRegistry registry;
+    private final Map<Outcome, Meters> meters = new ConcurrentHashMap<>();
+    private final Timer frameRead;
+    private final Timer frameWrite;
+
+    private record Outcome(String mti, String family, String responseCode) {
+    }
+
+    private record Meters(Timer[] stages, Timer transaction, Counter count) {
+    }
+
+    public SwitchMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Outcome framing = new Outcome(NONE, NONE, NONE);
+        this.frameRead = stageTimer(Stage.FRAME_READ, framing);
+        this.frameWrite = stageTimer(Stage.WRITE, framing);
+    }
+
+    public void recordFrameRead(long nanos) {
+        frameRead.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordFrameWrite(long nanos) {
+        frameWrite.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // mti and processingCode as received (may be null or malformed), responseCode as sent back
+    public void recordTransaction(StageTimings timings, String mti, String processingCode, String responseCode) {
+        long total = timings.elapsedNanos();
+        Meters outcome = meters.computeIfAbsent(
+                new Outcome(mtiTag(mti), family(processingCode), responseCodeTag(responseCode)),
+                this::register);
+        for (Stage stage : STAGES) {
+            if (timings.reached(stage) && PIPELINE.contains(stage)) {
+                outcome.stages()[stage.ordinal()].record(timings.nanos(stage), TimeUnit.NANOSECONDS);
+            }
+        }
+        outcome.transaction().record(total, TimeUnit.NANOSECONDS);
+        outcome.count().increment();
+    }
+
+    private Meters register(Outcome outcome) {
+        Timer[] stages = new Timer[STAGES.length];
+        for (Stage stage : PIPELINE) {
+            stages[stage.ordinal()] = stageTimer(stage, outcome);
+        }
+        Timer transaction = histogram(Timer.builder(TRANSACTION_TIMER)
+                .description("Time from frame received to response packed")
+                .tags(tags(outcome)));
+        Counter count = Counter.builder(TRANSACTION_COUNTER)
+                .description("Transactions handled")
+                .tags(tags(outcome))
+                .register(registry);
+        return new Meters(stages, transaction, count);
+    }
+
+    private Timer stageTimer(Stage stage, Outcome outcome) {
+        return histogram(Timer.builder(STAGE_TIMER)
+                .description("Time spent in one pipeline stage")
+                .tags(tags(outcome))
+                .tag("stage", stage.tag()));
+    }
+
+    private Timer histogram(Timer.Builder builder) {
+        return builder.publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(500))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    private static Tags tags(Outcome outcome) {
+        return Tags.of("mti", outcome.mti(), "family", outcome.family(), "response_code", outcome.responseCode());
+    }
+
+    private static String mtiTag(String mti) {
+        if (mti == null) {
+            return NONE;
+        }
+        return MTIS.contains(mti) ? mti : OTHER;
+    }
+
+    // Remote issuers may answer codes the switch has no name for
+    private static String responseCodeTag(String responseCode) {
+        if (responseCode == null) {
+            return NONE;
+        }
+        return RESPONSE_CODES.contains(responseCode) ? responseCode : OTHER;
+    }
+
+    static String family(String processingCode) {
+        if (processingCode == null) {
+            return NONE;
+        }
+        return ProcessingCode.parse(processingCode, 0, Amounts.DEFAULT_EXPONENT).family();
+    }
+}
@@ -0,0 +1,84 @@
+package com.paymentswitch.payment_switch.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Currency;
+
+/**
+ * Fixed-point transaction amounts.
+ * <p>
+ * Amounts are a {@code long} count of minor units, exactly as field 4 carries them, and the currency's ISO 4217
+ * exponent (field 49, numeric) says where the decimal point is. Limits are stated in major units and scaled once
+ * with {@link #minorUnits}, so checks are plain {@code long} comparisons.
+ */
+public final class Amounts {
+
+    // Exponent assumed when field 49 is absent or not an ISO 4217 currency, the old fixed /100 behaviour
+    public static final int DEFAULT_EXPONENT = 2;
+
+    // Field 49 absent
+    public static final int NO_CURRENCY = 0;
+
+    private static final long[] POW10 = new long[19];
+    private static final byte[] EXPONENTS = new byte[1000];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+        Arrays.fill(EXPONENTS, (byte) DEFAULT_EXPONENT);
+        for (Currency currency : Currency.getAvailableCurrencies()) {
+            int code = currency.getNumericCode();
+            int digits = currency.getDefaultFractionDigits();
+            // Funds and metals (XAU, XDR...) have no fraction digits defined and keep the default
+            if (code > 0 && code < EXPONENTS.length && digits >= 0) {
+                EXPONENTS[code] = (byte) digits;
+            }
+        }
+    }
+
+    private Amounts() {
+    }
+
+    // ISO 4217 exponent of a numeric currency code, the default for unknown codes
+    public static int exponent(int currencyCode) {
+        return currencyCode > 0 && currencyCode < EXPONENTS.length ? EXPONENTS[currencyCode] : DEFAULT_EXPONENT;
+    }
+
+    // A whole number of major units in minor units, for stating limits
+    public static long minorUnits(long majorUnits, int exponent) {
+        return Math.multiplyExact(majorUnits, POW10[exponent]);
+    }
+
+    // Major units with exponent decimals, e.g. 2500000 at exponent 2 is "25000.00"
+    public static String toDecimalString(long minorUnits, int exponent) {
+        if (exponent == 0) {
+            return Long.toString(minorUnits);
+        }
+        long scale = POW10[exponent];
+        StringBuilder decimal = new StringBuilder(24);
+        if (minorUnits < 0) {
+            decimal.append('-');
+        }
+        return decimal.append(Math.abs(minorUnits / scale)).append('.')
+                .append(format(Math.abs(minorUnits % scale), exponent)).toString();
+    }
+
+    // Zero padded decimal digits of a non-negative amount, as fixed width field 4 wants them
+    public static String format(long minorUnits, int width) {
+        byte[] digits = new byte[width];
+        long remaining = minorUnits;
+        if (remaining < 0) {
+            throw new IllegalArgumentException("Negative amount: " + minorUnits);
+        }
+        for (int i = width - 1; i >= 0; i--) {
+            digits[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        if (remaining != 0) {
+            throw new IllegalArgumentException("Amount " + minorUnits + " does not fit in " + width + " digits");
+        }
+        return new String(digits, StandardCharsets.ISO_8859_1);
+    }
+}
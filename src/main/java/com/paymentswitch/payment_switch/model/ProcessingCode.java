@@ -1,8 +1,6 @@
 package com.paymentswitch.payment_switch.model;
 
-import java.math.BigDecimal;
-
-// Sealed interface for type-safe processing codes
+// Sealed interface for type-safe processing codes; amounts are minor units with their ISO 4217 exponent
 public sealed interface ProcessingCode
         permits ProcessingCode.BalanceInquiry,
         ProcessingCode.Withdrawal,
@@ -14,6 +12,18 @@ public sealed interface ProcessingCode
     String code();
     String description();
 
+    // Tag for metrics and per type configuration (velocity rules, issuer deadlines)
+    default String family() {
+        return switch (this) {
+            case BalanceInquiry b -> "balance_inquiry";
+            case Withdrawal w -> "withdrawal";
+            case Purchase p -> "purchase";
+            case Transfer t -> "transfer";
+            case MiniStatement m -> "mini_statement";
+            case Unknown u -> "unknown";
+        };
+    }
+
     record BalanceInquiry(String code) implements ProcessingCode {
         public BalanceInquiry {
             if (code == null || !code.startsWith("31")) {
@@ -27,7 +37,7 @@ public sealed interface ProcessingCode
         }
     }
 
-    record Withdrawal(String code, BigDecimal amount) implements ProcessingCode {
+    record Withdrawal(String code, long amount, int exponent) implements ProcessingCode {
         public Withdrawal {
             if (code == null || !code.startsWith("01")) {
                 throw new IllegalArgumentException("Invalid withdrawal code");
@@ -40,7 +50,7 @@ public sealed interface ProcessingCode
         }
     }
 
-    record Purchase(String code, BigDecimal amount) implements ProcessingCode {
+    record Purchase(String code, long amount, int exponent) implements ProcessingCode {
         public Purchase {
             if (code == null || !code.startsWith("00")) {
                 throw new IllegalArgumentException("Invalid purchase code");
@@ -87,7 +97,7 @@ public sealed interface ProcessingCode
     }
 
     // Factory method to parse processing code
-    static ProcessingCode parse(String code, BigDecimal amount) {
+    static ProcessingCode parse(String code, long amount, int exponent) {
         if (code == null || code.length() < 2) {
             return new Unknown(code);
         }
@@ -95,8 +105,8 @@ public sealed interface ProcessingCode
         String prefix = code.substring(0, 2);
         return switch (prefix) {
             case "31" -> new BalanceInquiry(code);
-            case "01" -> new Withdrawal(code, amount);
-            case "00" -> new Purchase(code, amount);
+            case "01" -> new Withdrawal(code, amount, exponent);
+            case "00" -> new Purchase(code, amount, exponent);
             case "40" -> new Transfer(code, null, null);
             case "38" -> new MiniStatement(code);
             default -> new Unknown(code);
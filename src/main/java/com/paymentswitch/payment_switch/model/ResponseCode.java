@@ -17,6 +17,7 @@ public enum ResponseCode {
     SECURITY_VIOLATION("63", "Security violation"),
     EXCEEDS_FREQUENCY_LIMIT("65", "Exceeds frequency limit"),
     FORMAT_ERROR("30", "Format error"),
+    ISSUER_UNAVAILABLE("91", "Issuer or switch inoperative"),
     SYSTEM_MALFUNCTION("96", "System malfunction");
 
     private final String code;
@@ -1,8 +1,8 @@
 package com.paymentswitch.payment_switch.model;
 
+import com.paymentswitch.payment_switch.logging.PanMasker;
 import lombok.Builder;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Builder
@@ -10,9 +10,11 @@ public record TransactionRequest(
         String messageType,
         String primaryAccountNumber,
         String processingCode,
-        BigDecimal transactionAmount,
+        long transactionAmount, // minor units of currencyCode
+        int currencyCode,       // ISO 4217 numeric from field 49, Amounts.NO_CURRENCY when absent
         LocalDateTime transmissionDateTime,
         String stan,
+        String retrievalReferenceNumber, // field 37, assigned by the switch when the acquirer sent none
         String acquiringInstitutionCode,
         String cardAcceptorTerminalId,
         String cardAcceptorNameLocation,
@@ -34,21 +36,22 @@ public record TransactionRequest(
             String messageType,
             String pan,
             String processingCode,
-            BigDecimal amount,
+            long amount,
             LocalDateTime dateTime,
             String stan) {
         return new TransactionRequest(
-                messageType, pan, processingCode, amount, dateTime, stan,
-                null, null, null, null
+                messageType, pan, processingCode, amount, Amounts.NO_CURRENCY, dateTime, stan,
+                null, null, null, null, null
         );
     }
 
+    // Decimal places of the amount
+    public int currencyExponent() {
+        return Amounts.exponent(currencyCode);
+    }
+
     // Helper method to get masked PAN
     public String maskedPAN() {
-        if (primaryAccountNumber == null || primaryAccountNumber.length() < 10) {
-            return "****";
-        }
-        return primaryAccountNumber.substring(0, 6) + "******"
-                + primaryAccountNumber.substring(primaryAccountNumber.length() - 4);
+        return PanMasker.mask(primaryAccountNumber);
     }
 }
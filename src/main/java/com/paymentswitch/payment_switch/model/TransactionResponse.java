@@ -5,7 +5,6 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 
@@ -14,12 +13,15 @@ public record TransactionResponse(
         String messageType,
         String primaryAccountNumber,
         String processingCode,
-        BigDecimal transactionAmount,
+        long transactionAmount, // minor units of currencyCode
+        int currencyCode,       // ISO 4217 numeric, Amounts.NO_CURRENCY when not echoed
         LocalDateTime transmissionDateTime,
         String stan,
+        String retrievalReferenceNumber,
         String responseCode,
         String authorizationCode,
         String acquiringInstitutionCode,
+        String cardAcceptorTerminalId,
         String additionalResponseData
 ) {
     // Compact constructor for validation
@@ -48,8 +50,8 @@ public record TransactionResponse(
             String stan,
             String responseCode) {
         return new TransactionResponse(
-                messageType, null, null, null, null, stan,
-                responseCode, null, null, null
+                messageType, null, null, 0, Amounts.NO_CURRENCY, null, stan,
+                null, responseCode, null, null, null, null
         );
     }
 }
\ No newline at end of file
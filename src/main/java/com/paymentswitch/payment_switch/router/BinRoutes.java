@@ -0,0 +1,148 @@
+package com.paymentswitch.payment_switch.router;
+
+import com.paymentswitch.payment_switch.issuer.IssuerDirectory;
+import com.paymentswitch.payment_switch.issuer.IssuerGateway;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// The BIN routing table, loaded from switch.routing.bins (low,high,issuer per line) and swapped for a new one
+// when the file changes, checked every switch.routing.reload-interval. Transactions read whichever table is
+// current, a reload never blocks them; a file that doesn't load keeps the previous table.
+@Slf4j
+@Component
+public class BinRoutes implements SmartLifecycle {
+
+    private final IssuerDirectory issuers;
+    private final Resource source;
+    private final IssuerGateway defaultIssuer;
+    private final Duration reloadInterval;
+    private volatile BinRoutingTable table;
+    private volatile long loadedModified;
+    private volatile ScheduledExecutorService scheduler;
+
+    public BinRoutes(IssuerDirectory issuers,
+                     @Value("${switch.routing.bins:classpath:routing/bins.csv}") Resource source,
+                     @Value("${switch.routing.default-issuer:}") String defaultIssuer,
+                     @Value("${switch.routing.reload-interval:10s}") Duration reloadInterval) {
+        this.issuers = issuers;
+        this.source = source;
+        this.defaultIssuer = defaultIssuer.isBlank() ? null : issuer(defaultIssuer.strip());
+        this.reloadInterval = reloadInterval;
+        try {
+            this.loadedModified = lastModified();
+            this.table = load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load BIN routes from " + source, e);
+        }
+    }
+
+    // The issuer for the PAN's range, or the default issuer; null when there is neither
+    public IssuerGateway issuerFor(String pan) {
+        IssuerGateway issuer = table.lookup(pan);
+        return issuer != null ? issuer : defaultIssuer;
+    }
+
+    public BinRoutingTable table() {
+        return table;
+    }
+
+    // Loads the file again and swaps it in; false when it doesn't load, the current table stays
+    public boolean reload() {
+        try {
+            long modified = lastModified();
+            BinRoutingTable loaded = load();
+            table = loaded;
+            loadedModified = modified;
+            log.info("BIN routes reloaded - {} ranges", loaded.ranges());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("BIN routes not reloaded, keeping the {} ranges loaded before - {}", table.ranges(),
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void start() {
+        ScheduledExecutorService started = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("bin-routes-reload").daemon().factory());
+        if (!reloadInterval.isZero()) {
+            started.scheduleWithFixedDelay(this::reloadIfModified, reloadInterval.toMillis(),
+                    reloadInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        scheduler = started;
+    }
+
+    @Override
+    public void stop() {
+        ScheduledExecutorService started = scheduler;
+        scheduler = null;
+        if (started != null) {
+            started.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    private void reloadIfModified() {
+        try {
+            if (lastModified() != loadedModified) {
+                reload();
+            }
+        } catch (IOException e) {
+            log.warn("Could not check BIN routes for changes - {}", e.getMessage());
+        }
+    }
+
+    // 0 for resources without a modification time (e.g. inside the jar), which then never reload by themselves
+    private long lastModified() throws IOException {
+        return source.isFile() ? source.lastModified() : 0;
+    }
+
+    private BinRoutingTable load() throws IOException {
+        List<BinRoutingTable.Range> ranges = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(source.getInputStream(), StandardCharsets.US_ASCII))) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length != 3) {
+                    throw new IllegalArgumentException("Expected low,high,issuer on line " + number + ": " + line);
+                }
+                ranges.add(BinRoutingTable.Range.of(fields[0], fields[1], issuer(fields[2].strip())));
+            }
+        }
+        return new BinRoutingTable(ranges);
+    }
+
+    private IssuerGateway issuer(String name) {
+        IssuerGateway issuer = issuers.get(name);
+        if (issuer == null) {
+            throw new IllegalArgumentException("BIN route to an issuer not in switch.issuers: " + name);
+        }
+        return issuer;
+    }
+}
@@ -0,0 +1,155 @@
+package com.paymentswitch.payment_switch.router;
+
+import com.paymentswitch.payment_switch.issuer.IssuerGateway;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Issuers by PAN prefix range, immutable.
+ * <p>
+ * Ranges are 6-11 digit prefixes, compared as the first {@value #KEY_DIGITS} digits of the PAN: the low end is
+ * padded with zeros and the high end with nines, so {@code 411111-411111} covers every PAN starting 411111. A range
+ * may lie inside another (a BIN of its own within an issuer's range), then it wins for its PANs; ranges that
+ * partly overlap are rejected. Construction flattens the ranges into disjoint segments in three parallel arrays,
+ * a lookup is a binary search over the segment starts with no allocation.
+ */
+public final class BinRoutingTable {
+
+    public static final int KEY_DIGITS = 11;
+
+    public record Range(long start, long end, IssuerGateway issuer) {
+
+        public Range {
+            if (start > end) {
+                throw new IllegalArgumentException("BIN range starts after it ends: " + start + "-" + end);
+            }
+        }
+
+        public static Range of(String low, String high, IssuerGateway issuer) {
+            return new Range(prefixKey(low, '0'), prefixKey(high, '9'), issuer);
+        }
+    }
+
+    private final long[] starts;
+    private final long[] ends;
+    private final IssuerGateway[] issuers;
+    private final int ranges;
+
+    public BinRoutingTable(List<Range> ranges) {
+        Range[] sorted = ranges.toArray(Range[]::new);
+        // Outer ranges before the ranges they contain
+        Arrays.sort(sorted, Comparator.comparingLong(Range::start).thenComparing(Range::end, Comparator.reverseOrder()));
+        Segments segments = new Segments(sorted.length * 2 + 1);
+        Deque<Range> open = new ArrayDeque<>();
+        long cursor = 0;
+        for (Range range : sorted) {
+            while (!open.isEmpty() && open.peek().end() < range.start()) {
+                Range closed = open.pop();
+                segments.add(cursor, closed.end(), closed.issuer());
+                cursor = Math.max(cursor, closed.end() + 1);
+            }
+            Range outer = open.peek();
+            if (outer != null) {
+                if (range.end() > outer.end() || range.start() == outer.start() && range.end() == outer.end()) {
+                    throw new IllegalArgumentException("BIN ranges overlap: " + describe(outer) + " and " + describe(range));
+                }
+                segments.add(cursor, range.start() - 1, outer.issuer());
+            }
+            cursor = range.start();
+            open.push(range);
+        }
+        while (!open.isEmpty()) {
+            Range closed = open.pop();
+            segments.add(cursor, closed.end(), closed.issuer());
+            cursor = Math.max(cursor, closed.end() + 1);
+        }
+        this.starts = Arrays.copyOf(segments.starts, segments.size);
+        this.ends = Arrays.copyOf(segments.ends, segments.size);
+        this.issuers = Arrays.copyOf(segments.issuers, segments.size);
+        this.ranges = sorted.length;
+    }
+
+    // The issuer of the most specific range holding the PAN, null when none does
+    public IssuerGateway lookup(String pan) {
+        long key = panKey(pan);
+        if (key < 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(starts, key);
+        if (index < 0) {
+            // The segment starting before the key
+            index = -index - 2;
+            if (index < 0 || key > ends[index]) {
+                return null;
+            }
+        }
+        return issuers[index];
+    }
+
+    // Ranges as loaded
+    public int ranges() {
+        return ranges;
+    }
+
+    // Disjoint segments after flattening nested ranges
+    public int segments() {
+        return starts.length;
+    }
+
+    // First KEY_DIGITS digits of the PAN as a number, zero padded when shorter; -1 when not all digits
+    static long panKey(String pan) {
+        long key = 0;
+        for (int i = 0; i < KEY_DIGITS; i++) {
+            int digit = i < pan.length() ? pan.charAt(i) - '0' : 0;
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            key = key * 10 + digit;
+        }
+        return key;
+    }
+
+    private static long prefixKey(String prefix, char pad) {
+        String digits = prefix.strip();
+        if (digits.length() < 6 || digits.length() > KEY_DIGITS || !digits.chars().allMatch(Character::isDigit)) {
+            throw new IllegalArgumentException("BIN range bounds are 6-" + KEY_DIGITS + " digits: " + prefix);
+        }
+        return Long.parseLong(digits + String.valueOf(pad).repeat(KEY_DIGITS - digits.length()));
+    }
+
+    private static String describe(Range range) {
+        return range.start() + "-" + range.end() + " (" + range.issuer().name() + ")";
+    }
+
+    private static final class Segments {
+        private final long[] starts;
+        private final long[] ends;
+        private final IssuerGateway[] issuers;
+        private int size;
+
+        Segments(int capacity) {
+            starts = new long[capacity];
+            ends = new long[capacity];
+            issuers = new IssuerGateway[capacity];
+        }
+
+        // Empty segments are skipped, one continuing the previous segment's issuer extends it
+        void add(long start, long end, IssuerGateway issuer) {
+            if (start > end) {
+                return;
+            }
+            if (size > 0 && issuers[size - 1] == issuer && ends[size - 1] == start - 1) {
+                ends[size - 1] = end;
+                return;
+            }
+            starts[size] = start;
+            ends[size] = end;
+            issuers[size] = issuer;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.paymentswitch.payment_switch.router;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Deadlines for many short-lived pending operations, at tick resolution.
+ * <p>
+ * Timeouts hash into a ring of {@code wheelSize} buckets by deadline tick; one ticker thread advances a bucket
+ * per tick and runs the timeouts of the current round. Scheduling only appends to a lock-free queue that the
+ * ticker drains, and cancelling sets a flag, so neither contends with other transactions; cancelled timeouts are
+ * dropped when the ticker reaches their bucket. Tasks run on the ticker thread and must be short. A timeout
+ * cancelled while it expires may still run, callers settle that race themselves (e.g. with
+ * CompletableFuture.complete).
+ */
+@Slf4j
+public final class HashedTimerWheel implements AutoCloseable {
+
+    public static final class Timeout {
+        private final long deadlineTick;
+        private final Runnable task;
+        private volatile boolean cancelled;
+
+        private Timeout(long deadlineTick, Runnable task) {
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final long startNanos;
+    private final ArrayDeque<Timeout>[] buckets; // ticker thread only
+    private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Thread ticker;
+    private volatile boolean running = true;
+    private long tick; // ticker thread only
+
+    @SuppressWarnings("unchecked")
+    public HashedTimerWheel(Duration tick, int wheelSize, String threadName) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Timer wheel size must be a power of two: " + wheelSize);
+        }
+        this.tickNanos = Math.max(1, tick.toNanos());
+        this.mask = wheelSize - 1;
+        this.buckets = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.startNanos = System.nanoTime();
+        this.ticker = Thread.ofPlatform().name(threadName).daemon().start(this::run);
+    }
+
+    // Runs task once delay has passed, within a tick after
+    public Timeout schedule(Duration delay, Runnable task) {
+        long deadlineNanos = System.nanoTime() - startNanos + delay.toNanos();
+        // Rounded up, so a timeout never fires early
+        Timeout timeout = new Timeout((deadlineNanos + tickNanos - 1) / tickNanos, task);
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(ticker);
+    }
+
+    private void run() {
+        while (running) {
+            long wakeAt = startNanos + (tick + 1) * tickNanos;
+            long now;
+            while ((now = System.nanoTime()) < wakeAt && running) {
+                LockSupport.parkNanos(wakeAt - now);
+            }
+            tick++;
+            transferScheduled();
+            expire(buckets[(int) (tick & mask)]);
+        }
+    }
+
+    // Timeouts already due go into the current bucket
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (!timeout.cancelled) {
+                buckets[(int) (Math.max(timeout.deadlineTick, tick) & mask)].add(timeout);
+            }
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> bucket) {
+        for (Iterator<Timeout> it = bucket.iterator(); it.hasNext(); ) {
+            Timeout timeout = it.next();
+            if (timeout.cancelled) {
+                it.remove();
+            } else if (timeout.deadlineTick <= tick) {
+                it.remove();
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    // One failing task must not stop the wheel
+                    log.error("Timeout task failed", e);
+                }
+            }
+            // Later rounds stay in the bucket
+        }
+    }
+}
@@ -1,81 +1,217 @@
 package com.paymentswitch.payment_switch.router;
 
+import com.paymentswitch.payment_switch.diagnostics.TransactionTrace;
+import com.paymentswitch.payment_switch.issuer.IssuerGateway;
+import com.paymentswitch.payment_switch.metrics.Stage;
 import com.paymentswitch.payment_switch.model.ProcessingCode;
+import com.paymentswitch.payment_switch.model.ResponseCode;
 import com.paymentswitch.payment_switch.model.TransactionRequest;
 import com.paymentswitch.payment_switch.model.TransactionResponse;
-import com.paymentswitch.payment_switch.service.BankSimlatorService;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Classifies transactions by processing code and calls the issuer of the card's BIN range ({@link BinRoutes}) for
+ * them, 15 when no issuer has the range.
+ * <p>
+ * The issuer call runs on its own virtual thread while the caller waits at most the deadline of the processing
+ * code ({@code switch.issuer.deadline}, per family in {@code switch.issuer.deadlines}); deadlines are kept in a
+ * {@link HashedTimerWheel} that answers 91 when the issuer hasn't. An answer that comes after that is discarded,
+ * and an approval among them is reversed, since the terminal was told the transaction failed. A zero deadline
+ * calls the issuer on the caller's thread, without a deadline.
+ */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class TransactionRouter {
 
-    private final BankSimlatorService bankSimlatorService;
+    private final BinRoutes binRoutes;
+    private final Duration defaultDeadline;
+    private final Map<String, Duration> deadlines = new HashMap<>();
+    private final HashedTimerWheel timerWheel;
+    private final ExecutorService issuerExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("issuer-", 0).factory());
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder lateResponses = new LongAdder();
+
+    public TransactionRouter(BinRoutes binRoutes,
+                             @Value("${switch.issuer.deadline:2s}") Duration defaultDeadline,
+                             @Value("${switch.issuer.deadlines:}") String[] deadlines,
+                             @Value("${switch.issuer.timer.tick:5ms}") Duration tick,
+                             @Value("${switch.issuer.timer.wheel-size:512}") int wheelSize) {
+        this.binRoutes = binRoutes;
+        this.defaultDeadline = defaultDeadline;
+        // family:deadline, e.g. balance_inquiry:1s
+        for (String deadline : deadlines) {
+            if (!deadline.isBlank()) {
+                String[] parts = deadline.strip().split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Expected family:deadline in switch.issuer.deadlines: " + deadline);
+                }
+                this.deadlines.put(parts[0].strip(), DurationStyle.detectAndParse(parts[1].strip()));
+            }
+        }
+        this.timerWheel = new HashedTimerWheel(tick, wheelSize, "issuer-deadlines");
+    }
 
     public TransactionResponse route(TransactionRequest request){
-        ProcessingCode pc= ProcessingCode.parse(request.processingCode(),request.transactionAmount());
-        log.info("Routing transaction - type {}, STAN: {}, Amount: {}",pc.description(),request.stan(),request.transactionAmount());
+        return dispatchWithDeadline(classify(request), request);
+    }
 
-        return switch (pc){
-            case ProcessingCode.BalanceInquiry(var code) ->{
-                log.info("Processing Balance Inquiry with code: {}", code);
-                yield bankSimlatorService.processBalanceInquiry(request);
-            }
-            case ProcessingCode.Withdrawal(var code,var amount) ->{
-                log.info("Processing withdrawal - code: {}, Amount: {}", code,amount);
-                yield  bankSimlatorService.processWithdrawal(request);
-            }
-            case ProcessingCode.Purchase(var code, var amount) ->{
-                log.info("Processing Purchase - code: {}, Amont {}", code ,amount);
-                yield bankSimlatorService.processPurchase(request);
-            }
-            case ProcessingCode.Transfer(var code, var from, var to) -> {
-                log.info("Processing transfer - code: {}", code );
-                yield bankSimlatorService.processTransfer(request);
-            }
-            case ProcessingCode.MiniStatement(var code) ->{
-                log.info("procesing for mini statement - code: {}", code);
-                yield  bankSimlatorService.processMiniStatement(request);
+    // The issuer's answer, or 91 once the processing code's deadline has passed
+    public TransactionResponse dispatchWithDeadline(ProcessingCode pc, TransactionRequest request) {
+        IssuerGateway issuer = binRoutes.issuerFor(request.primaryAccountNumber());
+        if (issuer == null) {
+            return noSuchIssuer(request);
+        }
+        Duration deadline = deadlines.getOrDefault(pc.family(), defaultDeadline);
+        // The stage is timed here only: the issuer thread has no trace of its own, the wait is the stage
+        TransactionTrace.beginStage(Stage.ISSUER_CALL);
+        if (deadline.isZero()) {
+            try {
+                return issuer.authorize(pc, request);
+            } finally {
+                TransactionTrace.endStage(Stage.ISSUER_CALL);
             }
-            case ProcessingCode.Unknown(var code) ->{
-                log.info("Unknown Processing Code: {}", code);
-                yield bankSimlatorService.processTransaction(request,"UNKNOWN");
+        }
+        CompletableFuture<TransactionResponse> answer = new CompletableFuture<>();
+        HashedTimerWheel.Timeout timeout = timerWheel.schedule(deadline, () -> {
+            if (answer.complete(issuerUnavailable(request))) {
+                timeouts.increment();
             }
+        });
+        pending.incrementAndGet();
+        try {
+            issuerExecutor.execute(() -> {
+                TransactionResponse response;
+                try {
+                    response = issuer.authorize(pc, request);
+                } catch (RuntimeException e) {
+                    log.error("Issuer call failed - STAN: {}", request.stan(), e);
+                    response = TransactionResponse.error(convertToResponseMTI(request.messageType()), request.stan(),
+                            ResponseCode.SYSTEM_MALFUNCTION.getCode());
+                }
+                pending.decrementAndGet();
+                if (answer.complete(response)) {
+                    timeout.cancel();
+                } else {
+                    discardLate(issuer, pc, request, response);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            pending.decrementAndGet();
+            timeout.cancel();
+            answer.complete(TransactionResponse.error(convertToResponseMTI(request.messageType()), request.stan(),
+                    ResponseCode.ISSUER_UNAVAILABLE.getCode()));
+        }
+        TransactionResponse response = answer.join();
+        TransactionTrace.endStage(Stage.ISSUER_CALL);
+        return response;
+    }
 
-        };
+    // Issuer calls still running, including those already answered with 91
+    public int pending() {
+        return pending.get();
+    }
+
+    public long timeouts() {
+        return timeouts.sum();
+    }
+
+    public long lateResponses() {
+        return lateResponses.sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        issuerExecutor.shutdown();
+        timerWheel.close();
+    }
+
+    private void discardLate(IssuerGateway issuer, ProcessingCode pc, TransactionRequest request,
+                             TransactionResponse response) {
+        log.warn("Late issuer response discarded - issuer: {}, STAN: {}, RRN: {}, Response Code: {}",
+                issuer.name(), request.stan(), request.retrievalReferenceNumber(), response.responseCode());
+        if (response.isApproved()) {
+            issuer.reverse(pc, request);
+        }
+        lateResponses.increment();
+    }
+
+    private TransactionResponse issuerUnavailable(TransactionRequest request) {
+        return decline(request, ResponseCode.ISSUER_UNAVAILABLE, "Issuer did not answer in time");
+    }
+
+    private TransactionResponse noSuchIssuer(TransactionRequest request) {
+        log.warn("No issuer for the card's BIN range - STAN: {}", request.stan());
+        return decline(request, ResponseCode.NO_SUCH_ISSUER, "No route for card range");
+    }
+
+    private TransactionResponse decline(TransactionRequest request, ResponseCode code, String reason) {
+        return TransactionResponse.builder()
+                .messageType(convertToResponseMTI(request.messageType()))
+                .primaryAccountNumber(request.primaryAccountNumber())
+                .processingCode(request.processingCode())
+                .transactionAmount(request.transactionAmount())
+                .currencyCode(request.currencyCode())
+                .transmissionDateTime(request.transmissionDateTime())
+                .stan(request.stan())
+                .retrievalReferenceNumber(request.retrievalReferenceNumber())
+                .responseCode(code.getCode())
+                .acquiringInstitutionCode(request.acquiringInstitutionCode())
+                .cardAcceptorTerminalId(request.cardAcceptorTerminalId())
+                .additionalResponseData(reason)
+                .build();
+    }
+
+    // Routing decision, separate from the issuer call so the two can be timed apart
+    public ProcessingCode classify(TransactionRequest request){
+        TransactionTrace.beginStage(Stage.ROUTE);
+        ProcessingCode pc= ProcessingCode.parse(request.processingCode(),request.transactionAmount(),request.currencyExponent());
+        log.debug("Routing transaction - type {}, STAN: {}, Amount: {}",pc.description(),request.stan(),request.transactionAmount());
+        TransactionTrace.endStage(Stage.ROUTE);
+        return pc;
+    }
+
+    // The issuer's answer on the caller's thread, without a deadline
+    public TransactionResponse dispatch(ProcessingCode pc, TransactionRequest request){
+        IssuerGateway issuer = binRoutes.issuerFor(request.primaryAccountNumber());
+        return issuer == null ? noSuchIssuer(request) : issuer.authorize(pc, request);
     }
 
     public TransactionResponse routeWithValidation(TransactionRequest request){
-        ProcessingCode pc = ProcessingCode.parse(request.processingCode(),request.transactionAmount());
+        ProcessingCode pc = ProcessingCode.parse(request.processingCode(),request.transactionAmount(),request.currencyExponent());
         return switch(pc){
-            case ProcessingCode.Withdrawal(var code,var amount) when amount.compareTo(BigDecimal.valueOf(50000))>0 ->{
-            log.warn("wthdrawal amount exceeds limit: {}", amount);
-            yield TransactionResponse.error(convertToResponseMTI(request.messageType()),request.stan(),"61");
-            }
-            case ProcessingCode.Withdrawal w-> bankSimlatorService.processWithdrawal(request);
-
-            case ProcessingCode.Purchase(var code,var amount) when amount.compareTo(BigDecimal.ZERO)<=0 ->{
+            // Daily withdrawal limits are the issuer's, see DailyLimits
+            case ProcessingCode.Purchase(var code,var amount,var exponent) when amount<=0 ->{
                 log.warn("Invalid purchase amount: {}", amount);
                 yield TransactionResponse.error(convertToResponseMTI(request.messageType()),request.stan(),"13");
             }
-            case ProcessingCode.Purchase p -> bankSimlatorService.processPurchase(request);
-            case ProcessingCode.BalanceInquiry bi -> bankSimlatorService.processBalanceInquiry(request);
-            case ProcessingCode.Transfer t -> bankSimlatorService.processTransfer(request);
-            case ProcessingCode.MiniStatement ms-> bankSimlatorService.processMiniStatement(request);
             case ProcessingCode.Unknown u -> {
                 log.error("UNKNOWN transaction type: {}", u.code());
-                yield bankSimlatorService.processTransaction(request,"UNKNOWN");
+                yield dispatch(pc, request);
             }
+            default -> dispatch(pc, request);
         };
     }
 
     private String convertToResponseMTI(String requestMTI){
-        return "0"+ (Integer.parseInt(requestMTI.substring(1))+10);
+        // 0201 and 0221 are repeats, answered like the original
+        return "0"+ ((Integer.parseInt(requestMTI.substring(1)) & ~1)+10);
     }
 
     //Additional routing logic with guards
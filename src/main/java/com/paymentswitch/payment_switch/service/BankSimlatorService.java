@@ -1,20 +1,25 @@
 package com.paymentswitch.payment_switch.service;
 //package com.paymentswitch.service;
 
+import com.paymentswitch.payment_switch.ledger.AccountLedger;
+import com.paymentswitch.payment_switch.model.Amounts;
+import com.paymentswitch.payment_switch.model.ProcessingCode;
 import com.paymentswitch.payment_switch.model.ResponseCode;
 import com.paymentswitch.payment_switch.model.TransactionRequest;
 import com.paymentswitch.payment_switch.model.TransactionResponse;
+import com.paymentswitch.payment_switch.velocity.DailyLimits;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.util.Random;
-
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class BankSimlatorService {
 
-    private final Random random = new Random();
+    private final IdentifierService identifiers;
+    private final AccountLedger ledger;
+    private final DailyLimits dailyLimits;
 
     // Sealed interface for bank operation results
     public sealed interface BankOperationResult {
@@ -35,51 +40,54 @@ public class BankSimlatorService {
     }
 
     public TransactionResponse processBalanceInquiry(TransactionRequest request) {
-        log.info("Bank: Processing Balance Inquiry for PAN: {}", request.maskedPAN());
+        if (log.isDebugEnabled()) {
+            log.debug("Bank: Processing Balance Inquiry for PAN: {}", request.maskedPAN());
+        }
 
-        var result = new BankOperationResult.Approved(
-                generateAuthCode(),
-                "AVAIL:25000.00|LEDGER:25500.00"
-        );
+        long balance = ledger.balance(request.primaryAccountNumber(),
+                AccountLedger.accountType(request.processingCode(), AccountLedger.FROM_ACCOUNT));
+        BankOperationResult result;
+        if (balance < 0) {
+            result = posted(balance, null);
+        } else {
+            // Postings are immediate, so available and ledger balance are the same
+            String decimal = Amounts.toDecimalString(balance, request.currencyExponent());
+            result = posted(balance, "AVAIL:" + decimal + "|LEDGER:" + decimal);
+        }
 
         return buildResponseFromResult(request, result);
     }
 
     public TransactionResponse processWithdrawal(TransactionRequest request) {
-        log.info("Bank: Processing Withdrawal for amount: {}", request.transactionAmount());
+        log.debug("Bank: Processing Withdrawal for amount: {}", request.transactionAmount());
 
-        BankOperationResult result = validateWithdrawal(request.transactionAmount());
+        BankOperationResult result = validateWithdrawal(request);
 
         return buildResponseFromResult(request, result);
     }
 
     public TransactionResponse processPurchase(TransactionRequest request) {
-        log.info("Bank: Processing Purchase for amount: {}", request.transactionAmount());
-
-        // Random approval for demo (90% success rate)
-        BankOperationResult result = random.nextInt(10) < 9
-                ? new BankOperationResult.Approved(generateAuthCode(), null)
-                : new BankOperationResult.Declined(
-                ResponseCode.INSUFFICIENT_FUNDS,
-                "Insufficient funds available"
-        );
+        log.debug("Bank: Processing Purchase for amount: {}", request.transactionAmount());
+
+        BankOperationResult result = debitWithinDailyLimit(request, DailyLimits.PURCHASE,
+                "Amount exceeds daily purchase limit");
 
         return buildResponseFromResult(request, result);
     }
 
     public TransactionResponse processTransfer(TransactionRequest request) {
-        log.info("Bank: Processing Transfer for amount: {}", request.transactionAmount());
+        log.debug("Bank: Processing Transfer for amount: {}", request.transactionAmount());
 
-        var result = new BankOperationResult.Approved(
-                generateAuthCode(),
-                "TRANSFER:SUCCESS"
-        );
+        BankOperationResult result = posted(ledger.transfer(request.primaryAccountNumber(),
+                AccountLedger.accountType(request.processingCode(), AccountLedger.FROM_ACCOUNT),
+                AccountLedger.accountType(request.processingCode(), AccountLedger.TO_ACCOUNT),
+                request.transactionAmount()), "TRANSFER:SUCCESS");
 
         return buildResponseFromResult(request, result);
     }
 
     public TransactionResponse processMiniStatement(TransactionRequest request) {
-        log.info("Bank: Processing Mini Statement");
+        log.debug("Bank: Processing Mini Statement");
 
         var result = new BankOperationResult.Approved(
                 generateAuthCode(),
@@ -100,23 +108,63 @@ public class BankSimlatorService {
         return buildResponseFromResult(request, result);
     }
 
-    // Validation logic with sealed result
-    private BankOperationResult validateWithdrawal(BigDecimal amount) {
-        if (amount.compareTo(BigDecimal.valueOf(50000)) > 0) {
-            return new BankOperationResult.Declined(
-                    ResponseCode.EXCEEDS_WITHDRAWAL_LIMIT,
-                    "Amount exceeds daily withdrawal limit"
-            );
+    // Undoes the postings of an approval the terminal never got (it was answered 91)
+    public void reverse(ProcessingCode code, TransactionRequest request) {
+        String pan = request.primaryAccountNumber();
+        long amount = request.transactionAmount();
+        int from = AccountLedger.accountType(request.processingCode(), AccountLedger.FROM_ACCOUNT);
+        switch (code) {
+            case ProcessingCode.Withdrawal w -> {
+                ledger.credit(pan, from, amount);
+                dailyLimits.release(pan, DailyLimits.WITHDRAWAL, amount);
+            }
+            case ProcessingCode.Purchase p -> {
+                ledger.credit(pan, from, amount);
+                dailyLimits.release(pan, DailyLimits.PURCHASE, amount);
+            }
+            case ProcessingCode.Transfer t -> {
+                int to = AccountLedger.accountType(request.processingCode(), AccountLedger.TO_ACCOUNT);
+                if (ledger.transfer(pan, to, from, amount) < 0) {
+                    log.warn("Transfer reversal failed - RRN: {}", request.retrievalReferenceNumber());
+                }
+            }
+            default -> {
+                // Inquiries post nothing
+                return;
+            }
         }
+        log.info("Reversed late approval - STAN: {}, RRN: {}", request.stan(), request.retrievalReferenceNumber());
+    }
+
+    // Validation logic with sealed result
+    private BankOperationResult validateWithdrawal(TransactionRequest request) {
+        return debitWithinDailyLimit(request, DailyLimits.WITHDRAWAL, "Amount exceeds daily withdrawal limit");
+    }
 
-        if (amount.compareTo(BigDecimal.valueOf(25000)) > 0) {
-            return new BankOperationResult.Declined(
-                    ResponseCode.INSUFFICIENT_FUNDS,
-                    "Insufficient funds in account"
-            );
+    // The amount counts against the card's daily limit first and is given back if the debit doesn't go through
+    private BankOperationResult debitWithinDailyLimit(TransactionRequest request, int kind, String limitMessage) {
+        String pan = request.primaryAccountNumber();
+        long amount = request.transactionAmount();
+        if (!dailyLimits.reserve(pan, kind, amount, request.currencyExponent())) {
+            return new BankOperationResult.Declined(ResponseCode.EXCEEDS_WITHDRAWAL_LIMIT, limitMessage);
+        }
+        long result = ledger.debit(pan,
+                AccountLedger.accountType(request.processingCode(), AccountLedger.FROM_ACCOUNT), amount);
+        if (result < 0) {
+            dailyLimits.release(pan, kind, amount);
         }
+        return posted(result, null);
+    }
 
-        return new BankOperationResult.Approved(generateAuthCode(), null);
+    // Outcome of a ledger posting: a balance when it went through, or why not
+    private BankOperationResult posted(long result, String additionalData) {
+        if (result == AccountLedger.NO_ACCOUNT) {
+            return new BankOperationResult.Declined(ResponseCode.INVALID_CARD, "No such account for card");
+        }
+        if (result == AccountLedger.INSUFFICIENT_FUNDS) {
+            return new BankOperationResult.Declined(ResponseCode.INSUFFICIENT_FUNDS, "Insufficient funds in account");
+        }
+        return new BankOperationResult.Approved(generateAuthCode(), additionalData);
     }
 
     // Java 21 pattern matching to build response from result
@@ -133,26 +181,32 @@ public class BankSimlatorService {
                             request.primaryAccountNumber(),
                             request.processingCode(),
                             request.transactionAmount(),
+                            request.currencyCode(),
                             request.transmissionDateTime(),
                             request.stan(),
+                            request.retrievalReferenceNumber(),
                             ResponseCode.APPROVED.getCode(),
                             authCode,
                             request.acquiringInstitutionCode(),
+                            request.cardAcceptorTerminalId(),
                             additionalData
                     );
 
             case BankOperationResult.Declined(var reason, var message) -> {
-                log.warn("Transaction declined: {} - {}", reason.getCode(), message);
+                log.debug("Transaction declined: {} - {}", reason.getCode(), message);
                 yield new TransactionResponse(
                         responseMTI,
                         request.primaryAccountNumber(),
                         request.processingCode(),
                         request.transactionAmount(),
+                        request.currencyCode(),
                         request.transmissionDateTime(),
                         request.stan(),
+                        request.retrievalReferenceNumber(),
                         reason.getCode(),
                         null,
                         request.acquiringInstitutionCode(),
+                        request.cardAcceptorTerminalId(),
                         message
                 );
             }
@@ -164,11 +218,14 @@ public class BankSimlatorService {
                         request.primaryAccountNumber(),
                         request.processingCode(),
                         request.transactionAmount(),
+                        request.currencyCode(),
                         request.transmissionDateTime(),
                         request.stan(),
+                        request.retrievalReferenceNumber(),
                         ResponseCode.SYSTEM_MALFUNCTION.getCode(),
                         null,
                         request.acquiringInstitutionCode(),
+                        request.cardAcceptorTerminalId(),
                         errorMessage
                 );
             }
@@ -176,10 +233,11 @@ public class BankSimlatorService {
     }
 
     private String convertToResponseMTI(String requestMTI) {
-        return "0" + (Integer.parseInt(requestMTI.substring(1)) + 10);
+        // 0201 and 0221 are repeats, answered like the original
+        return "0" + ((Integer.parseInt(requestMTI.substring(1)) & ~1) + 10);
     }
 
     private String generateAuthCode() {
-        return String.format("%06d", random.nextInt(1000000));
+        return identifiers.authorizationCode();
     }
 }
\ No newline at end of file
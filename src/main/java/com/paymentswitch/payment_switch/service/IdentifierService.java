@@ -0,0 +1,111 @@
+package com.paymentswitch.payment_switch.service;
+
+import com.paymentswitch.payment_switch.time.CoarseClock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Authorization codes (field 38) and retrieval reference numbers (field 37).
+ * <p>
+ * An RRN is 12 ASCII digits: the julian day {@code DDD}, the node ID {@code NN} ({@code switch.node-id}, so
+ * switch instances never collide) and a 7 digit sequence that restarts every day. The sequence is striped: each
+ * stripe is a padded counter tagged with its day that hands out a block of {@value #BLOCK} consecutive numbers,
+ * and takes the next free block of the day from a shared counter when it runs out, so threads on different
+ * stripes rarely touch the same cache line and no number is handed out twice. A node can issue 10 million RRNs a
+ * day before the sequence wraps, less the unused ends of the stripes' last blocks.
+ */
+@Slf4j
+@Service
+public class IdentifierService {
+
+    private static final int SEQUENCE_DIGITS = 7;
+    private static final long SEQUENCE_LIMIT = 10_000_000;
+    static final int STRIPES = 1 << (32 - Integer.numberOfLeadingZeros(
+            Runtime.getRuntime().availableProcessors() * 2 - 1));
+    private static final int PAD = 8; // longs per 64 byte cache line
+    static final int BLOCK = 1000; // divides SEQUENCE_LIMIT, so a wrap starts over from 0
+
+    private final int nodeId;
+    private final CoarseClock clock;
+    // Per stripe: epoch day in the high 32 bits, next number of its block in the low 32 bits, a multiple of BLOCK
+    // once the block is used up
+    private final AtomicLongArray stripes = new AtomicLongArray(STRIPES * PAD);
+    // Epoch day in the high 32 bits, blocks taken that day in the low 32 bits
+    private final AtomicLong blocks = new AtomicLong();
+
+    public IdentifierService(@Value("${switch.node-id:1}") int nodeId, CoarseClock clock) {
+        if (nodeId < 0 || nodeId > 99) {
+            throw new IllegalArgumentException("switch.node-id must be 0-99, got " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    // Six random digits; auth codes only need to be unpredictable, not unique
+    public String authorizationCode() {
+        byte[] out = new byte[6];
+        writeDigits(out, 0, ThreadLocalRandom.current().nextInt(1_000_000), 6);
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+
+    public String retrievalReferenceNumber() {
+        LocalDateTime now = clock.now();
+        long sequence = nextSequence(now.toLocalDate().toEpochDay());
+        if (sequence == SEQUENCE_LIMIT) {
+            log.warn("RRN sequence for day {} wrapped after {} numbers", now.getDayOfYear(), SEQUENCE_LIMIT);
+        }
+        byte[] out = new byte[12];
+        int offset = writeDigits(out, 0, now.getDayOfYear(), 3);
+        offset = writeDigits(out, offset, nodeId, 2);
+        writeDigits(out, offset, sequence % SEQUENCE_LIMIT, SEQUENCE_DIGITS);
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+
+    // Unique for the day until SEQUENCE_LIMIT, from where it repeats
+    private long nextSequence(long epochDay) {
+        int index = ((int) Thread.currentThread().threadId() & (STRIPES - 1)) * PAD;
+        while (true) {
+            long current = stripes.get(index);
+            long sequence = current & 0xFFFF_FFFFL;
+            // A thread that saw the previous tick keeps counting on the newer day instead of resetting it
+            if ((current >>> 32) >= epochDay && sequence % BLOCK != 0) {
+                if (stripes.compareAndSet(index, current, current + 1)) {
+                    return sequence;
+                }
+                continue;
+            }
+            // Block used up, or a new day: a block lost to a racing thread on the stripe is skipped
+            long block = nextBlock(Math.max(epochDay, current >>> 32));
+            long first = (block & 0xFFFF_FFFFL) * BLOCK;
+            if (stripes.compareAndSet(index, current, (block & 0xFFFF_FFFF_0000_0000L) | first + 1)) {
+                return first;
+            }
+        }
+    }
+
+    // Day in the high 32 bits, index of the day's next free block in the low 32 bits
+    private long nextBlock(long epochDay) {
+        long current;
+        long next;
+        do {
+            current = blocks.get();
+            next = (current >>> 32) >= epochDay ? current + 1 : epochDay << 32 | 1;
+        } while (!blocks.compareAndSet(current, next));
+        return next - 1;
+    }
+
+    private static int writeDigits(byte[] out, int offset, long value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + width;
+    }
+}
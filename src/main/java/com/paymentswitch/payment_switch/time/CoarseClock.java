@@ -0,0 +1,59 @@
+package com.paymentswitch.payment_switch.time;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Wall clock that only moves once per tick.
+ * <p>
+ * The current {@link LocalDateTime} is computed once per {@code switch.clock.tick} and shared, so per-transaction
+ * callers (year inference for MMDD fields, defaults for missing times) read a cached value instead of resolving
+ * the time zone and building java.time objects. Ticks are taken lazily on read: no thread, and an idle switch
+ * does no work.
+ */
+@Component
+public class CoarseClock {
+
+    private record Tick(long expiresAtMillis, LocalDateTime now) {
+    }
+
+    private final Clock clock;
+    private final long tickMillis;
+    private volatile Tick tick;
+
+    @Autowired
+    public CoarseClock(@Value("${switch.clock.tick:100ms}") Duration tick) {
+        this(Clock.systemDefaultZone(), tick);
+    }
+
+    public CoarseClock(Clock clock, Duration tick) {
+        this.clock = clock;
+        this.tickMillis = Math.max(1, tick.toMillis());
+        this.tick = tickAt(clock.millis());
+    }
+
+    // Local date and time as of the last tick
+    public LocalDateTime now() {
+        return current().now();
+    }
+
+    private Tick current() {
+        Tick current = tick;
+        long millis = clock.millis();
+        if (millis >= current.expiresAtMillis()) {
+            // Racing threads compute the same tick, last write wins
+            current = tickAt(millis);
+            tick = current;
+        }
+        return current;
+    }
+
+    private Tick tickAt(long millis) {
+        return new Tick(millis - Math.floorMod(millis, tickMillis) + tickMillis, LocalDateTime.now(clock));
+    }
+}
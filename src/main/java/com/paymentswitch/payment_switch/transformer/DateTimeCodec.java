@@ -0,0 +1,97 @@
+package com.paymentswitch.payment_switch.transformer;
+
+import com.paymentswitch.payment_switch.time.CoarseClock;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * The packager's date and time fields without java.time parsing or formatting.
+ * <ul>
+ *   <li>7 transmission date and time, MMDDhhmmss</li>
+ *   <li>12 local transaction time, hhmmss</li>
+ *   <li>13 local transaction date and 15 settlement date, MMDD</li>
+ * </ul>
+ * Values are taken as the number {@link com.paymentswitch.payment_switch.iso.IsoMessageView#getLong} reads
+ * straight from the received digits and split arithmetically; formatting writes the digits into a byte array.
+ * None of the fields carries a year: it is the one, of the {@link CoarseClock}'s year and its neighbours, that
+ * puts the date within six months of today, so a 1231 received just after midnight on 1 January is last year's
+ * and a 0101 received a moment before is next year's.
+ */
+@Component
+public class DateTimeCodec {
+
+    private final CoarseClock clock;
+
+    public DateTimeCodec(CoarseClock clock) {
+        this.clock = clock;
+    }
+
+    // Field 7; DateTimeException for an impossible date or time
+    public LocalDateTime transmissionDateTime(long mmddhhmmss) {
+        int month = (int) (mmddhhmmss / 100_000_000);
+        int day = (int) (mmddhhmmss / 1_000_000 % 100);
+        return LocalDateTime.of(yearOf(month), month, day,
+                (int) (mmddhhmmss / 10_000 % 100), (int) (mmddhhmmss / 100 % 100), (int) (mmddhhmmss % 100));
+    }
+
+    // Field 12
+    public LocalTime localTime(long hhmmss) {
+        return LocalTime.of((int) (hhmmss / 10_000), (int) (hhmmss / 100 % 100), (int) (hhmmss % 100));
+    }
+
+    // Fields 13 and 15
+    public LocalDate monthDay(long mmdd) {
+        int month = (int) (mmdd / 100);
+        return LocalDate.of(yearOf(month), month, (int) (mmdd % 100));
+    }
+
+    public String formatTransmissionDateTime(LocalDateTime dateTime) {
+        byte[] out = new byte[10];
+        int offset = writeDigits(out, 0, dateTime.getMonthValue(), 2);
+        offset = writeDigits(out, offset, dateTime.getDayOfMonth(), 2);
+        offset = writeDigits(out, offset, dateTime.getHour(), 2);
+        offset = writeDigits(out, offset, dateTime.getMinute(), 2);
+        writeDigits(out, offset, dateTime.getSecond(), 2);
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+
+    public String formatLocalTime(LocalTime time) {
+        byte[] out = new byte[6];
+        int offset = writeDigits(out, 0, time.getHour(), 2);
+        offset = writeDigits(out, offset, time.getMinute(), 2);
+        writeDigits(out, offset, time.getSecond(), 2);
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+
+    public String formatMonthDay(LocalDate date) {
+        byte[] out = new byte[4];
+        writeDigits(out, writeDigits(out, 0, date.getMonthValue(), 2), date.getDayOfMonth(), 2);
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+
+    // Current local date and time, to within the clock's tick
+    public LocalDateTime now() {
+        return clock.now();
+    }
+
+    // Year that puts the month within six months of the clock's month
+    int yearOf(int month) {
+        LocalDateTime today = clock.now();
+        int delta = month - today.getMonthValue();
+        int year = today.getYear();
+        return delta > 6 ? year - 1 : delta < -6 ? year + 1 : year;
+    }
+
+    // Zero padded, the value must fit in width digits
+    private static int writeDigits(byte[] out, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + width;
+    }
+}
@@ -1,34 +1,41 @@
 package com.paymentswitch.payment_switch.transformer;
 
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.model.Amounts;
 import com.paymentswitch.payment_switch.model.TransactionRequest;
 import com.paymentswitch.payment_switch.model.TransactionResponse;
+import com.paymentswitch.payment_switch.service.IdentifierService;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOMsg;
 import org.jpos.iso.packager.GenericPackager;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
-import java.time.LocalDate;
+import java.time.DateTimeException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class IsoMessageTransformer {
-    private static final DateTimeFormatter ISO_DATE_FORMAT=DateTimeFormatter.ofPattern("MMddHHmmss");
+    private static final int AMOUNT_DIGITS = 12;  // field 4, n12
+    private static final int CURRENCY_DIGITS = 3; // field 49, n3
 
-    @Autowired
-    private GenericPackager packager;
+    private final GenericPackager packager;
+    private final DateTimeCodec dateTimeCodec;
+    private final IdentifierService identifiers;
 
-    public TransactionRequest toTransactionRequest(ISOMsg msg) throws ISOException{
+    public TransactionRequest toTransactionRequest(IsoMessageView msg) {
         log.debug("Transforming ISO message to TransactionRequest");
         return TransactionRequest.builder()
                 .messageType(msg.getMTI()).primaryAccountNumber(msg.getString(2))
-                .processingCode(msg.getString(3)).transactionAmount(parseAmount(msg.getString(4)))
-                .transmissionDateTime(parseDateTime(msg.getString(7)))
+                .processingCode(msg.getString(3))
+                .transactionAmount(msg.hasField(4) ? msg.getLong(4) : 0)
+                .currencyCode(parseCurrencyCode(msg))
+                .transmissionDateTime(parseDateTime(msg))
                 .stan(msg.getString(11))
+                .retrievalReferenceNumber(msg.hasField(37) ? msg.getString(37) : identifiers.retrievalReferenceNumber())
                 .acquiringInstitutionCode(msg.getString(32))
                 .cardAcceptorTerminalId(msg.getString(41))
                 .cardAcceptorNameLocation(msg.getString(43))
@@ -42,66 +49,101 @@ public class IsoMessageTransformer {
         msg.setMTI(response.messageType());
         msg.set(2,response.primaryAccountNumber());
         msg.set(3,response.processingCode());
-        msg.set(4,formatAmount(response.transactionAmount()));
-        msg.set(7,formateDateTime(response.transmissionDateTime()));
+        msg.set(4,Amounts.format(response.transactionAmount(), AMOUNT_DIGITS));
+        msg.set(7,formatDateTime(response.transmissionDateTime()));
         msg.set(11,response.stan());
         msg.set(39,response.responseCode());
 
+        if(response.retrievalReferenceNumber()!=null){
+            msg.set(37,response.retrievalReferenceNumber());
+        }
+
         if(response.authorizationCode() !=null){
             msg.set(38,response.authorizationCode());
         }
         if(response.acquiringInstitutionCode()!=null){
             msg.set(32,response.acquiringInstitutionCode());
         }
+        if(response.cardAcceptorTerminalId()!=null){
+            msg.set(41,response.cardAcceptorTerminalId());
+        }
         if(response.additionalResponseData()!=null){
             msg.set(48,response.additionalResponseData());
         }
+        if(response.currencyCode()!=Amounts.NO_CURRENCY){
+            msg.set(49,Amounts.format(response.currencyCode(), CURRENCY_DIGITS));
+        }
         return msg;
     }
 
 
-
-    private BigDecimal parseAmount(String amount){
-        if(amount==null || amount.isEmpty()){
-            return BigDecimal.ZERO;
+    // The request as the switch forwards it to an issuer link
+    public ISOMsg toIsoMessage(TransactionRequest request) throws ISOException {
+        ISOMsg msg = new ISOMsg();
+        msg.setPackager(packager);
+        msg.setMTI(request.messageType());
+        msg.set(2, request.primaryAccountNumber());
+        msg.set(3, request.processingCode());
+        msg.set(4, Amounts.format(request.transactionAmount(), AMOUNT_DIGITS));
+        msg.set(7, formatDateTime(request.transmissionDateTime()));
+        msg.set(11, request.stan());
+        msg.set(32, request.acquiringInstitutionCode());
+        msg.set(37, request.retrievalReferenceNumber());
+        msg.set(41, request.cardAcceptorTerminalId());
+        msg.set(43, request.cardAcceptorNameLocation());
+        msg.set(48, request.additionalData());
+        if (request.currencyCode() != Amounts.NO_CURRENCY) {
+            msg.set(49, Amounts.format(request.currencyCode(), CURRENCY_DIGITS));
         }
-        return  new BigDecimal(amount).divide(BigDecimal.valueOf(100));
+        return msg;
     }
 
-    private String formatAmount(BigDecimal amount){
-        if(amount==null){
-            return "000000000000";
-        }
-        long minorUnits = amount.multiply(BigDecimal.valueOf(100)).longValue();
-        return String.format("%012d",minorUnits);
+    // An issuer link's answer
+    public TransactionResponse toTransactionResponse(IsoMessageView msg) {
+        return TransactionResponse.builder()
+                .messageType(msg.getMTI())
+                .primaryAccountNumber(msg.getString(2))
+                .processingCode(msg.getString(3))
+                .transactionAmount(msg.hasField(4) ? msg.getLong(4) : 0)
+                .currencyCode(parseCurrencyCode(msg))
+                .transmissionDateTime(parseDateTime(msg))
+                .stan(msg.getString(11))
+                .retrievalReferenceNumber(msg.getString(37))
+                .responseCode(msg.getString(39))
+                .authorizationCode(msg.getString(38))
+                .acquiringInstitutionCode(msg.getString(32))
+                .cardAcceptorTerminalId(msg.getString(41))
+                .additionalResponseData(msg.getString(48))
+                .build();
     }
-    private LocalDateTime parseDateTime(String dateTime) {
-        if (dateTime == null || dateTime.isEmpty()) {
-            return LocalDateTime.now();
-        }
 
+    // ISO 8583 field 49: ISO 4217 numeric code; one that isn't digits is ignored like a missing one
+    private int parseCurrencyCode(IsoMessageView msg) {
+        if (!msg.hasField(49)) {
+            return Amounts.NO_CURRENCY;
+        }
         try {
-            // ISO 8583 field 7: MMDDhhmmss (no year)
-            // Example: "1227212919" -> December 27, 21:29:19
-            int month = Integer.parseInt(dateTime.substring(0, 2));
-            int day = Integer.parseInt(dateTime.substring(2, 4));
-            int hour = Integer.parseInt(dateTime.substring(4, 6));
-            int minute = Integer.parseInt(dateTime.substring(6, 8));
-            int second = Integer.parseInt(dateTime.substring(8, 10));
-
-            // Use current year since ISO 8583 doesn't include it
-            int year = LocalDate.now().getYear();
-
-            return LocalDateTime.of(year, month, day, hour, minute, second);
-        } catch (Exception e) {
-            log.error("Error parsing date/time: {}", dateTime, e);
-            return LocalDateTime.now();
+            return (int) msg.getLong(49);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid currency code: {}", msg.getString(49));
+            return Amounts.NO_CURRENCY;
         }
     }
-    private String formateDateTime(LocalDateTime datetime){
-        if(datetime ==null){
-            datetime=LocalDateTime.now();
+
+    // ISO 8583 field 7: MMDDhhmmss, no year
+    private LocalDateTime parseDateTime(IsoMessageView msg) {
+        if (!msg.hasField(7)) {
+            return dateTimeCodec.now();
+        }
+        try {
+            return dateTimeCodec.transmissionDateTime(msg.getLong(7));
+        } catch (NumberFormatException | DateTimeException e) {
+            log.error("Error parsing date/time: {}", msg.getString(7), e);
+            return dateTimeCodec.now();
         }
-        return datetime.format(ISO_DATE_FORMAT);
+    }
+
+    private String formatDateTime(LocalDateTime datetime){
+        return dateTimeCodec.formatTransmissionDateTime(datetime != null ? datetime : dateTimeCodec.now());
     }
 }
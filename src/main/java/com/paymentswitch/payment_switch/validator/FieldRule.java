@@ -0,0 +1,38 @@
+package com.paymentswitch.payment_switch.validator;
+
+import com.paymentswitch.payment_switch.model.ResponseCode;
+
+/**
+ * One mandatory request field: how it is reported when missing and, for digit fields, the length range it
+ * must have. Fields are limited to the primary bitmap so presence can be checked as a single bit mask.
+ */
+public record FieldRule(
+        int field,
+        String name,
+        ResponseCode responseCode,
+        String missingMessage,
+        int minDigits,
+        int maxDigits,
+        String invalidMessage,
+        boolean masked
+) {
+    public FieldRule {
+        if (field < 2 || field > 64) {
+            throw new IllegalArgumentException("Rules cover fields 2-64, got " + field);
+        }
+    }
+
+    public static FieldRule required(int field, String name, ResponseCode responseCode, String missingMessage) {
+        return new FieldRule(field, name, responseCode, missingMessage, 0, 0, null, false);
+    }
+
+    // invalidMessage is followed by the value, masked when it is card data
+    public static FieldRule digits(int field, String name, ResponseCode responseCode, String missingMessage,
+                                   int minDigits, int maxDigits, String invalidMessage, boolean masked) {
+        return new FieldRule(field, name, responseCode, missingMessage, minDigits, maxDigits, invalidMessage, masked);
+    }
+
+    public boolean checksFormat() {
+        return invalidMessage != null;
+    }
+}
@@ -2,64 +2,75 @@
 package com.paymentswitch.payment_switch.validator;
 //package com.paymentswitch.validator;
 
+import com.paymentswitch.payment_switch.diagnostics.TransactionTrace;
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.logging.PanMasker;
+import com.paymentswitch.payment_switch.metrics.Stage;
 import com.paymentswitch.payment_switch.model.ResponseCode;
 //import com.paymentswitch.model.ValidationResult;
 import com.paymentswitch.payment_switch.model.ValidationResult;
 import lombok.extern.slf4j.Slf4j;
-import org.jpos.iso.ISOException;
-import org.jpos.iso.ISOMsg;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validates requests against {@link ValidationRules}.
+ * <p>
+ * The rule table is compiled at startup into one program per message class: the mandatory fields as a
+ * bitmap mask plus the rules in check order, with the missing-field failures pre-built. A request that has
+ * every mandatory bit set skips straight to the format checks, which are plain character scans.
+ */
 @Slf4j
 @Component
 public class IsoMessageValidator {
 
-    public ValidationResult validate(ISOMsg msg) {
-        try {
-            // Use pattern matching for validation
-            var mtiValidation = validateMTI(msg);
-            if (mtiValidation instanceof ValidationResult.Failure failure) {
-                log.error("MTI validation failed: {}", failure.message());
-                return failure;
-            }
+    // Compiled rules, indexed by the first two MTI digits
+    private final Program[] programs = compile(ValidationRules.BY_MESSAGE_CLASS);
 
-            var panValidation = validatePAN(msg);
-            if (panValidation instanceof ValidationResult.Failure failure) {
-                log.error("PAN validation failed: {}", failure.message());
-                return failure;
-            }
-
-            var processingCodeValidation = validateProcessingCode(msg);
-            if (processingCodeValidation instanceof ValidationResult.Failure failure) {
-                log.error("Processing Code validation failed: {}", failure.message());
-                return failure;
-            }
+    private record Program(long mandatory, FieldRule[] rules, ValidationResult.Failure[] missing) {
+    }
 
-            var amountValidation = validateAmount(msg);
-            if (amountValidation instanceof ValidationResult.Failure failure) {
-                log.error("Amount validation failed: {}", failure.message());
-                return failure;
-            }
+    public ValidationResult validate(IsoMessageView msg) {
+        TransactionTrace.beginStage(Stage.VALIDATE);
+        try {
+            return check(msg);
+        } finally {
+            TransactionTrace.endStage(Stage.VALIDATE);
+        }
+    }
 
-            var stanValidation = validateSTAN(msg);
-            if (stanValidation instanceof ValidationResult.Failure failure) {
-                log.error("STAN validation failed: {}", failure.message());
-                return failure;
+    private ValidationResult check(IsoMessageView msg) {
+        try {
+            String mti = msg.getMTI();
+            Program program = programFor(mti);
+            if (program == null) {
+                return reject("MTI", new ValidationResult.Failure(
+                        ResponseCode.FORMAT_ERROR, "Invalid MTI: " + mti, "MTI"));
             }
 
-            var dateTimeValidation = validateDateTime(msg);
-            if (dateTimeValidation instanceof ValidationResult.Failure failure) {
-                log.error("DateTime validation failed: {}", failure.message());
-                return failure;
+            long present = msg.presenceMask();
+            boolean complete = (present & program.mandatory()) == program.mandatory();
+            FieldRule[] rules = program.rules();
+            for (int i = 0; i < rules.length; i++) {
+                FieldRule rule = rules[i];
+                if (!complete && (present & bit(rule.field())) == 0) {
+                    return reject(rule.name(), program.missing()[i]);
+                }
+                if (rule.checksFormat()) {
+                    String value = msg.getString(rule.field());
+                    if (!isDigits(value, rule.minDigits(), rule.maxDigits())) {
+                        String shown = rule.masked() ? PanMasker.mask(value) : value;
+                        return reject(rule.name(), new ValidationResult.Failure(
+                                rule.responseCode(), rule.invalidMessage() + shown, rule.name()));
+                    }
+                }
             }
 
-            var terminalValidation = validateTerminalId(msg);
-            if (terminalValidation instanceof ValidationResult.Failure failure) {
-                log.error("Terminal ID validation failed: {}", failure.message());
-                return failure;
+            if (log.isDebugEnabled()) {
+                log.debug("Validation passed for STAN: {}", msg.getString(11));
             }
-
-            log.info("Validation passed for STAN: {}", msg.getString(11));
             return ValidationResult.success();
 
         } catch (Exception e) {
@@ -71,113 +82,49 @@ public class IsoMessageValidator {
         }
     }
 
-    private ValidationResult validateMTI(ISOMsg msg) throws ISOException {
-        String mti = msg.getMTI();
-        if (mti == null || !isValidMTI(mti)) {
-            return ValidationResult.fail(
-                    ResponseCode.FORMAT_ERROR,
-                    "Invalid MTI: " + mti,
-                    "MTI"
-            );
-        }
-        return ValidationResult.success();
-    }
-
-    private ValidationResult validatePAN(ISOMsg msg) {
-        if (!msg.hasField(2)) {
-            return ValidationResult.fail(
-                    ResponseCode.INVALID_CARD,
-                    "Missing Primary Account Number",
-                    "PAN"
-            );
-        }
-
-        try {
-            String pan = msg.getString(2);
-            if (!isValidPAN(pan)) {
-                return ValidationResult.fail(
-                        ResponseCode.INVALID_CARD,
-                        "Invalid PAN format: " + maskPAN(pan),
-                        "PAN"
-                );
-            }
-        } catch (Exception e) {
-            return ValidationResult.fail(
-                    ResponseCode.INVALID_CARD,
-                    "Error reading PAN",
-                    "PAN"
-            );
-        }
-
-        return ValidationResult.success();
+    private ValidationResult reject(String rule, ValidationResult.Failure failure) {
+        log.debug("{} validation failed: {}", rule, failure.message());
+        return failure;
     }
 
-    private ValidationResult validateProcessingCode(ISOMsg msg) {
-        if (!msg.hasField(3)) {
-            return ValidationResult.fail(
-                    ResponseCode.FORMAT_ERROR,
-                    "Missing Processing Code",
-                    "ProcessingCode"
-            );
+    // Four digits whose message class has rules
+    private Program programFor(String mti) {
+        if (mti == null || mti.length() != 4 || !isDigits(mti, 4, 4)) {
+            return null;
         }
-        return ValidationResult.success();
+        return programs[(mti.charAt(0) - '0') * 10 + (mti.charAt(1) - '0')];
     }
 
-    private ValidationResult validateAmount(ISOMsg msg) {
-        if (!msg.hasField(4)) {
-            return ValidationResult.fail(
-                    ResponseCode.INVALID_AMOUNT,
-                    "Missing Transaction Amount",
-                    "Amount"
-            );
-        }
-        return ValidationResult.success();
+    private static Program[] compile(Map<String, List<FieldRule>> rulesByMessageClass) {
+        Program[] compiled = new Program[100];
+        rulesByMessageClass.forEach((messageClass, rules) -> {
+            long mandatory = 0;
+            ValidationResult.Failure[] missing = new ValidationResult.Failure[rules.size()];
+            for (int i = 0; i < rules.size(); i++) {
+                FieldRule rule = rules.get(i);
+                mandatory |= bit(rule.field());
+                missing[i] = new ValidationResult.Failure(rule.responseCode(), rule.missingMessage(), rule.name());
+            }
+            compiled[Integer.parseInt(messageClass)] = new Program(mandatory, rules.toArray(FieldRule[]::new), missing);
+        });
+        return compiled;
     }
 
-    private ValidationResult validateSTAN(ISOMsg msg) {
-        if (!msg.hasField(11)) {
-            return ValidationResult.fail(
-                    ResponseCode.FORMAT_ERROR,
-                    "Missing STAN",
-                    "STAN"
-            );
-        }
-        return ValidationResult.success();
+    private static long bit(int field) {
+        return Long.MIN_VALUE >>> (field - 1);
     }
 
-    private ValidationResult validateDateTime(ISOMsg msg) {
-        if (!msg.hasField(7)) {
-            return ValidationResult.fail(
-                    ResponseCode.FORMAT_ERROR,
-                    "Missing Transmission DateTime",
-                    "DateTime"
-            );
+    private static boolean isDigits(String value, int minLength, int maxLength) {
+        int length = value.length();
+        if (length < minLength || length > maxLength) {
+            return false;
         }
-        return ValidationResult.success();
-    }
-
-    private ValidationResult validateTerminalId(ISOMsg msg) {
-        if (!msg.hasField(41)) {
-            return ValidationResult.fail(
-                    ResponseCode.FORMAT_ERROR,
-                    "Missing Terminal ID",
-                    "TerminalID"
-            );
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
         }
-        return ValidationResult.success();
-    }
-
-    private boolean isValidMTI(String mti) {
-        return mti != null && mti.matches("\\d{4}") &&
-                (mti.startsWith("01") || mti.startsWith("02"));
-    }
-
-    private boolean isValidPAN(String pan) {
-        return pan != null && pan.matches("\\d{13,19}");
-    }
-
-    private String maskPAN(String pan) {
-        if (pan == null || pan.length() < 10) return "****";
-        return pan.substring(0, 6) + "******" + pan.substring(pan.length() - 4);
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,30 @@
+package com.paymentswitch.payment_switch.validator;
+
+import com.paymentswitch.payment_switch.model.ResponseCode;
+
+import java.util.List;
+import java.util.Map;
+
+// Request rules: accepted message classes (first two MTI digits) and their mandatory fields, in check order
+final class ValidationRules {
+
+    private static final List<FieldRule> FINANCIAL = List.of(
+            FieldRule.digits(2, "PAN", ResponseCode.INVALID_CARD, "Missing Primary Account Number",
+                    13, 19, "Invalid PAN format: ", true),
+            FieldRule.required(3, "ProcessingCode", ResponseCode.FORMAT_ERROR, "Missing Processing Code"),
+            // Amounts are read as long minor units straight from these digits
+            FieldRule.digits(4, "Amount", ResponseCode.INVALID_AMOUNT, "Missing Transaction Amount",
+                    12, 12, "Invalid amount: ", false),
+            FieldRule.required(11, "STAN", ResponseCode.FORMAT_ERROR, "Missing STAN"),
+            FieldRule.required(7, "DateTime", ResponseCode.FORMAT_ERROR, "Missing Transmission DateTime"),
+            FieldRule.required(41, "TerminalID", ResponseCode.FORMAT_ERROR, "Missing Terminal ID")
+    );
+
+    static final Map<String, List<FieldRule>> BY_MESSAGE_CLASS = Map.of(
+            "01", FINANCIAL, // authorization
+            "02", FINANCIAL  // financial
+    );
+
+    private ValidationRules() {
+    }
+}
@@ -0,0 +1,188 @@
+package com.paymentswitch.payment_switch.velocity;
+
+import com.paymentswitch.payment_switch.model.Amounts;
+import com.paymentswitch.payment_switch.time.CoarseClock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Withdrawal and purchase amounts each card has spent in the current business day, against daily limits in major
+ * units ({@code switch.limits.daily}). An amount is {@link #reserve reserved} before the issuer posts it and
+ * {@link #release released} if the posting fails or the transaction is reversed the same business day.
+ * <p>
+ * Cards take slots of preallocated arrays (64-bit PAN hash, business day, two amounts: 28 bytes), hashed to
+ * blocks of {@link SlidingWindowCounter#BLOCK} slots under one of {@code stripes} locks, so memory is fixed at
+ * {@code capacity} cards. A slot from an earlier business day is free; a block full of cards that spent today
+ * evicts the one that spent least. Amounts are minor units of the transaction currency, a card is assumed to
+ * transact in one currency.
+ */
+@Component
+public class DailyLimits {
+
+    public static final int WITHDRAWAL = 0;
+    public static final int PURCHASE = 1;
+
+    private static final int KINDS = 2;
+    private static final int BLOCK = SlidingWindowCounter.BLOCK;
+
+    private final long[] limits = new long[KINDS];
+    private final int cutoffSecond;
+    private final CoarseClock clock;
+    private final int blockMask;
+    private final int stripeMask;
+    private final long[] keys;
+    private final int[] days;
+    private final long[] spent;
+    private final StampedLock[] locks;
+    private final LongAdder evictions = new LongAdder();
+
+    @Autowired
+    public DailyLimits(@Value("${switch.limits.daily.withdrawal:50000}") long withdrawalLimit,
+                       @Value("${switch.limits.daily.purchase:200000}") long purchaseLimit,
+                       @Value("${switch.limits.daily.cutoff:00:00}") String cutoff,
+                       @Value("${switch.limits.daily.capacity:1048576}") int capacity,
+                       @Value("${switch.limits.daily.stripes:256}") int stripes,
+                       CoarseClock clock) {
+        if (Integer.bitCount(capacity) != 1 || capacity < BLOCK || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("switch.limits.daily capacity and stripes must be powers of two");
+        }
+        this.limits[WITHDRAWAL] = withdrawalLimit;
+        this.limits[PURCHASE] = purchaseLimit;
+        this.cutoffSecond = LocalTime.parse(cutoff).toSecondOfDay();
+        this.clock = clock;
+        this.blockMask = capacity / BLOCK - 1;
+        this.stripeMask = stripes - 1;
+        this.keys = new long[capacity];
+        this.days = new int[capacity];
+        this.spent = new long[capacity * KINDS];
+        this.locks = new StampedLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new StampedLock();
+        }
+    }
+
+    // Adds amount to the card's total for today unless that takes it over the limit; false when it would
+    public boolean reserve(String pan, int kind, long amount, int exponent) {
+        long limit = limits[kind];
+        if (limit < 0) {
+            return true;
+        }
+        long limitMinor = Amounts.minorUnits(limit, exponent);
+        int day = businessDay();
+        long hash = SlidingWindowCounter.hash(pan);
+        int block = (int) hash & blockMask;
+        StampedLock lock = locks[block & stripeMask];
+        long stamp = lock.writeLock();
+        try {
+            int index = slot(block * BLOCK, hash, day) * KINDS + kind;
+            if (amount > limitMinor - spent[index]) {
+                return false;
+            }
+            spent[index] += amount;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Gives back a reserved amount; a reservation of an earlier business day is already forgotten
+    public void release(String pan, int kind, long amount) {
+        if (limits[kind] < 0) {
+            return;
+        }
+        int day = businessDay();
+        long hash = SlidingWindowCounter.hash(pan);
+        int block = (int) hash & blockMask;
+        StampedLock lock = locks[block & stripeMask];
+        long stamp = lock.writeLock();
+        try {
+            for (int slot = block * BLOCK; slot < block * BLOCK + BLOCK; slot++) {
+                if (keys[slot] == hash && days[slot] == day) {
+                    int index = slot * KINDS + kind;
+                    spent[index] = Math.max(0, spent[index] - amount);
+                    return;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Spent today, in minor units
+    public long spent(String pan, int kind) {
+        int day = businessDay();
+        long hash = SlidingWindowCounter.hash(pan);
+        int block = (int) hash & blockMask;
+        StampedLock lock = locks[block & stripeMask];
+        long stamp = lock.readLock();
+        try {
+            for (int slot = block * BLOCK; slot < block * BLOCK + BLOCK; slot++) {
+                if (keys[slot] == hash && days[slot] == day) {
+                    return spent[slot * KINDS + kind];
+                }
+            }
+            return 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    // Epoch day the business day started on: days roll over at the cutoff, not at midnight
+    int businessDay() {
+        LocalDateTime now = clock.now();
+        long day = now.toLocalDate().toEpochDay();
+        return (int) (now.toLocalTime().toSecondOfDay() < cutoffSecond ? day - 1 : day);
+    }
+
+    // The card's slot for today; a new card takes a slot of an earlier day, or evicts the smallest spender
+    private int slot(int first, long hash, int day) {
+        int free = -1;
+        int smallest = first;
+        for (int slot = first; slot < first + BLOCK; slot++) {
+            if (keys[slot] == hash) {
+                if (days[slot] != day) {
+                    reset(slot, day);
+                }
+                return slot;
+            }
+            if (free < 0 && days[slot] != day) {
+                free = slot;
+            }
+            if (total(slot) < total(smallest)) {
+                smallest = slot;
+            }
+        }
+        if (free < 0) {
+            free = smallest;
+            evictions.increment();
+        }
+        keys[free] = hash;
+        reset(free, day);
+        return free;
+    }
+
+    private void reset(int slot, int day) {
+        days[slot] = day;
+        for (int kind = 0; kind < KINDS; kind++) {
+            spent[slot * KINDS + kind] = 0;
+        }
+    }
+
+    private long total(int slot) {
+        long total = 0;
+        for (int kind = 0; kind < KINDS; kind++) {
+            total += spent[slot * KINDS + kind];
+        }
+        return total;
+    }
+}
@@ -0,0 +1,154 @@
+package com.paymentswitch.payment_switch.velocity;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Events per key within a sliding window, for one {@link VelocityRule}.
+ * <p>
+ * The window is split into {@code buckets} buckets and slides one bucket at a time. A key takes one slot of
+ * preallocated arrays: its 64-bit hash, the bucket it last counted in and a 16-bit count per bucket, 24 bytes with
+ * the default 6 buckets and no object per key. Keys hash to a block of {@link #BLOCK} slots, all guarded by the
+ * same one of {@code stripes} locks; a key that has been idle for a whole window frees its slot for the next key
+ * of the block, and when a block is full the least recently used key is evicted (its count is forgotten).
+ */
+public final class SlidingWindowCounter {
+
+    static final int BLOCK = 8;
+
+    private final int limit;
+    private final int buckets;
+    private final long bucketNanos;
+    private final long origin;
+    private final int blockMask;
+    private final int stripeMask;
+    private final long[] keys;
+    private final int[] epochs;
+    private final char[] counts;
+    private final StampedLock[] locks;
+    private final LongAdder evictions = new LongAdder();
+
+    public SlidingWindowCounter(int limit, Duration window, int buckets, int capacity, int stripes) {
+        if (Integer.bitCount(capacity) != 1 || capacity < BLOCK || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Velocity capacity and stripes must be powers of two");
+        }
+        if (limit < 1 || limit > VelocityRule.MAX_LIMIT || buckets < 1) {
+            throw new IllegalArgumentException("Velocity limit must be 1-" + VelocityRule.MAX_LIMIT
+                    + " with at least one bucket");
+        }
+        this.limit = limit;
+        this.buckets = buckets;
+        this.bucketNanos = Math.max(1, window.toNanos() / buckets);
+        // Epoch 0, that of empty slots, is a whole window before the first real one
+        this.origin = System.nanoTime() - buckets * bucketNanos;
+        this.blockMask = capacity / BLOCK - 1;
+        this.stripeMask = stripes - 1;
+        this.keys = new long[capacity];
+        this.epochs = new int[capacity];
+        this.counts = new char[capacity * buckets];
+        this.locks = new StampedLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new StampedLock();
+        }
+    }
+
+    // Counts one event for key unless it already had limit of them in the window; false when refused
+    public boolean tryAcquire(String key, long nanoTime) {
+        long hash = hash(key);
+        int block = (int) hash & blockMask;
+        int epoch = (int) ((nanoTime - origin) / bucketNanos);
+        StampedLock lock = locks[block & stripeMask];
+        long stamp = lock.writeLock();
+        try {
+            int slot = find(block * BLOCK, hash, epoch);
+            int base = slot * buckets;
+            int elapsed = epoch - epochs[slot];
+            if (elapsed >= buckets) {
+                for (int b = 0; b < buckets; b++) {
+                    counts[base + b] = 0;
+                }
+            } else {
+                for (int e = epochs[slot] + 1; e <= epoch; e++) {
+                    counts[base + e % buckets] = 0;
+                }
+            }
+            epochs[slot] = epoch;
+            int total = 0;
+            for (int b = 0; b < buckets; b++) {
+                total += counts[base + b];
+            }
+            if (total >= limit) {
+                return false;
+            }
+            counts[base + epoch % buckets]++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Takes back an event counted at nanoTime, for a transaction a later rule declined
+    public void release(String key, long nanoTime) {
+        long hash = hash(key);
+        int block = (int) hash & blockMask;
+        int epoch = (int) ((nanoTime - origin) / bucketNanos);
+        StampedLock lock = locks[block & stripeMask];
+        long stamp = lock.writeLock();
+        try {
+            for (int slot = block * BLOCK; slot < block * BLOCK + BLOCK; slot++) {
+                // Gone if evicted, or its bucket reused once the window slid past it
+                if (keys[slot] == hash && epochs[slot] - epoch < buckets) {
+                    int bucket = slot * buckets + epoch % buckets;
+                    if (counts[bucket] > 0) {
+                        counts[bucket]--;
+                    }
+                    return;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    // The key's slot in the block; a new key takes an empty or idle slot, or evicts the least recently used one
+    private int find(int first, long hash, int epoch) {
+        int free = -1;
+        int oldest = first;
+        for (int slot = first; slot < first + BLOCK; slot++) {
+            if (keys[slot] == hash) {
+                return slot;
+            }
+            if (free < 0 && epoch - epochs[slot] >= buckets) {
+                free = slot;
+            }
+            if (epochs[slot] < epochs[oldest]) {
+                oldest = slot;
+            }
+        }
+        if (free < 0) {
+            free = oldest;
+            evictions.increment();
+        }
+        keys[free] = hash;
+        // A whole window ago, so the caller starts it from zero
+        epochs[free] = epoch - buckets;
+        return free;
+    }
+
+    // FNV-1a over the characters, then a murmur finalizer so the low bits pick blocks evenly; 0 marks empty slots
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+}
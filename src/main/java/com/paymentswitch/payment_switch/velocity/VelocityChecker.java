@@ -0,0 +1,103 @@
+package com.paymentswitch.payment_switch.velocity;
+
+import com.paymentswitch.payment_switch.diagnostics.TransactionTrace;
+import com.paymentswitch.payment_switch.metrics.Stage;
+import com.paymentswitch.payment_switch.model.ProcessingCode;
+import com.paymentswitch.payment_switch.model.ResponseCode;
+import com.paymentswitch.payment_switch.model.TransactionRequest;
+import com.paymentswitch.payment_switch.model.ValidationResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Velocity stage between routing and the issuer call: a transaction is declined with 65 when its card or
+ * terminal already reached the limit of a matching {@link VelocityRule}. Every transaction let through counts,
+ * whatever the issuer answers; rules are checked in order and the first one at its limit declines, taking back the
+ * counts of the rules before it, so a declined transaction counts against none of them.
+ */
+@Slf4j
+@Component
+public class VelocityChecker {
+
+    private record Check(VelocityRule rule, SlidingWindowCounter counter, Counter declines,
+                         ValidationResult.Failure failure) {
+    }
+
+    private final Check[] checks;
+
+    public VelocityChecker(@Value("${switch.velocity.enabled:true}") boolean enabled,
+                           @Value("${switch.velocity.rules:}") String[] rules,
+                           @Value("${switch.velocity.capacity:1048576}") int capacity,
+                           @Value("${switch.velocity.buckets:6}") int buckets,
+                           @Value("${switch.velocity.stripes:256}") int stripes,
+                           MeterRegistry registry) {
+        List<Check> built = new ArrayList<>();
+        if (enabled) {
+            for (String spec : rules) {
+                if (spec.isBlank()) {
+                    continue;
+                }
+                VelocityRule rule = VelocityRule.parse(spec);
+                SlidingWindowCounter counter = new SlidingWindowCounter(rule.max(), rule.window(), buckets, capacity,
+                        stripes);
+                Counter declines = Counter.builder("switch.velocity.declines")
+                        .description("Transactions declined with 65 by a velocity rule")
+                        .tag("rule", rule.toString())
+                        .register(registry);
+                FunctionCounter.builder("switch.velocity.evictions", counter, SlidingWindowCounter::evictions)
+                        .description("Active keys evicted from a full velocity table, their counts forgotten")
+                        .tag("rule", rule.toString())
+                        .register(registry);
+                built.add(new Check(rule, counter, declines, new ValidationResult.Failure(
+                        ResponseCode.EXCEEDS_FREQUENCY_LIMIT, "Exceeds frequency limit " + rule,
+                        rule.scope() == VelocityRule.Scope.PAN ? "PAN" : "TerminalID")));
+            }
+        }
+        this.checks = built.toArray(new Check[0]);
+        log.info("Velocity rules: {}", built.isEmpty() ? "none" : built.stream().map(Check::rule).toList());
+    }
+
+    public ValidationResult check(TransactionRequest request, ProcessingCode code) {
+        if (checks.length == 0) {
+            return ValidationResult.success();
+        }
+        TransactionTrace.beginStage(Stage.VELOCITY);
+        try {
+            long now = System.nanoTime();
+            for (int i = 0; i < checks.length; i++) {
+                Check check = checks[i];
+                String key = key(check.rule(), request, code);
+                if (key != null && !check.counter().tryAcquire(key, now)) {
+                    for (int counted = 0; counted < i; counted++) {
+                        String countedKey = key(checks[counted].rule(), request, code);
+                        if (countedKey != null) {
+                            checks[counted].counter().release(countedKey, now);
+                        }
+                    }
+                    check.declines().increment();
+                    return check.failure();
+                }
+            }
+            return ValidationResult.success();
+        } finally {
+            TransactionTrace.endStage(Stage.VELOCITY);
+        }
+    }
+
+    // What the rule counts the transaction against, null when it does not apply
+    private static String key(VelocityRule rule, TransactionRequest request, ProcessingCode code) {
+        if (!rule.appliesTo(code)) {
+            return null;
+        }
+        return rule.scope() == VelocityRule.Scope.PAN
+                ? request.primaryAccountNumber()
+                : request.cardAcceptorTerminalId();
+    }
+}
@@ -0,0 +1,49 @@
+package com.paymentswitch.payment_switch.velocity;
+
+import com.paymentswitch.payment_switch.model.ProcessingCode;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+
+/**
+ * At most {@code max} transactions of a family per card or terminal within {@code window}, written
+ * {@code scope:family:max/window} in {@code switch.velocity.rules}, e.g. {@code pan:withdrawal:5/10m}.
+ * Families are the processing code types (withdrawal, purchase, balance_inquiry, transfer, mini_statement) or
+ * {@code any}.
+ */
+public record VelocityRule(Scope scope, String family, int max, Duration window) {
+
+    // Counters are 16 bit per bucket
+    static final int MAX_LIMIT = Character.MAX_VALUE;
+
+    public enum Scope {
+        PAN, TERMINAL
+    }
+
+    public VelocityRule {
+        if (max < 1 || max > MAX_LIMIT) {
+            throw new IllegalArgumentException("Velocity limit must be 1-" + MAX_LIMIT + ": " + max);
+        }
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Velocity window must be positive: " + window);
+        }
+    }
+
+    public static VelocityRule parse(String spec) {
+        String[] parts = spec.strip().split("[:/]");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Expected scope:family:max/window, e.g. pan:withdrawal:5/10m: " + spec);
+        }
+        return new VelocityRule(Scope.valueOf(parts[0].strip().toUpperCase()), parts[1].strip(),
+                Integer.parseInt(parts[2].strip()), DurationStyle.detectAndParse(parts[3].strip()));
+    }
+
+    public boolean appliesTo(ProcessingCode code) {
+        return family.equals("any") || family.equals(code.family());
+    }
+
+    @Override
+    public String toString() {
+        return scope.name().toLowerCase() + ':' + family + ':' + max + '/' + window.toString().substring(2).toLowerCase();
+    }
+}
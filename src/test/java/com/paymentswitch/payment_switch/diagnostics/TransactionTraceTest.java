@@ -0,0 +1,93 @@
+package com.paymentswitch.payment_switch.diagnostics;
+
+import com.paymentswitch.payment_switch.metrics.Stage;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransactionTraceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void slowTransactionIsRecordedWithItsStages() throws Exception {
+        List<RecordedEvent> events = record(Duration.ofMillis(5), () -> transaction(10));
+
+        RecordedEvent transaction = only(events, TransactionEvent.NAME);
+        assertThat(transaction.getString("stan")).isEqualTo("000102");
+        assertThat(transaction.getString("terminalId")).isEqualTo("ATM00001");
+        assertThat(transaction.getString("processingCode")).isEqualTo("010000");
+        assertThat(transaction.getString("responseCode")).isEqualTo("00");
+        assertThat(transaction.getDuration()).isGreaterThanOrEqualTo(Duration.ofMillis(10));
+
+        List<RecordedEvent> stages = events.stream()
+                .filter(event -> event.getEventType().getName().equals(StageEvent.NAME))
+                .toList();
+        assertThat(stages).extracting(event -> event.getString("stage"))
+                .containsExactlyInAnyOrder("validate", "issuer_call");
+        assertThat(stages).allSatisfy(stage -> {
+            assertThat(stage.getLong("transactionId")).isEqualTo(transaction.getLong("transactionId"));
+            assertThat(stage.getString("stan")).isEqualTo("000102");
+        });
+        // No event type has a field that could hold the PAN
+        assertThat(events).allSatisfy(event -> assertThat(event.getFields())
+                .noneMatch(field -> field.getName().toLowerCase().contains("pan")
+                        || field.getName().toLowerCase().contains("account")));
+    }
+
+    @Test
+    void transactionsBelowTheThresholdLeaveNoEvents() throws Exception {
+        List<RecordedEvent> events = record(Duration.ofSeconds(5), () -> transaction(0));
+
+        assertThat(events).noneMatch(event -> event.getEventType().getName().startsWith("com.paymentswitch."));
+    }
+
+    private static void transaction(long issuerMillis) {
+        TransactionTrace trace = TransactionTrace.start();
+        assertThat(trace).isNotNull();
+        TransactionTrace.beginStage(Stage.VALIDATE);
+        TransactionTrace.endStage(Stage.VALIDATE);
+        TransactionTrace.beginStage(Stage.ISSUER_CALL);
+        sleep(issuerMillis);
+        TransactionTrace.endStage(Stage.ISSUER_CALL);
+        TransactionTrace.finish(trace, "0200", "000102", "ATM00001", "010000", "00");
+    }
+
+    private List<RecordedEvent> record(Duration threshold, Runnable work) throws Exception {
+        Path file = dir.resolve("trace.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(TransactionEvent.NAME).withThreshold(threshold);
+            recording.enable(StageEvent.NAME).withThreshold(Duration.ZERO);
+            recording.start();
+            work.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .toList();
+        assertThat(matching).hasSize(1);
+        return matching.getFirst();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.paymentswitch.payment_switch.framing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LengthPrefixedFrameSerializerTest {
+
+    @Test
+    void idleReadersHoldNoPooledBuffer() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool(1, 2 + 2048, false);
+        LengthPrefixedFrameSerializer framing = new LengthPrefixedFrameSerializer(LengthHeaderFormat.BINARY_2, 2048,
+                pool);
+
+        // Two connections waiting for their next frame
+        PipedOutputStream terminal = new PipedOutputStream();
+        PipedInputStream connection = new PipedInputStream(terminal);
+        CompletableFuture<byte[]> next = new CompletableFuture<>();
+        Thread.ofVirtual().start(() -> {
+            try {
+                next.complete(framing.deserialize(connection));
+            } catch (Exception e) {
+                next.completeExceptionally(e);
+            }
+        });
+        PipedInputStream idle = new PipedInputStream(new PipedOutputStream());
+        Thread.ofVirtual().start(() -> {
+            try {
+                framing.deserialize(idle);
+            } catch (Exception e) {
+                // closed at the end of the test
+            }
+        });
+        Thread.sleep(100);
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        framing.serialize("0200".getBytes(), written);
+        assertThat(pool.misses()).isZero();
+        assertThat(written.toByteArray()).containsExactly(0, 4, '0', '2', '0', '0');
+
+        terminal.write(written.toByteArray());
+        terminal.flush();
+        assertThat(next.get()).containsExactly('0', '2', '0', '0');
+        idle.close();
+    }
+
+    @Test
+    void readsEveryHeaderFormatAByteAtATime() throws Exception {
+        for (LengthHeaderFormat format : LengthHeaderFormat.values()) {
+            LengthPrefixedFrameSerializer framing = new LengthPrefixedFrameSerializer(format, 2048,
+                    new FrameBufferPool(1, format.headerLength() + 2048, false));
+            byte[] payload = new byte[1234];
+            ByteArrayOutputStream written = new ByteArrayOutputStream();
+            framing.serialize(payload, written);
+            assertThat(framing.deserialize(new ByteArrayInputStream(written.toByteArray()))).hasSize(1234);
+        }
+        LengthPrefixedFrameSerializer ascii = new LengthPrefixedFrameSerializer(LengthHeaderFormat.ASCII_4, 2048,
+                new FrameBufferPool(1, 4 + 2048, false));
+        assertThatThrownBy(() -> ascii.deserialize(new ByteArrayInputStream("01x40200".getBytes())))
+                .isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,91 @@
+package com.paymentswitch.payment_switch.handler;
+
+import com.paymentswitch.payment_switch.handler.AdaptiveConcurrencyLimiter.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final int WINDOW = 100;
+    private static final long FAST = Duration.ofMillis(1).toNanos();
+    private static final long SLOW = Duration.ofMillis(50).toNanos();
+
+    @Test
+    void shedsTransactionsBeforeReversalsAndNeverNetworkManagement() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10);
+
+        assertThat(AdaptiveConcurrencyLimiter.priority("0200".getBytes())).isEqualTo(Priority.TRANSACTION);
+        assertThat(AdaptiveConcurrencyLimiter.priority("0420".getBytes())).isEqualTo(Priority.REVERSAL);
+        assertThat(AdaptiveConcurrencyLimiter.priority("0800".getBytes())).isEqualTo(Priority.NETWORK);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire(Priority.TRANSACTION)).isTrue();
+        }
+        assertThat(limiter.tryAcquire(Priority.TRANSACTION)).isFalse();
+        // 50% headroom for reversals
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire(Priority.REVERSAL)).isTrue();
+        }
+        assertThat(limiter.tryAcquire(Priority.REVERSAL)).isFalse();
+        assertThat(limiter.tryAcquire(Priority.NETWORK)).isTrue();
+
+        assertThat(limiter.inFlight()).isEqualTo(16);
+        assertThat(limiter.shed(Priority.TRANSACTION)).isEqualTo(1);
+        assertThat(limiter.shed(Priority.REVERSAL)).isEqualTo(1);
+        assertThat(limiter.shed(Priority.NETWORK)).isZero();
+
+        limiter.release(FAST);
+        limiter.release(FAST);
+        assertThat(limiter.tryAcquire(Priority.TRANSACTION)).isFalse();
+        assertThat(limiter.tryAcquire(Priority.REVERSAL)).isTrue();
+
+        // Admitted, then no worker could take it
+        limiter.reject(Priority.REVERSAL);
+        assertThat(limiter.inFlight()).isEqualTo(14);
+        assertThat(limiter.shed(Priority.REVERSAL)).isEqualTo(2);
+    }
+
+    @Test
+    void backsOffWhenLatencyRisesAndGrowsBackUnderLoad() {
+        AdaptiveConcurrencyLimiter limiter = limiter(100);
+
+        // Windows averaging over the 20ms target: x0.5 each, down to the minimum
+        runWindows(limiter, 1, 100, SLOW);
+        assertThat(limiter.limit()).isEqualTo(50);
+        runWindows(limiter, 5, 100, SLOW);
+        assertThat(limiter.limit()).isEqualTo(4);
+        assertThat(limiter.decreases()).isEqualTo(5);
+
+        // Fast again: +1 per window while the limit is in use
+        runWindows(limiter, 6, 100, FAST);
+        assertThat(limiter.limit()).isEqualTo(10);
+        assertThat(limiter.increases()).isEqualTo(6);
+
+        // Fast but nearly idle: no evidence more would help
+        runWindows(limiter, 3, 1, FAST);
+        assertThat(limiter.limit()).isEqualTo(10);
+    }
+
+    private static AdaptiveConcurrencyLimiter limiter(int initialLimit) {
+        return new AdaptiveConcurrencyLimiter(true, initialLimit, 4, 1000, Duration.ofMillis(20), WINDOW, 0.5, 50);
+    }
+
+    // Each window: up to `concurrency` requests kept in flight for WINDOW completions, all done at its end
+    private static void runWindows(AdaptiveConcurrencyLimiter limiter, int windows, int concurrency, long latency) {
+        for (int w = 0; w < windows; w++) {
+            int held = 0;
+            while (held < concurrency && limiter.tryAcquire(Priority.TRANSACTION)) {
+                held++;
+            }
+            for (int done = 0; done < WINDOW; done++) {
+                limiter.release(latency);
+                if (done < WINDOW - held) {
+                    assertThat(limiter.tryAcquire(Priority.TRANSACTION)).isTrue();
+                }
+            }
+        }
+    }
+}
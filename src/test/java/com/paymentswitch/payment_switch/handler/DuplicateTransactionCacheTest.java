@@ -0,0 +1,85 @@
+package com.paymentswitch.payment_switch.handler;
+
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jpos.iso.ISOMsg;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DuplicateTransactionCacheTest {
+
+    private static final byte[] RESPONSE = {0x30, 0x32, 0x31, 0x30};
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final DuplicateTransactionCache cache = new DuplicateTransactionCache(true, Duration.ofSeconds(60),
+            DataSize.ofMegabytes(1), Duration.ofSeconds(5), registry, nanos::get);
+
+    @Test
+    void repeatsGetTheOriginalResponseWithinTheWindow() {
+        DuplicateTransactionCache.Claim original = cache.claim(request("0200", "000123"));
+        assertThat(original).isInstanceOf(DuplicateTransactionCache.Claim.Original.class);
+        cache.complete(original, RESPONSE, "00");
+
+        assertThat(cache.claim(request("0200", "000123")))
+                .isEqualTo(new DuplicateTransactionCache.Claim.Repeat(RESPONSE, "00"));
+        assertThat(cache.claim(request("0201", "000123")))
+                .isInstanceOf(DuplicateTransactionCache.Claim.Repeat.class);
+        assertThat(cache.claim(request("0220", "000123")))
+                .isInstanceOf(DuplicateTransactionCache.Claim.Original.class);
+        assertThat(cache.claim(request("0200", "000124")))
+                .isInstanceOf(DuplicateTransactionCache.Claim.Original.class);
+        assertThat(registry.counter("switch.duplicates", "result", "hit").count()).isEqualTo(2);
+        assertThat(registry.counter("switch.duplicates", "result", "miss").count()).isEqualTo(3);
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        assertThat(cache.claim(request("0201", "000123")))
+                .isInstanceOf(DuplicateTransactionCache.Claim.Original.class);
+    }
+
+    @Test
+    void repeatOfAnInFlightRequestWaitsForIt() throws Exception {
+        DuplicateTransactionCache.Claim original = cache.claim(request("0200", "000200"));
+        CompletableFuture<DuplicateTransactionCache.Claim> repeat =
+                CompletableFuture.supplyAsync(() -> cache.claim(request("0201", "000200")));
+        Thread.sleep(50);
+        assertThat(repeat).isNotDone();
+        cache.complete(original, RESPONSE, "51");
+        assertThat(repeat.get(5, TimeUnit.SECONDS))
+                .isEqualTo(new DuplicateTransactionCache.Claim.Repeat(RESPONSE, "51"));
+
+        // An abandoned original (system error) leaves the next attempt to be processed
+        DuplicateTransactionCache.Claim failed = cache.claim(request("0200", "000201"));
+        cache.abandon(failed);
+        assertThat(cache.claim(request("0201", "000201")))
+                .isInstanceOf(DuplicateTransactionCache.Claim.Original.class);
+    }
+
+    @Test
+    void memoryCeilingDropsTheOldestEntries() {
+        for (int i = 0; i < 20_000; i++) {
+            cache.complete(cache.claim(request("0200", String.format("%06d", i))), new byte[100], "00");
+        }
+        assertThat(cache.bytes()).isLessThanOrEqualTo(DataSize.ofMegabytes(1).toBytes());
+        assertThat(cache.claim(request("0200", "000000")))
+                .isInstanceOf(DuplicateTransactionCache.Claim.Original.class);
+        assertThat(cache.claim(request("0200", "019999")))
+                .isInstanceOf(DuplicateTransactionCache.Claim.Repeat.class);
+    }
+
+    private static IsoMessageView request(String mti, String stan) {
+        ISOMsg msg = new ISOMsg(mti);
+        msg.set(7, "1217101500");
+        msg.set(11, stan);
+        msg.set(32, "123456");
+        msg.set(41, "ATM00001");
+        return IsoMessageView.of(msg);
+    }
+}
@@ -0,0 +1,248 @@
+package com.paymentswitch.payment_switch.iso;
+
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOFieldPackager;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.packager.GenericPackager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Differential test: the compiled codec must produce and accept exactly what jPOS GenericPackager does
+class CompiledIsoCodecTest {
+
+    private static final int MESSAGES = 20_000;
+
+    private static GenericPackager packager;
+    private static JposIsoCodec jpos;
+    private static CompiledIsoCodec compiled;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        packager = new GenericPackager(new ClassPathResource("packager/iso87ascii.xml").getInputStream());
+        jpos = new JposIsoCodec(packager);
+        try (InputStream xml = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            compiled = new CompiledIsoCodec(PackagerDefinition.load(xml), packager);
+        }
+    }
+
+    @Test
+    void packsAndUnpacksRandomMessagesLikeJpos() throws Exception {
+        Random random = new Random(8583);
+        for (int i = 0; i < MESSAGES; i++) {
+            ISOMsg msg = randomMessage(random);
+
+            byte[] expected = jpos.pack((ISOMsg) msg.clone());
+            byte[] actual = compiled.pack((ISOMsg) msg.clone());
+            assertThat(actual).as("packed bytes of %s", describe(msg)).isEqualTo(expected);
+
+            assertSameFields(jpos.unpack(expected), compiled.unpack(expected));
+        }
+    }
+
+    @Test
+    void packsAnMtiOnlyMessageLikeJpos() throws Exception {
+        ISOMsg msg = new ISOMsg();
+        msg.setMTI("0800");
+
+        byte[] expected = jpos.pack((ISOMsg) msg.clone());
+        assertThat(compiled.pack((ISOMsg) msg.clone())).isEqualTo(expected);
+        // No bitmap is written, so neither reads it back
+        assertThat(unpackOrNull(jpos, expected)).isNull();
+        assertThat(unpackOrNull(compiled, expected)).isNull();
+
+        // An explicit empty bitmap, as left by unpacking one, packs the same way
+        ISOMsg unpacked = jpos.unpack("08000000000000000000".getBytes());
+        assertSameFields(unpacked, compiled.unpack("08000000000000000000".getBytes()));
+        assertThat(compiled.pack((ISOMsg) unpacked.clone())).isEqualTo(jpos.pack((ISOMsg) unpacked.clone()));
+    }
+
+    @Test
+    void rejectsOverlongValuesLikeJpos() throws Exception {
+        Random random = new Random(4217);
+        for (int field = 2; field <= 128; field++) {
+            ISOFieldPackager fieldPackager = packager.getFieldPackager(field);
+            if (fieldPackager == null) {
+                continue;
+            }
+            ISOMsg msg = new ISOMsg();
+            msg.setMTI("0200");
+            if (isBinary(fieldPackager)) {
+                msg.set(field, randomBytes(random, fieldPackager.getLength() + 1));
+            } else {
+                msg.set(field, randomDigits(random, fieldPackager.getLength() + 1));
+            }
+            assertThatThrownBy(() -> jpos.pack((ISOMsg) msg.clone())).isInstanceOf(ISOException.class);
+            assertThatThrownBy(() -> compiled.pack((ISOMsg) msg.clone())).isInstanceOf(ISOException.class);
+        }
+    }
+
+    @Test
+    void agreesWithJposOnTruncatedAndCorruptedInput() throws Exception {
+        Random random = new Random(96);
+        for (int i = 0; i < MESSAGES; i++) {
+            byte[] packed = jpos.pack(randomMessage(random));
+            byte[] damaged = random.nextBoolean()
+                    ? Arrays.copyOf(packed, random.nextInt(packed.length))
+                    : corrupt(random, packed);
+
+            ISOMsg expected = unpackOrNull(jpos, damaged);
+            ISOMsg actual = unpackOrNull(compiled, damaged);
+            if (expected == null) {
+                assertThat(actual).as("compiled accepted what jPOS rejected").isNull();
+            } else {
+                assertThat(actual).as("compiled rejected what jPOS accepted").isNotNull();
+                assertSameFields(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    void lazyViewReadsLikeFullUnpack() throws Exception {
+        Random random = new Random(200);
+        for (int i = 0; i < MESSAGES; i++) {
+            byte[] packed = jpos.pack(randomMessage(random));
+            byte[] input = random.nextInt(4) == 0 ? corrupt(random, packed) : packed;
+
+            ISOMsg expected = unpackOrNull(jpos, input);
+            IsoMessageView view = readOrNull(compiled, input);
+            if (expected == null) {
+                assertThat(view).as("lazy view accepted what jPOS rejected").isNull();
+                continue;
+            }
+            assertThat(view).as("lazy view rejected what jPOS accepted").isNotNull();
+            assertThat(view.getMTI()).isEqualTo(expected.getMTI());
+            // Read in random order to exercise the field index
+            int start = random.nextInt(129);
+            for (int n = 0; n <= 128; n++) {
+                int field = (start + n) % 129;
+                assertThat(view.hasField(field)).as("has field %d", field).isEqualTo(expected.hasField(field));
+                assertThat(view.getString(field)).as("field %d", field).isEqualTo(expected.getString(field));
+                String value = expected.getString(field);
+                if (field >= 2 && value != null && value.matches("\\d{1,18}")
+                        && !isBinary(packager.getFieldPackager(field))) {
+                    assertThat(view.getLong(field)).as("field %d as long", field).isEqualTo(Long.parseLong(value));
+                }
+            }
+            assertSameFields(expected, view.toISOMsg());
+        }
+    }
+
+    private static ISOMsg randomMessage(Random random) throws ISOException {
+        ISOMsg msg = new ISOMsg();
+        msg.setMTI(randomDigits(random, 4));
+        for (int field = 2; field <= 128; field++) {
+            ISOFieldPackager fieldPackager = packager.getFieldPackager(field);
+            if (fieldPackager == null || random.nextInt(10) >= 4) {
+                continue;
+            }
+            int maxLength = fieldPackager.getLength();
+            String type = fieldPackager.getClass().getSimpleName();
+            if (isBinary(fieldPackager)) {
+                msg.set(field, randomBytes(random, maxLength));
+            } else if (type.equals("IFA_NUMERIC") || type.equals("IFA_LLNUM")) {
+                msg.set(field, randomDigits(random, random.nextInt(maxLength + 1)));
+            } else {
+                msg.set(field, randomText(random, random.nextInt(maxLength + 1)));
+            }
+        }
+        return msg;
+    }
+
+    private static void assertSameFields(ISOMsg expected, ISOMsg actual) {
+        assertThat(actual.getMaxField()).isEqualTo(expected.getMaxField());
+        assertThat(uncheckedValue(actual.getComponent(-1))).as("bitmap").isEqualTo(uncheckedValue(expected.getComponent(-1)));
+        for (int field = 0; field <= 128; field++) {
+            ISOComponent want = expected.getComponent(field);
+            ISOComponent got = actual.getComponent(field);
+            if (want == null) {
+                assertThat(got).as("field %d", field).isNull();
+                continue;
+            }
+            assertThat(got).as("field %d", field).isNotNull();
+            assertThat(got.getClass()).as("field %d type", field).isEqualTo(want.getClass());
+            Object wantValue = uncheckedValue(want);
+            Object gotValue = uncheckedValue(got);
+            if (wantValue instanceof byte[] bytes) {
+                assertThat((byte[]) gotValue).as("field %d", field).isEqualTo(bytes);
+            } else {
+                assertThat(gotValue).as("field %d", field).isEqualTo(wantValue);
+            }
+        }
+    }
+
+    private static ISOMsg unpackOrNull(IsoCodec codec, byte[] data) {
+        try {
+            return codec.unpack(data);
+        } catch (ISOException e) {
+            return null;
+        }
+    }
+
+    private static IsoMessageView readOrNull(IsoCodec codec, byte[] data) {
+        try {
+            return codec.read(data);
+        } catch (ISOException e) {
+            return null;
+        }
+    }
+
+    private static byte[] corrupt(Random random, byte[] packed) {
+        byte[] copy = packed.clone();
+        copy[random.nextInt(copy.length)] = (byte) (random.nextBoolean() ? 'X' : '0' + random.nextInt(10));
+        return copy;
+    }
+
+    private static boolean isBinary(ISOFieldPackager fieldPackager) {
+        return fieldPackager.getClass().getSimpleName().equals("IFB_BINARY");
+    }
+
+    private static String randomDigits(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(chars);
+    }
+
+    // Printable ASCII with an occasional Latin-1 character
+    private static String randomText(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = random.nextInt(20) == 0 ? (char) (0xC0 + random.nextInt(0x3F)) : (char) (0x20 + random.nextInt(0x5F));
+        }
+        return new String(chars);
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static Object uncheckedValue(ISOComponent component) {
+        try {
+            return component.getValue();
+        } catch (ISOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String describe(ISOMsg msg) {
+        StringBuilder fields = new StringBuilder();
+        for (int field = 0; field <= 128; field++) {
+            if (msg.hasField(field)) {
+                fields.append(field).append(' ');
+            }
+        }
+        return "fields [" + fields.toString().trim() + "]";
+    }
+}
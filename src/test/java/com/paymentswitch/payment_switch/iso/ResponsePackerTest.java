@@ -0,0 +1,134 @@
+package com.paymentswitch.payment_switch.iso;
+
+import com.paymentswitch.payment_switch.model.ResponseCode;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.packager.GenericPackager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Spliced replies must be exactly what jPOS packs for the same fields
+class ResponsePackerTest {
+
+    private static GenericPackager packager;
+    private static CompiledIsoCodec compiled;
+    private static ResponsePacker responsePacker;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        packager = new GenericPackager(new ClassPathResource("packager/iso87ascii.xml").getInputStream());
+        try (InputStream xml = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            compiled = new CompiledIsoCodec(PackagerDefinition.load(xml), packager);
+        }
+        responsePacker = new ResponsePacker(compiled);
+    }
+
+    @Test
+    void splicesEchoedFieldsLikeJpos() throws Exception {
+        ISOMsg request = new ISOMsg("0200");
+        request.setPackager(packager);
+        request.set(2, "4111111111111111");
+        request.set(3, "010000");
+        request.set(4, "000000010000");
+        request.set(7, "1217101500");
+        request.set(11, "000102");
+        request.set(32, "123456");
+        request.set(41, "ATM00001");
+        request.set(43, "Test atm location 123 main st");
+        byte[] packed = request.pack();
+
+        ISOMsg expected = new ISOMsg("0210");
+        expected.setPackager(packager);
+        for (int field : new int[]{2, 3, 4, 7, 11, 32, 41}) {
+            expected.set(field, request.getString(field));
+        }
+        expected.set(37, "001123000001");
+        expected.set(38, "123456");
+        expected.set(39, "00");
+        expected.set(48, "AVAIL:25000.00");
+
+        assertThat(responsePacker.reply(compiled.read(packed), "0210", "00", "001123000001", "123456", "AVAIL:25000.00"))
+                .isEqualTo(expected.pack());
+        assertThat(responsePacker.reply(IsoMessageView.of(request), "0210", "00", "001123000001", "123456", "AVAIL:25000.00"))
+                .isEqualTo(expected.pack());
+    }
+
+    @Test
+    void omitsAbsentFields() throws Exception {
+        ISOMsg request = new ISOMsg("0200");
+        request.setPackager(packager);
+        request.set(11, "000102");
+
+        ISOMsg expected = new ISOMsg("0210");
+        expected.setPackager(packager);
+        expected.set(11, "000102");
+        expected.set(39, "14");
+
+        assertThat(responsePacker.reply(compiled.read(request.pack()), "0210", "14", null, null, null))
+                .isEqualTo(expected.pack());
+    }
+
+    @Test
+    void fixedRepliesCarryOnlyTheResponseCode() throws Exception {
+        for (ResponseCode code : ResponseCode.values()) {
+            ISOMsg reply = compiled.unpack(responsePacker.fixedReply(code));
+            assertThat(reply.getMTI()).isEqualTo("0210");
+            assertThat(reply.getString(39)).isEqualTo(code.getCode());
+            assertThat(reply.getMaxField()).isEqualTo(39);
+        }
+    }
+
+    @Test
+    void fixedRepliesToRawRequestsEchoStanAndTerminalWithoutUnpacking() throws Exception {
+        String[][] replies = {{"0100", "0110"}, {"0200", "0210"}, {"0221", "0230"}, {"0420", "0430"},
+                {"0800", "0810"}, {"0600", "0210"}};
+        for (String[] pair : replies) {
+            ISOMsg request = new ISOMsg(pair[0]);
+            request.setPackager(packager);
+            request.set(2, "4111111111111111");
+            request.set(3, "010000");
+            request.set(11, "000102");
+            request.set(32, "123456");
+            request.set(41, "ATM00001");
+
+            ISOMsg expected = new ISOMsg(pair[1]);
+            expected.setPackager(packager);
+            expected.set(11, "000102");
+            expected.set(39, "91");
+            expected.set(41, "ATM00001");
+            assertThat(responsePacker.fixedReply(request.pack(), ResponseCode.ISSUER_UNAVAILABLE)).as(pair[0])
+                    .isEqualTo(expected.pack());
+        }
+
+        // Nothing to echo from
+        ISOMsg reply = compiled.unpack(responsePacker.fixedReply("02".getBytes(), ResponseCode.ISSUER_UNAVAILABLE));
+        assertThat(reply.getMTI()).isEqualTo("0210");
+        assertThat(reply.getMaxField()).isEqualTo(39);
+    }
+
+    @Test
+    void jposCodecPacksTheSameReplies() throws Exception {
+        JposIsoCodec jpos = new JposIsoCodec(packager);
+        ResponsePacker jposPacker = new ResponsePacker(jpos);
+
+        ISOMsg request = new ISOMsg("0100");
+        request.setPackager(packager);
+        request.set(2, "4111111111111111");
+        request.set(3, "010000");
+        request.set(4, "000000010000");
+        request.set(11, "000102");
+        request.set(41, "ATM00001");
+        byte[] packed = request.pack();
+
+        assertThat(jposPacker.reply(jpos.read(packed), "0110", "00", "001123000001", "123456", null))
+                .isEqualTo(responsePacker.reply(compiled.read(packed), "0110", "00", "001123000001", "123456", null));
+        assertThat(jposPacker.fixedReply(packed, ResponseCode.SYSTEM_MALFUNCTION))
+                .isEqualTo(responsePacker.fixedReply(packed, ResponseCode.SYSTEM_MALFUNCTION));
+        assertThat(jposPacker.fixedReply("02".getBytes(), ResponseCode.SYSTEM_MALFUNCTION))
+                .isEqualTo(responsePacker.fixedReply("02".getBytes(), ResponseCode.SYSTEM_MALFUNCTION));
+    }
+}
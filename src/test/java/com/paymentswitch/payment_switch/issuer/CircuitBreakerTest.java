@@ -0,0 +1,52 @@
+package com.paymentswitch.payment_switch.issuer;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static final long FAST = Duration.ofMillis(5).toNanos();
+    private static final long SLOW = Duration.ofMillis(500).toNanos();
+
+    private final AtomicLong now = new AtomicLong();
+    // Opens at half of the last 10 calls failing or slow, at least 4 in; 2 probes after 1s
+    private final CircuitBreaker breaker = new CircuitBreaker(10, 4, 50, Duration.ofMillis(100), 50,
+            Duration.ofSeconds(1), 2, now::get);
+
+    @Test
+    void opensOnFailuresAndProbesHalfOpen() {
+        for (int i = 0; i < 9; i++) {
+            call(i >= 5, FAST);
+        }
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        call(true, FAST);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        // A slow probe opens it again
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onResult(false, SLOW);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        // Only the probes go through, both must pass
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+        breaker.onResult(false, FAST);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        breaker.onResult(false, FAST);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.opened()).isEqualTo(2);
+    }
+
+    private void call(boolean failed, long latencyNanos) {
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onResult(failed, latencyNanos);
+    }
+}
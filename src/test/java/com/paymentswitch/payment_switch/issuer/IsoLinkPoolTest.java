@@ -0,0 +1,199 @@
+package com.paymentswitch.payment_switch.issuer;
+
+import com.paymentswitch.payment_switch.iso.CompiledIsoCodec;
+import com.paymentswitch.payment_switch.iso.PackagerDefinition;
+import com.paymentswitch.payment_switch.ledger.AccountLedger;
+import com.paymentswitch.payment_switch.model.ProcessingCode;
+import com.paymentswitch.payment_switch.model.TransactionRequest;
+import com.paymentswitch.payment_switch.model.TransactionResponse;
+import com.paymentswitch.payment_switch.service.BankSimlatorService;
+import com.paymentswitch.payment_switch.service.IdentifierService;
+import com.paymentswitch.payment_switch.time.CoarseClock;
+import com.paymentswitch.payment_switch.transformer.DateTimeCodec;
+import com.paymentswitch.payment_switch.transformer.IsoMessageTransformer;
+import com.paymentswitch.payment_switch.velocity.DailyLimits;
+import org.jpos.iso.packager.GenericPackager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Issuer links against a stand-in issuer on a local port
+class IsoLinkPoolTest {
+
+    private static GenericPackager packager;
+    private static CompiledIsoCodec codec;
+
+    private final CoarseClock clock = new CoarseClock(Duration.ofMillis(100));
+    private final IdentifierService identifiers = new IdentifierService(1, clock);
+    private final IsoMessageTransformer transformer = new IsoMessageTransformer(packager, new DateTimeCodec(clock),
+            identifiers);
+    private final AccountLedger ledger = new AccountLedger(1024, 16, 1_000_000);
+    private final BankSimlatorService bank = new BankSimlatorService(identifiers, ledger,
+            new DailyLimits(-1, -1, "00:00", 1024, 16, clock));
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        packager = new GenericPackager(new ClassPathResource("packager/iso87ascii.xml").getInputStream());
+        try (InputStream xml = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            codec = new CompiledIsoCodec(PackagerDefinition.load(xml), packager);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (AutoCloseable closeable : closeables.reversed()) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    void multiplexesConcurrentRequestsAnsweredOutOfOrder() throws Exception {
+        // Larger amounts take longer, so answers overtake each other on a connection
+        SimulatorIssuerGateway simulator = new SimulatorIssuerGateway("stand-in", bank, Duration.ZERO);
+        IssuerGateway slowerForLargerAmounts = new IssuerGateway() {
+            @Override
+            public String name() {
+                return simulator.name();
+            }
+
+            @Override
+            public TransactionResponse authorize(ProcessingCode code, TransactionRequest request) {
+                try {
+                    Thread.sleep(request.transactionAmount() / 100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return simulator.authorize(code, request);
+            }
+
+            @Override
+            public void reverse(ProcessingCode code, TransactionRequest request) {
+                simulator.reverse(code, request);
+            }
+        };
+        StandInIssuer standIn = open(new StandInIssuer(0, codec, transformer, slowerForLargerAmounts));
+        IsoLinkIssuerGateway issuer = open(link(standIn.port(), 2, Duration.ofSeconds(30)));
+        await(() -> issuer.link().connected() == 2);
+
+        List<CompletableFuture<TransactionResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            TransactionRequest request = withdrawal(i, (40 - i) * 500L);
+            responses.add(CompletableFuture.supplyAsync(() -> issuer.authorize(code(request), request),
+                    runnable -> Thread.ofVirtual().start(runnable)));
+        }
+        for (int i = 0; i < 40; i++) {
+            TransactionResponse response = responses.get(i).join();
+            assertThat(response.responseCode()).isEqualTo("00");
+            assertThat(response.stan()).isEqualTo("%06d".formatted(i));
+            assertThat(response.retrievalReferenceNumber()).isEqualTo("%012d".formatted(i));
+            assertThat(ledger.balance(pan(i), 0)).isEqualTo(1_000_000 - (40 - i) * 500L);
+        }
+        assertThat(issuer.link().pending()).isZero();
+
+        // Reversals go out as 0420 and are posted by the stand-in
+        TransactionRequest reversed = withdrawal(7, 33 * 500L);
+        issuer.reverse(code(reversed), reversed);
+        assertThat(ledger.balance(pan(7), 0)).isEqualTo(1_000_000);
+    }
+
+    @Test
+    void reconnectsAfterTheHostDropsTheConnections() throws Exception {
+        StandInIssuer standIn = open(new StandInIssuer(0, codec, transformer,
+                new SimulatorIssuerGateway("stand-in", bank, Duration.ZERO)));
+        IsoLinkIssuerGateway issuer = open(link(standIn.port(), 2, Duration.ofSeconds(30)));
+        // The link counts a connection once connect returns, which can be before the host has accepted it
+        await(() -> issuer.link().connected() == 2 && standIn.connections() == 2);
+
+        standIn.dropConnections();
+        await(() -> issuer.link().reconnects() >= 2 && issuer.link().connected() == 2);
+
+        TransactionRequest request = withdrawal(1, 10_000);
+        assertThat(issuer.authorize(code(request), request).responseCode()).isEqualTo("00");
+    }
+
+    @Test
+    void dropsAConnectionWhoseEchoGoesUnanswered() throws Exception {
+        // Accepts and reads, never answers
+        ServerSocket silentHost = open(new ServerSocket(0));
+        Thread.ofVirtual().start(() -> {
+            while (!silentHost.isClosed()) {
+                try {
+                    Socket socket = silentHost.accept();
+                    Thread.ofVirtual().start(() -> {
+                        try (socket; InputStream in = socket.getInputStream()) {
+                            in.transferTo(OutputStream.nullOutputStream());
+                        } catch (Exception e) {
+                            // closed by the link
+                        }
+                    });
+                } catch (Exception e) {
+                    return;
+                }
+            }
+        });
+        IsoLinkIssuerGateway issuer = open(link(silentHost.getLocalPort(), 1, Duration.ofMillis(200)));
+        await(() -> issuer.link().connected() == 1);
+
+        // Idle for an echo interval, echo unanswered within the response timeout, reconnected
+        await(() -> issuer.link().reconnects() >= 1);
+
+        TransactionRequest request = withdrawal(1, 10_000);
+        assertThat(issuer.authorize(code(request), request).responseCode()).isEqualTo("91");
+    }
+
+    private IsoLinkIssuerGateway link(int port, int connections, Duration responseTimeout) {
+        return new IsoLinkIssuerGateway(new IsoLinkPool("stand-in", new InetSocketAddress("localhost", port),
+                connections, codec, responseTimeout, Duration.ofMillis(100), Duration.ofMillis(20),
+                Duration.ofMillis(200)), transformer);
+    }
+
+    private <T extends AutoCloseable> T open(T closeable) {
+        closeables.add(closeable);
+        return closeable;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition within 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static ProcessingCode code(TransactionRequest request) {
+        return ProcessingCode.parse(request.processingCode(), request.transactionAmount(), request.currencyExponent());
+    }
+
+    private static String pan(int card) {
+        return "4%015d".formatted(card);
+    }
+
+    private static TransactionRequest withdrawal(int card, long amount) {
+        return TransactionRequest.builder()
+                .messageType("0200")
+                .primaryAccountNumber(pan(card))
+                .processingCode("010000")
+                .transactionAmount(amount)
+                .currencyCode(840)
+                .stan("%06d".formatted(card))
+                .retrievalReferenceNumber("%012d".formatted(card))
+                .acquiringInstitutionCode("123456")
+                .cardAcceptorTerminalId("ATM00001")
+                .build();
+    }
+}
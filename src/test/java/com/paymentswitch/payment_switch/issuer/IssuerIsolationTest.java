@@ -0,0 +1,157 @@
+package com.paymentswitch.payment_switch.issuer;
+
+import com.paymentswitch.payment_switch.ledger.AccountLedger;
+import com.paymentswitch.payment_switch.model.TransactionRequest;
+import com.paymentswitch.payment_switch.router.BinRoutes;
+import com.paymentswitch.payment_switch.router.TransactionRouter;
+import com.paymentswitch.payment_switch.service.BankSimlatorService;
+import com.paymentswitch.payment_switch.service.IdentifierService;
+import com.paymentswitch.payment_switch.time.CoarseClock;
+import com.paymentswitch.payment_switch.velocity.DailyLimits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Chaos test: one issuer answering far too slowly, next to a healthy one, with terminals sharing a fixed pool of
+// connection threads as in the platform execution mode
+class IssuerIsolationTest {
+
+    private static final String HEALTHY_PAN = "4111111111111111";
+    private static final String DEGRADED_PAN = "5500000000000004";
+    private static final int WORKERS = 8;
+
+    private final CoarseClock clock = new CoarseClock(Duration.ofMillis(100));
+    private final BankSimlatorService bank = new BankSimlatorService(new IdentifierService(1, clock),
+            new AccountLedger(1024, 16, 1_000_000), new DailyLimits(-1, -1, "00:00", 1024, 16, clock));
+    private final ExecutorService connectionThreads = Executors.newFixedThreadPool(WORKERS);
+    private final List<TransactionRouter> routers = new ArrayList<>();
+    private final AtomicInteger stan = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        connectionThreads.shutdownNow();
+        routers.forEach(TransactionRouter::shutdown);
+    }
+
+    @Test
+    void degradedIssuerLeavesTheOthersThroughputAndP99Alone() throws Exception {
+        GuardedIssuerGateway.Settings guard = new GuardedIssuerGateway.Settings(true, 16, 20, 10, 50,
+                Duration.ofMillis(100), 50, Duration.ofMillis(500), 2);
+        TransactionRouter guarded = router(guard);
+        TransactionRouter unguarded = router(GuardedIssuerGateway.Settings.DISABLED);
+
+        run(guarded, false); // JIT warm-up
+        Load baseline = run(guarded, false);
+
+        Load isolated = run(guarded, true);
+        assertThat(isolated.healthyApprovals).isEqualTo(isolated.healthyCalls);
+        assertThat(isolated.healthyCalls).isGreaterThan(baseline.healthyCalls / 2);
+        assertThat(isolated.healthyP99Nanos).isLessThan(Math.max(4 * baseline.healthyP99Nanos,
+                Duration.ofMillis(20).toNanos()));
+
+        // Without the guard the slow issuer's calls hold the connection threads
+        Load shared = run(unguarded, true);
+        assertThat(shared.healthyCalls).isLessThan(isolated.healthyCalls / 2);
+        assertThat(shared.healthyP99Nanos).isGreaterThan(isolated.healthyP99Nanos);
+    }
+
+    // Healthy and degraded issuers behind their own ranges, calls under a 200ms deadline
+    private TransactionRouter router(GuardedIssuerGateway.Settings guard) {
+        IssuerDirectory issuers = new IssuerDirectory(new String[]{"healthy:simulator", "degraded:simulator:1s"}, bank,
+                null, null, Duration.ofSeconds(10), Duration.ofSeconds(30), Duration.ofMillis(100),
+                Duration.ofSeconds(30), guard);
+        BinRoutes binRoutes = new BinRoutes(issuers,
+                new ByteArrayResource("411111,411111,healthy\n550000,550000,degraded\n".getBytes()), "",
+                Duration.ZERO);
+        TransactionRouter router = new TransactionRouter(binRoutes, Duration.ofMillis(200), new String[0],
+                Duration.ofMillis(5), 64);
+        routers.add(router);
+        return router;
+    }
+
+    private record Load(int healthyCalls, int healthyApprovals, long healthyP99Nanos) {
+    }
+
+    // One second of closed-loop healthy traffic from WORKERS terminals, after a second of degraded traffic alone
+    // (terminals sending every 5ms) when withDegraded
+    private Load run(TransactionRouter router, boolean withDegraded) throws Exception {
+        AtomicBoolean degradedRunning = new AtomicBoolean(withDegraded);
+        List<Thread> degradedTerminals = new ArrayList<>();
+        if (withDegraded) {
+            for (int i = 0; i < WORKERS; i++) {
+                degradedTerminals.add(Thread.ofVirtual().start(() -> {
+                    while (degradedRunning.get()) {
+                        try {
+                            connectionThreads.submit(() -> router.route(balanceInquiry(DEGRADED_PAN))).get();
+                            Thread.sleep(5);
+                        } catch (Exception e) {
+                            return;
+                        }
+                    }
+                }));
+            }
+            Thread.sleep(1000);
+        }
+
+        long end = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+        List<long[]> latencies = new ArrayList<>();
+        AtomicInteger approvals = new AtomicInteger();
+        List<Thread> healthyTerminals = new ArrayList<>();
+        for (int i = 0; i < WORKERS; i++) {
+            long[] samples = new long[1_000_000];
+            latencies.add(samples);
+            healthyTerminals.add(Thread.ofVirtual().start(() -> {
+                int count = 0;
+                while (System.nanoTime() < end && count < samples.length) {
+                    long start = System.nanoTime();
+                    try {
+                        String code = connectionThreads.submit(() -> router.route(balanceInquiry(HEALTHY_PAN)))
+                                .get().responseCode();
+                        if ("00".equals(code)) {
+                            approvals.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        return;
+                    }
+                    samples[count++] = System.nanoTime() - start + 1;
+                }
+            }));
+        }
+        for (Thread terminal : healthyTerminals) {
+            terminal.join();
+        }
+        degradedRunning.set(false);
+        for (Thread terminal : degradedTerminals) {
+            terminal.join();
+        }
+
+        long[] all = latencies.stream().flatMapToLong(samples -> Arrays.stream(samples).filter(l -> l > 0)).sorted()
+                .toArray();
+        return new Load(all.length, approvals.get(), all[(int) (all.length * 0.99)]);
+    }
+
+    private TransactionRequest balanceInquiry(String pan) {
+        String number = "%06d".formatted(stan.incrementAndGet() % 1_000_000);
+        return TransactionRequest.builder()
+                .messageType("0200")
+                .primaryAccountNumber(pan)
+                .processingCode("310000")
+                .currencyCode(840)
+                .stan(number)
+                .retrievalReferenceNumber("000000" + number)
+                .acquiringInstitutionCode("123456")
+                .cardAcceptorTerminalId("ATM00001")
+                .build();
+    }
+}
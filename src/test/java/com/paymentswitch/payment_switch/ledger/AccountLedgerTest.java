@@ -0,0 +1,111 @@
+package com.paymentswitch.payment_switch.ledger;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccountLedgerTest {
+
+    private static final String PAN = "4111111111111111";
+
+    @Test
+    void concurrentDebitsOfAHotAccountNeverOverdraw() throws Exception {
+        AccountLedger ledger = new AccountLedger(1024, 16, -1);
+        ledger.put(PAN, "00", 1_000_000);
+        AtomicLong approved = new AtomicLong();
+        runConcurrently(16, () -> {
+            for (int i = 0; i < 10_000; i++) {
+                long result = ledger.debit(PAN, 0, 7);
+                if (result >= 0) {
+                    approved.incrementAndGet();
+                } else {
+                    assertThat(result).isEqualTo(AccountLedger.INSUFFICIENT_FUNDS);
+                }
+            }
+        });
+        assertThat(approved.get()).isEqualTo(1_000_000 / 7);
+        assertThat(ledger.balance(PAN, 0)).isEqualTo(1_000_000 % 7);
+    }
+
+    @Test
+    void transfersBetweenSegmentsKeepTheTotal() throws Exception {
+        AccountLedger ledger = new AccountLedger(1024, 16, -1);
+        ledger.put(PAN, "10", 500_000);
+        ledger.put(PAN, "20", 500_000);
+        runConcurrently(8, () -> {
+            for (int i = 0; i < 20_000; i++) {
+                ledger.transfer(PAN, 1, 2, 3);
+                ledger.transfer(PAN, 2, 1, 5);
+            }
+        });
+        assertThat(ledger.balance(PAN, 1) + ledger.balance(PAN, 2)).isEqualTo(1_000_000);
+        assertThat(ledger.transfer(PAN, 1, 2, 2_000_000)).isEqualTo(AccountLedger.INSUFFICIENT_FUNDS);
+    }
+
+    @Test
+    void unknownCardsAreRefusedOrAutoOpened() {
+        AccountLedger closed = new AccountLedger(1024, 16, -1);
+        assertThat(closed.debit(PAN, 0, 1)).isEqualTo(AccountLedger.NO_ACCOUNT);
+        assertThat(closed.balance(PAN, AccountLedger.accountType("019000", AccountLedger.FROM_ACCOUNT)))
+                .isEqualTo(AccountLedger.NO_ACCOUNT);
+
+        AccountLedger open = new AccountLedger(1024, 16, 2_500_000);
+        assertThat(open.debit(PAN, AccountLedger.accountType("011000", AccountLedger.FROM_ACCOUNT), 100_000))
+                .isEqualTo(2_400_000);
+        assertThat(open.size()).isEqualTo(1);
+    }
+
+    @Test
+    void snapshotLoadsBackIntoAnEmptyLedger() throws Exception {
+        AccountLedger ledger = new AccountLedger(1024, 16, -1);
+        ledger.load(new BufferedReader(new StringReader("""
+                # comment
+                4111111111111111,00,100
+                4111111111111111,20,250
+
+                5500000000000004,00,7
+                """)));
+        ledger.debit(PAN, 2, 50);
+
+        StringWriter snapshot = new StringWriter();
+        assertThat(ledger.writeSnapshot(snapshot)).isEqualTo(3);
+
+        AccountLedger restored = new AccountLedger(2048, 32, -1);
+        assertThat(restored.load(new BufferedReader(new StringReader(snapshot.toString())))).isEqualTo(3);
+        assertThat(restored.balance(PAN, 0)).isEqualTo(100);
+        assertThat(restored.balance(PAN, 2)).isEqualTo(200);
+        assertThat(restored.balance("5500000000000004", 0)).isEqualTo(7);
+    }
+
+    private static void runConcurrently(int threads, Runnable task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> started = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                    task.run();
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            started.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : started) {
+            thread.join();
+        }
+        assertThat(failures).isEmpty();
+    }
+}
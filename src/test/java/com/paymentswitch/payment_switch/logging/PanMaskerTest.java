@@ -0,0 +1,42 @@
+package com.paymentswitch.payment_switch.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PanMaskerTest {
+
+    @Test
+    void masksAllButFirstSixAndLastFour() {
+        assertThat(PanMasker.mask("4111111111111111")).isEqualTo("411111******1111");
+        assertThat(PanMasker.mask("4111111111111")).isEqualTo("411111******1111");
+        assertThat(PanMasker.mask("411111111")).isEqualTo("****");
+        assertThat(PanMasker.mask(null)).isEqualTo("****");
+    }
+
+    @Test
+    void masksEveryOccurrenceOfThePanInAPackedMessage() {
+        // field 2 and track 2 data (field 35) both carry the PAN
+        byte[] message = ascii("0200F2\u0000164111111111111111010000374111111111111111=2512101");
+
+        byte[] masked = PanMasker.maskIn(message, "4111111111111111");
+
+        assertThat(new String(masked, StandardCharsets.US_ASCII))
+                .isEqualTo("0200F2\u000016411111******111101000037411111******1111=2512101");
+        assertThat(message).isEqualTo(ascii("0200F2\u0000164111111111111111010000374111111111111111=2512101"));
+    }
+
+    @Test
+    void masksLongDigitRunsWhenThePanIsUnknown() {
+        byte[] masked = PanMasker.maskIn(ascii("0200F2164111111111111111010000ATM00001"), null);
+
+        assertThat(new String(masked, StandardCharsets.US_ASCII))
+                .isEqualTo("0200F216411***************0000ATM00001");
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
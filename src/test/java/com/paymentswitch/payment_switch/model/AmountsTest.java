@@ -0,0 +1,43 @@
+package com.paymentswitch.payment_switch.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AmountsTest {
+
+    @Test
+    void exponentComesFromIso4217() {
+        assertThat(Amounts.exponent(840)).isEqualTo(2); // USD
+        assertThat(Amounts.exponent(392)).isEqualTo(0); // JPY
+        assertThat(Amounts.exponent(48)).isEqualTo(3);  // BHD
+        assertThat(Amounts.exponent(Amounts.NO_CURRENCY)).isEqualTo(Amounts.DEFAULT_EXPONENT);
+        assertThat(Amounts.exponent(1)).isEqualTo(Amounts.DEFAULT_EXPONENT);
+    }
+
+    @Test
+    void limitsScaleToMinorUnits() {
+        assertThat(Amounts.minorUnits(50000, 2)).isEqualTo(5_000_000L);
+        assertThat(Amounts.minorUnits(50000, 0)).isEqualTo(50_000L);
+        assertThat(Amounts.minorUnits(50000, 3)).isEqualTo(50_000_000L);
+    }
+
+    @Test
+    void rendersMajorUnitsWithTheExponentsDecimals() {
+        assertThat(Amounts.toDecimalString(2_500_000, 2)).isEqualTo("25000.00");
+        assertThat(Amounts.toDecimalString(5, 3)).isEqualTo("0.005");
+        assertThat(Amounts.toDecimalString(1234, 0)).isEqualTo("1234");
+        assertThat(Amounts.toDecimalString(-150, 2)).isEqualTo("-1.50");
+    }
+
+    @Test
+    void formatsZeroPaddedDigits() {
+        assertThat(Amounts.format(10000, 12)).isEqualTo("000000010000");
+        assertThat(Amounts.format(0, 12)).isEqualTo("000000000000");
+        assertThat(Amounts.format(999_999_999_999L, 12)).isEqualTo("999999999999");
+        assertThat(Amounts.format(840, 3)).isEqualTo("840");
+        assertThatThrownBy(() -> Amounts.format(1_000_000_000_000L, 12)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Amounts.format(-1, 12)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
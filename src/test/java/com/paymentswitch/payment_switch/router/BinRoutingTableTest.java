@@ -0,0 +1,70 @@
+package com.paymentswitch.payment_switch.router;
+
+import com.paymentswitch.payment_switch.issuer.IssuerDirectory;
+import com.paymentswitch.payment_switch.issuer.IssuerGateway;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinRoutingTableTest {
+
+    private final IssuerDirectory issuers = new IssuerDirectory(new String[]{"visa:simulator", "acme:simulator",
+            "mc:simulator"}, null);
+    private final IssuerGateway visa = issuers.get("visa");
+    private final IssuerGateway acme = issuers.get("acme");
+    private final IssuerGateway mc = issuers.get("mc");
+
+    @Test
+    void mostSpecificRangeWins() {
+        BinRoutingTable table = new BinRoutingTable(List.of(
+                BinRoutingTable.Range.of("400000", "499999", visa),
+                BinRoutingTable.Range.of("41111100000", "41111199999", acme),
+                BinRoutingTable.Range.of("510000", "559999", mc)));
+
+        assertThat(table.lookup("4000000000000002")).isSameAs(visa);
+        assertThat(table.lookup("4111110000000000")).isSameAs(acme);
+        assertThat(table.lookup("4111119999999999")).isSameAs(acme);
+        assertThat(table.lookup("4111120000000000")).isSameAs(visa);
+        assertThat(table.lookup("4999999999999999")).isSameAs(visa);
+        assertThat(table.lookup("5500000000000004")).isSameAs(mc);
+        assertThat(table.lookup("5600000000000000")).isNull();
+        assertThat(table.lookup("3999999999999999")).isNull();
+        assertThat(table.lookup("41111X0000000000")).isNull();
+        assertThat(table.segments()).isEqualTo(4);
+    }
+
+    @Test
+    void rejectsPartlyOverlappingRanges() {
+        assertThatThrownBy(() -> new BinRoutingTable(List.of(
+                BinRoutingTable.Range.of("400000", "449999", visa),
+                BinRoutingTable.Range.of("440000", "459999", acme))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("overlap");
+        assertThatThrownBy(() -> BinRoutingTable.Range.of("4111", "4111", visa))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void reloadSwapsTheTableAndKeepsItWhenTheFileIsBroken(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("bins.csv");
+        Files.writeString(file, "# low,high,issuer\n400000,499999,visa\n");
+        BinRoutes routes = new BinRoutes(issuers, new FileSystemResource(file), "", Duration.ZERO);
+        assertThat(routes.issuerFor("4111111111111111")).isSameAs(visa);
+
+        Files.writeString(file, "400000,499999,visa\n411111,411111,acme\n");
+        assertThat(routes.reload()).isTrue();
+        assertThat(routes.issuerFor("4111111111111111")).isSameAs(acme);
+
+        Files.writeString(file, "400000,499999,visa\n411111,411111,unknown\n");
+        assertThat(routes.reload()).isFalse();
+        assertThat(routes.issuerFor("4111111111111111")).isSameAs(acme);
+    }
+}
@@ -0,0 +1,118 @@
+package com.paymentswitch.payment_switch.router;
+
+import com.paymentswitch.payment_switch.issuer.IssuerDirectory;
+import com.paymentswitch.payment_switch.ledger.AccountLedger;
+import com.paymentswitch.payment_switch.model.TransactionRequest;
+import com.paymentswitch.payment_switch.model.TransactionResponse;
+import com.paymentswitch.payment_switch.service.BankSimlatorService;
+import com.paymentswitch.payment_switch.service.IdentifierService;
+import com.paymentswitch.payment_switch.time.CoarseClock;
+import com.paymentswitch.payment_switch.velocity.DailyLimits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransactionRouterTest {
+
+    private static final String PAN = "4111111111111111";
+
+    private final CoarseClock clock = new CoarseClock(Duration.ofMillis(100));
+    private final AccountLedger ledger = new AccountLedger(1024, 16, -1);
+    private final DailyLimits dailyLimits = new DailyLimits(50000, 200000, "00:00", 1024, 16, clock);
+    private final CountDownLatch issuerDone = new CountDownLatch(1);
+    private volatile long issuerDelayMillis;
+
+    // Posts like the simulator, after issuerDelayMillis
+    private final BankSimlatorService slowIssuer = new BankSimlatorService(new IdentifierService(1, clock), ledger,
+            dailyLimits) {
+        @Override
+        public TransactionResponse processWithdrawal(TransactionRequest request) {
+            try {
+                Thread.sleep(issuerDelayMillis);
+                return super.processWithdrawal(request);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                issuerDone.countDown();
+            }
+        }
+    };
+
+    private final BinRoutes binRoutes = new BinRoutes(
+            new IssuerDirectory(new String[]{"slow:simulator"}, slowIssuer),
+            new ByteArrayResource("411111,411111,slow\n".getBytes()), "", Duration.ZERO);
+
+    private final TransactionRouter router = new TransactionRouter(binRoutes, Duration.ofMillis(100),
+            new String[]{"balance_inquiry:0s"}, Duration.ofMillis(5), 64);
+
+    @AfterEach
+    void tearDown() {
+        router.shutdown();
+    }
+
+    @Test
+    void passesOnTimelyIssuerAnswers() {
+        ledger.put(PAN, "00", 100_000);
+        TransactionResponse response = router.route(withdrawal(30_000));
+        assertThat(response.responseCode()).isEqualTo("00");
+        assertThat(response.messageType()).isEqualTo("0210");
+        assertThat(ledger.balance(PAN, 0)).isEqualTo(70_000);
+        assertThat(router.timeouts()).isZero();
+    }
+
+    @Test
+    void slowIssuerGets91AndItsLateApprovalIsReversed() throws Exception {
+        ledger.put(PAN, "00", 100_000);
+        issuerDelayMillis = 400;
+
+        long start = System.nanoTime();
+        TransactionResponse response = router.route(withdrawal(30_000));
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(response.responseCode()).isEqualTo("91");
+        assertThat(response.retrievalReferenceNumber()).isEqualTo("000000000001");
+        assertThat(waitedMillis).isBetween(100L, 390L);
+
+        // The issuer still debits, then the switch gives it all back
+        assertThat(issuerDone.await(5, TimeUnit.SECONDS)).isTrue();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (router.lateResponses() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(router.lateResponses()).isEqualTo(1);
+        assertThat(router.timeouts()).isEqualTo(1);
+        assertThat(ledger.balance(PAN, 0)).isEqualTo(100_000);
+        assertThat(dailyLimits.spent(PAN, DailyLimits.WITHDRAWAL)).isZero();
+    }
+
+    @Test
+    void cardsOutsideEveryRangeGet15() {
+        TransactionResponse response = router.route(withdrawal("5500000000000004", 30_000));
+        assertThat(response.responseCode()).isEqualTo("15");
+        assertThat(issuerDone.getCount()).isEqualTo(1);
+    }
+
+    private static TransactionRequest withdrawal(long amount) {
+        return withdrawal(PAN, amount);
+    }
+
+    private static TransactionRequest withdrawal(String pan, long amount) {
+        return TransactionRequest.builder()
+                .messageType("0200")
+                .primaryAccountNumber(pan)
+                .processingCode("010000")
+                .transactionAmount(amount)
+                .currencyCode(840)
+                .stan("000001")
+                .retrievalReferenceNumber("000000000001")
+                .acquiringInstitutionCode("123456")
+                .cardAcceptorTerminalId("ATM00001")
+                .build();
+    }
+}
@@ -0,0 +1,114 @@
+package com.paymentswitch.payment_switch.service;
+
+import com.paymentswitch.payment_switch.time.CoarseClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdentifierServiceTest {
+
+    private static final int THREADS = 32;
+    private static final int PER_THREAD = 50_000;
+
+    @Test
+    void retrievalReferenceNumbersAreUniqueUnderContention() throws Exception {
+        IdentifierService identifiers = new IdentifierService(42, clockAt("2026-12-17T10:15:00Z"));
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<String[]>> tasks = IntStream.range(0, THREADS)
+                .<Callable<String[]>>mapToObj(t -> () -> {
+                    start.await();
+                    String[] rrns = new String[PER_THREAD];
+                    for (int i = 0; i < PER_THREAD; i++) {
+                        rrns[i] = identifiers.retrievalReferenceNumber();
+                    }
+                    return rrns;
+                })
+                .toList();
+
+        Set<String> seen = new HashSet<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(THREADS)) {
+            List<Future<String[]>> results = tasks.stream().map(pool::submit).toList();
+            start.countDown();
+            for (Future<String[]> result : results) {
+                for (String rrn : result.get()) {
+                    assertThat(rrn).matches("35142\\d{7}"); // day 351, node 42
+                    assertThat(seen.add(rrn)).as("duplicate %s", rrn).isTrue();
+                }
+            }
+        }
+        assertThat(seen).hasSize(THREADS * PER_THREAD);
+    }
+
+    @Test
+    void oneThreadGoesPastItsStripesShareWithoutRepeating() {
+        IdentifierService identifiers = new IdentifierService(42, clockAt("2026-12-17T10:15:00Z"));
+        // More than an even split of the day's sequence between the stripes
+        int count = 10_000_000 / IdentifierService.STRIPES + 2 * IdentifierService.BLOCK;
+        BitSet seen = new BitSet();
+        for (int i = 0; i < count; i++) {
+            int sequence = Integer.parseInt(identifiers.retrievalReferenceNumber().substring(5));
+            assertThat(seen.get(sequence)).as("duplicate %d after %d", sequence, i).isFalse();
+            seen.set(sequence);
+        }
+    }
+
+    @Test
+    void sequenceRestartsWithTheDayAndAuthCodesAreSixDigits() {
+        MutableClock clock = new MutableClock(Instant.parse("2026-12-31T23:59:59Z"));
+        IdentifierService identifiers = new IdentifierService(7, new CoarseClock(clock, Duration.ofMillis(1)));
+        String lastOfYear = identifiers.retrievalReferenceNumber();
+        identifiers.retrievalReferenceNumber();
+
+        clock.instant = Instant.parse("2027-01-01T00:00:01Z");
+        String firstOfYear = identifiers.retrievalReferenceNumber();
+
+        assertThat(lastOfYear).startsWith("36507");
+        assertThat(firstOfYear).startsWith("00107");
+        // The first number of the day is 0 again
+        assertThat(firstOfYear.substring(5)).isEqualTo(lastOfYear.substring(5));
+        assertThat(identifiers.authorizationCode()).matches("\\d{6}");
+    }
+
+    private static CoarseClock clockAt(String instant) {
+        return new CoarseClock(Clock.fixed(Instant.parse(instant), ZoneOffset.UTC), Duration.ofMillis(100));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
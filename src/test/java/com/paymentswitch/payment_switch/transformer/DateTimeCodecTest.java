@@ -0,0 +1,63 @@
+package com.paymentswitch.payment_switch.transformer;
+
+import com.paymentswitch.payment_switch.time.CoarseClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DateTimeCodecTest {
+
+    @Test
+    void infersTheYearAcrossNewYear() {
+        DateTimeCodec justAfter = at("2027-01-01T00:00:05Z");
+        assertThat(justAfter.transmissionDateTime(1231235958L)).isEqualTo(LocalDateTime.of(2026, 12, 31, 23, 59, 58));
+        assertThat(justAfter.transmissionDateTime(101000003L)).isEqualTo(LocalDateTime.of(2027, 1, 1, 0, 0, 3));
+
+        DateTimeCodec justBefore = at("2026-12-31T23:59:58Z");
+        assertThat(justBefore.transmissionDateTime(101000001L)).isEqualTo(LocalDateTime.of(2027, 1, 1, 0, 0, 1));
+        assertThat(justBefore.monthDay(101)).isEqualTo(LocalDate.of(2027, 1, 1));
+        assertThat(justBefore.monthDay(1231)).isEqualTo(LocalDate.of(2026, 12, 31));
+
+        // Within six months either way stays in the current year
+        DateTimeCodec midYear = at("2026-07-15T12:00:00Z");
+        assertThat(midYear.monthDay(101)).isEqualTo(LocalDate.of(2026, 1, 1));
+        assertThat(midYear.monthDay(1231)).isEqualTo(LocalDate.of(2026, 12, 31));
+    }
+
+    @Test
+    void parsesAndFormatsEveryDateField() {
+        DateTimeCodec codec = at("2026-12-17T10:15:00Z");
+        LocalDateTime field7 = codec.transmissionDateTime(1217101500L);
+        assertThat(field7).isEqualTo(LocalDateTime.of(2026, 12, 17, 10, 15, 0));
+        assertThat(codec.formatTransmissionDateTime(field7)).isEqualTo("1217101500");
+
+        assertThat(codec.localTime(90507)).isEqualTo(LocalTime.of(9, 5, 7));
+        assertThat(codec.formatLocalTime(LocalTime.of(9, 5, 7))).isEqualTo("090507");
+
+        assertThat(codec.monthDay(1218)).isEqualTo(LocalDate.of(2026, 12, 18));
+        assertThat(codec.formatMonthDay(LocalDate.of(2027, 1, 2))).isEqualTo("0102");
+    }
+
+    @Test
+    void rejectsImpossibleDates() {
+        DateTimeCodec codec = at("2027-03-01T00:00:00Z");
+        assertThatThrownBy(() -> codec.transmissionDateTime(1317101500L)).isInstanceOf(DateTimeException.class);
+        assertThatThrownBy(() -> codec.monthDay(229)).isInstanceOf(DateTimeException.class);
+        assertThatThrownBy(() -> codec.localTime(246000)).isInstanceOf(DateTimeException.class);
+    }
+
+    private static DateTimeCodec at(String instant) {
+        Clock clock = Clock.fixed(Instant.parse(instant), ZoneOffset.UTC);
+        return new DateTimeCodec(new CoarseClock(clock, Duration.ofMillis(100)));
+    }
+}
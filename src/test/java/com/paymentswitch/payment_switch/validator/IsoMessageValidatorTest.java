@@ -0,0 +1,110 @@
+package com.paymentswitch.payment_switch.validator;
+
+import com.paymentswitch.payment_switch.iso.CompiledIsoCodec;
+import com.paymentswitch.payment_switch.iso.IsoMessageView;
+import com.paymentswitch.payment_switch.iso.PackagerDefinition;
+import com.paymentswitch.payment_switch.model.ResponseCode;
+import com.paymentswitch.payment_switch.model.ValidationResult;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.packager.GenericPackager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Outcomes are checked on an unpacked ISOMsg and on the lazy view over the packed bytes
+class IsoMessageValidatorTest {
+
+    private static GenericPackager packager;
+    private static CompiledIsoCodec codec;
+    private final IsoMessageValidator validator = new IsoMessageValidator();
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        packager = new GenericPackager(new ClassPathResource("packager/iso87ascii.xml").getInputStream());
+        try (InputStream xml = new ClassPathResource("packager/iso87ascii.xml").getInputStream()) {
+            codec = new CompiledIsoCodec(PackagerDefinition.load(xml), packager);
+        }
+    }
+
+    @Test
+    void acceptsCompleteFinancialRequests() throws Exception {
+        assertThat(validate(msg -> {})).isEqualTo(ValidationResult.success());
+        assertThat(validate(msg -> msg.setMTI("0100"))).isEqualTo(ValidationResult.success());
+        assertThat(validate(msg -> msg.set(2, "4111111111111"))).isEqualTo(ValidationResult.success());
+        assertThat(validate(msg -> msg.set(2, "4111111111111111111"))).isEqualTo(ValidationResult.success());
+    }
+
+    @Test
+    void rejectsUnsupportedMti() throws Exception {
+        assertThat(validate(msg -> msg.setMTI("0800"))).isEqualTo(failure(ResponseCode.FORMAT_ERROR, "Invalid MTI: 0800", "MTI"));
+        assertThat(validate(msg -> msg.setMTI("02A0"))).isEqualTo(failure(ResponseCode.FORMAT_ERROR, "Invalid MTI: 02A0", "MTI"));
+    }
+
+    @Test
+    void rejectsMissingOrMalformedPan() throws Exception {
+        assertThat(validate(msg -> msg.unset(2)))
+                .isEqualTo(failure(ResponseCode.INVALID_CARD, "Missing Primary Account Number", "PAN"));
+        assertThat(validate(msg -> msg.set(2, "411111111111")))
+                .isEqualTo(failure(ResponseCode.INVALID_CARD, "Invalid PAN format: 411111******1111", "PAN"));
+        assertThat(validate(msg -> msg.set(2, "41111111")))
+                .isEqualTo(failure(ResponseCode.INVALID_CARD, "Invalid PAN format: ****", "PAN"));
+        assertThat(validate(msg -> msg.set(2, "41111111111X1111")))
+                .isEqualTo(failure(ResponseCode.INVALID_CARD, "Invalid PAN format: 411111******1111", "PAN"));
+    }
+
+    @Test
+    void rejectsNonNumericAmount() throws Exception {
+        assertThat(validate(msg -> msg.set(4, "0000000100A0")))
+                .isEqualTo(failure(ResponseCode.INVALID_AMOUNT, "Invalid amount: 0000000100A0", "Amount"));
+    }
+
+    @Test
+    void reportsTheFirstMissingFieldInRuleOrder() throws Exception {
+        assertThat(validate(msg -> msg.unset(3)))
+                .isEqualTo(failure(ResponseCode.FORMAT_ERROR, "Missing Processing Code", "ProcessingCode"));
+        assertThat(validate(msg -> msg.unset(4)))
+                .isEqualTo(failure(ResponseCode.INVALID_AMOUNT, "Missing Transaction Amount", "Amount"));
+        assertThat(validate(msg -> msg.unset(7)))
+                .isEqualTo(failure(ResponseCode.FORMAT_ERROR, "Missing Transmission DateTime", "DateTime"));
+        assertThat(validate(msg -> msg.unset(41)))
+                .isEqualTo(failure(ResponseCode.FORMAT_ERROR, "Missing Terminal ID", "TerminalID"));
+        // STAN is checked before the transmission date/time
+        assertThat(validate(msg -> msg.unset(7, 11)))
+                .isEqualTo(failure(ResponseCode.FORMAT_ERROR, "Missing STAN", "STAN"));
+        // A malformed PAN is reported before later missing fields
+        assertThat(validate(msg -> {
+            msg.set(2, "123");
+            msg.unset(3);
+        })).isEqualTo(failure(ResponseCode.INVALID_CARD, "Invalid PAN format: ****", "PAN"));
+    }
+
+    private ValidationResult validate(ThrowingConsumer change) throws Exception {
+        ISOMsg msg = new ISOMsg("0200");
+        msg.setPackager(packager);
+        msg.set(2, "4111111111111111");
+        msg.set(3, "010000");
+        msg.set(4, "000000010000");
+        msg.set(7, "1217101500");
+        msg.set(11, "000102");
+        msg.set(32, "123456");
+        msg.set(41, "ATM00001");
+        change.accept(msg);
+
+        ValidationResult unpacked = validator.validate(IsoMessageView.of(msg));
+        ValidationResult lazy = validator.validate(codec.read(msg.pack()));
+        assertThat(lazy).isEqualTo(unpacked);
+        return unpacked;
+    }
+
+    private static ValidationResult failure(ResponseCode code, String message, String field) {
+        return ValidationResult.fail(code, message, field);
+    }
+
+    private interface ThrowingConsumer {
+        void accept(ISOMsg msg) throws Exception;
+    }
+}
@@ -0,0 +1,90 @@
+package com.paymentswitch.payment_switch.velocity;
+
+import com.paymentswitch.payment_switch.time.CoarseClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DailyLimitsTest {
+
+    private static final String PAN = "4111111111111111";
+
+    private final MovableClock clock = new MovableClock(Instant.parse("2026-10-17T21:00:00Z"));
+    // 500.00 withdrawals and 1000.00 purchases a day, days start at 22:00
+    private final DailyLimits limits = new DailyLimits(500, 1000, "22:00", 1024, 16,
+            new CoarseClock(clock, Duration.ofMillis(1)));
+
+    @Test
+    void concurrentWithdrawalsStopAtTheLimit() throws Exception {
+        AtomicLong approved = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    if (limits.reserve(PAN, DailyLimits.WITHDRAWAL, 300, 2)) {
+                        approved.addAndGet(300);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(approved.get()).isEqualTo(49_800);
+        assertThat(limits.spent(PAN, DailyLimits.WITHDRAWAL)).isEqualTo(49_800);
+        // Purchases have their own total
+        assertThat(limits.reserve(PAN, DailyLimits.PURCHASE, 100_000, 2)).isTrue();
+        assertThat(limits.reserve(PAN, DailyLimits.PURCHASE, 1, 2)).isFalse();
+    }
+
+    @Test
+    void givesBackAndRollsOverAtTheCutoff() {
+        assertThat(limits.reserve(PAN, DailyLimits.WITHDRAWAL, 40_000, 2)).isTrue();
+        assertThat(limits.reserve(PAN, DailyLimits.WITHDRAWAL, 20_000, 2)).isFalse();
+        limits.release(PAN, DailyLimits.WITHDRAWAL, 40_000);
+        assertThat(limits.reserve(PAN, DailyLimits.WITHDRAWAL, 50_000, 2)).isTrue();
+
+        // Same calendar day, next business day
+        clock.set(Instant.parse("2026-10-17T22:00:00Z"));
+        assertThat(limits.spent(PAN, DailyLimits.WITHDRAWAL)).isZero();
+        assertThat(limits.reserve(PAN, DailyLimits.WITHDRAWAL, 50_000, 2)).isTrue();
+        // Yen have no minor units
+        assertThat(limits.reserve("5500000000000004", DailyLimits.WITHDRAWAL, 501, 0)).isFalse();
+    }
+
+    private static final class MovableClock extends Clock {
+        private volatile Instant now;
+
+        MovableClock(Instant now) {
+            this.now = now;
+        }
+
+        void set(Instant instant) {
+            now = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.paymentswitch.payment_switch.velocity;
+
+import com.paymentswitch.payment_switch.model.ProcessingCode;
+import com.paymentswitch.payment_switch.model.TransactionRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SlidingWindowCounterTest {
+
+    private static final long MINUTE = Duration.ofMinutes(1).toNanos();
+    private static final String PAN = "4111111111111111";
+
+    @Test
+    void refusesOverTheLimitUntilTheWindowSlides() {
+        // 3 per 6 minutes, in 1 minute buckets
+        SlidingWindowCounter counter = new SlidingWindowCounter(3, Duration.ofMinutes(6), 6, 1024, 16);
+        long start = System.nanoTime();
+        assertThat(counter.tryAcquire(PAN, start)).isTrue();
+        assertThat(counter.tryAcquire(PAN, start + 2 * MINUTE)).isTrue();
+        assertThat(counter.tryAcquire(PAN, start + 3 * MINUTE)).isTrue();
+        assertThat(counter.tryAcquire(PAN, start + 4 * MINUTE)).isFalse();
+        assertThat(counter.tryAcquire("5500000000000004", start + 4 * MINUTE)).isTrue();
+
+        // The first event has left the window, the other two haven't
+        assertThat(counter.tryAcquire(PAN, start + 7 * MINUTE)).isTrue();
+        assertThat(counter.tryAcquire(PAN, start + 7 * MINUTE)).isFalse();
+        // All of them have
+        assertThat(counter.tryAcquire(PAN, start + 20 * MINUTE)).isTrue();
+    }
+
+    @Test
+    void idleKeysMakeRoomBeforeActiveOnesAreEvicted() {
+        // One block of 8 slots
+        SlidingWindowCounter counter = new SlidingWindowCounter(1, Duration.ofMinutes(6), 6, SlidingWindowCounter.BLOCK, 1);
+        long start = System.nanoTime();
+        for (int i = 0; i < SlidingWindowCounter.BLOCK; i++) {
+            assertThat(counter.tryAcquire("card" + i, start)).isTrue();
+        }
+        // Idle for a whole window: slots are reused, nothing evicted
+        for (int i = 0; i < SlidingWindowCounter.BLOCK; i++) {
+            assertThat(counter.tryAcquire("other" + i, start + 10 * MINUTE)).isTrue();
+        }
+        assertThat(counter.evictions()).isZero();
+
+        // Block full of active keys: the least recently used goes
+        assertThat(counter.tryAcquire("card0", start + 11 * MINUTE)).isTrue();
+        assertThat(counter.evictions()).isEqualTo(1);
+        assertThat(counter.tryAcquire("other1", start + 11 * MINUTE)).isFalse();
+    }
+
+    @Test
+    void aDeclineByALaterRuleIsNotCountedByEarlierOnes() {
+        // The card may do 2, but each terminal only 1
+        VelocityChecker checker = new VelocityChecker(true, new String[]{"pan:any:2/1m", "terminal:any:1/1m"},
+                1024, 6, 16, new SimpleMeterRegistry());
+        ProcessingCode code = ProcessingCode.parse("011000", 100, 2);
+
+        assertThat(checker.check(request("T1"), code).isValid()).isTrue();
+        assertThat(checker.check(request("T1"), code).isValid()).isFalse();
+        // The card's count is still 1
+        assertThat(checker.check(request("T2"), code).isValid()).isTrue();
+        assertThat(checker.check(request("T3"), code).isValid()).isFalse();
+    }
+
+    @Test
+    void rulesParseFromConfiguration() {
+        VelocityRule rule = VelocityRule.parse(" pan:withdrawal:5/10m");
+        assertThat(rule).isEqualTo(new VelocityRule(VelocityRule.Scope.PAN, "withdrawal", 5, Duration.ofMinutes(10)));
+        assertThat(rule.toString()).isEqualTo("pan:withdrawal:5/10m");
+        assertThat(rule.appliesTo(ProcessingCode.parse("011000", 100, 2))).isTrue();
+        assertThat(rule.appliesTo(ProcessingCode.parse("001000", 100, 2))).isFalse();
+        assertThat(VelocityRule.parse("terminal:any:600/1m").appliesTo(ProcessingCode.parse("311000", 0, 2))).isTrue();
+        assertThatThrownBy(() -> VelocityRule.parse("pan:withdrawal:5")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> VelocityRule.parse("pan:any:0/1m")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static TransactionRequest request(String terminalId) {
+        return TransactionRequest.builder()
+                .messageType("0200")
+                .primaryAccountNumber(PAN)
+                .processingCode("011000")
+                .transactionAmount(100)
+                .stan("000001")
+                .cardAcceptorTerminalId(terminalId)
+                .build();
+    }
+}